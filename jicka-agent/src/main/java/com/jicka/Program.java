@@ -0,0 +1,299 @@
+package com.jicka;
+
+import com.jicka.agent.JickaAgent;
+import com.jicka.core.JickaClassLoader;
+import com.jicka.core.JickaSession;
+import com.jicka.daemon.JickaDaemon;
+import com.jicka.daemon.JickaRequest;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ *
+ * @author Mickael Boudignot
+ */
+class Program {
+
+    /**
+     * Main class of the project. This method is called when the program start.
+     * It takes two arguments, the first is the input of the jar which will be
+     * convert and the second the output jar (the converted jar). The option -j
+     * defines the number of threads used to transform and compress classes (0
+     * to use all available processors) and the option -l the compression level
+     * of the output jar (0 to store entries without compression). The option
+     * -c defines a directory to keep transformed classes between two runs.
+     * The option -f defines how the stack map frames of the transformed classes
+     * are written: "keep" (by default) keeps the frames of the original
+     * classes and "compute" recomputes them from the classes of the jar.
+     * The option -o defines how the field instructions are rewritten:
+     * "inline" (by default) rewrites each instruction in place and "outline"
+     * replaces it by a call of a helper shared by the instructions of the
+     * same field, so the methods stay small enough to be inlined by the JIT.
+     * The option -x defines which fields use the semantic: "shared" (by
+     * default) applies it to every field and "confined" analyzes the jars to
+     * find the classes whose objects never escape the thread which creates
+     * them, whose fields keep their original accesses (the jars must be the
+     * whole program, the report lists these fields).
+     * The option -e defines excluded packages separated by commas, in addition
+     * to the packages given after the output jar. The option -i reads a
+     * policy file which includes or excludes packages, classes and fields,
+     * and defines the annotations which opt classes and fields out of the
+     * semantic (by default ThreadConfined and Immutable). With the option
+     * -b, the arguments are several jars or directories of classes (a class
+     * path) which are transformed together into the given output directory,
+     * with a shared runtime.
+     * The option -a attaches Jicka to a running JVM to apply the semantic to
+     * the loaded classes of the given packages or classes, and the option -r
+     * restores them (all of them without packages or classes).
+     * The option -d starts a daemon which stays resident and transforms the
+     * jars sent by the clients on the given port of the loopback interface
+     * (0 to use a free port, printed at the start). Only the user of the
+     * daemon can send requests: they contain a secret the daemon writes in
+     * "~/.jicka/daemon-port". With the option -s, the transformation is sent
+     * to the daemon of the given port instead of being done by this JVM, and
+     * the option -k stops the daemon of the given port.
+     * The option -p writes a report of the transformation with a row by
+     * class, the totals and the methods pushed over a limit of inlining of
+     * the JIT, in JSON if the file ends with ".json" and in CSV otherwise.
+     * The option -t creates an AppCDS archive of the transformed jars: the
+     * given main class and arguments (quoted as one argument) are run once
+     * with the transformed class path, and the classes loaded by this run
+     * are archived next to the output jar (or next to "jicka-runtime.jar"
+     * with -b) with the extension ".jsa", for "-XX:SharedArchiveFile". It
+     * needs a JVM 11 or later, the same as the JVM of the program.
+     * The option -m runs a program with the semantic in this JVM: the
+     * classes of the given class path are transformed when they are loaded,
+     * without writing a jar, and the first argument is the main class
+     * followed by the arguments of the program.
+     *
+     * @param args are the arguments of the program
+     * @throws Exception The transformation can return Exception during E/O of
+     * files.
+     */
+    public static void main(String[] args) throws Exception {
+
+        /* Get options */
+        int threads = 1;
+        int level = Deflater.DEFAULT_COMPRESSION;
+        String pid = null;
+        String attach = null;
+        String batch = null;
+        String cache = null;
+        boolean computeFrames = false;
+        boolean outline = false;
+        boolean escapeAnalysis = false;
+        int daemon = -1;
+        int server = -1;
+        String run = null;
+        String report = null;
+        String policy = null;
+        String archive = null;
+        List<String> excludes = new ArrayList<>();
+        while (args.length >= 2 && args[0].startsWith("-")) {
+            switch (args[0]) {
+                case "-j":
+                    threads = parseInt(args[0], args[1]);
+                    if (threads <= 0) {
+                        threads = Runtime.getRuntime().availableProcessors();
+                    }
+                    break;
+                case "-l":
+                    level = parseInt(args[0], args[1]);
+                    if (level < 0 || level > 9) {
+                        System.err.println("The compression level must be between 0 and 9.");
+                        System.exit(1);
+                    }
+                    break;
+                case "-c":
+                    cache = args[1];
+                    break;
+                case "-e":
+                    excludes.addAll(Arrays.asList(args[1].split(",")));
+                    break;
+                case "-i":
+                    policy = args[1];
+                    if (!Files.exists(Paths.get(policy))) {
+                        System.err.println(String.format("The file '%s' doesn't exist.", policy));
+                        System.exit(1);
+                    }
+                    break;
+                case "-b":
+                    batch = args[1];
+                    break;
+                case "-f":
+                    if (!args[1].equals("keep") && !args[1].equals("compute")) {
+                        System.err.println("The frames must be 'keep' or 'compute'.");
+                        System.exit(1);
+                    }
+                    computeFrames = args[1].equals("compute");
+                    break;
+                case "-o":
+                    if (!args[1].equals("inline") && !args[1].equals("outline")) {
+                        System.err.println("The code must be 'inline' or 'outline'.");
+                        System.exit(1);
+                    }
+                    outline = args[1].equals("outline");
+                    break;
+                case "-x":
+                    if (!args[1].equals("shared") && !args[1].equals("confined")) {
+                        System.err.println("The fields must be 'shared' or 'confined'.");
+                        System.exit(1);
+                    }
+                    escapeAnalysis = args[1].equals("confined");
+                    break;
+                case "-d":
+                    daemon = parseInt(args[0], args[1]);
+                    break;
+                case "-s":
+                    server = parseInt(args[0], args[1]);
+                    break;
+                case "-p":
+                    report = args[1];
+                    break;
+                case "-t":
+                    archive = args[1];
+                    break;
+                case "-m":
+                    run = args[1];
+                    break;
+                case "-k":
+                    JickaDaemon.stop(parseInt(args[0], args[1]));
+                    return;
+                case "-a":
+                    pid = args[1];
+                    attach = "";
+                    break;
+                case "-r":
+                    pid = args[1];
+                    attach = JickaAgent.REVERT;
+                    break;
+                default:
+                    System.err.println(String.format("The option '%s' doesn't exist.", args[0]));
+                    System.exit(1);
+            }
+            args = Arrays.copyOfRange(args, 2, args.length);
+        }
+
+        /* Attach to a running JVM */
+        if (pid != null) {
+            if (attach.isEmpty() && args.length == 0) {
+                System.err.println("Usage :\njava - jar Jicka.jar -a pid [packages or classes]\njava - jar Jicka.jar -r pid [optionnal packages or classes]");
+                System.exit(1);
+            }
+            JickaAgent.attach(pid, attach + String.join(",", args));
+            return;
+        }
+
+        /* Stay resident and transform the requests of the clients */
+        if (daemon >= 0) {
+            JickaDaemon jickaDaemon = new JickaDaemon(daemon, Program.class.getClassLoader());
+            System.out.println(String.format("Jicka daemon listening on port %d", jickaDaemon.getPort()));
+            jickaDaemon.serve();
+            return;
+        }
+
+        /* Run a program with the semantic without writing a jar */
+        if (run != null) {
+            if (args.length == 0) {
+                System.err.println("Usage :\njava - jar Jicka.jar [-f keep|compute] [-o inline|outline] [-e excludes] [-i policy] -m classPath mainClass [arguments]");
+                System.exit(1);
+            }
+            List<String> inputs = Arrays.asList(run.split(File.pathSeparator));
+            for (String input : inputs) {
+                if (!Files.exists(Paths.get(input))) {
+                    System.err.println(String.format("The file '%s' doesn't exist.", input));
+                    System.exit(1);
+                }
+            }
+
+            /* The session and the class loader live as long as the threads of the program */
+            JickaSession session = new JickaSession();
+            session.defineComputeFrames(computeFrames);
+            session.defineOutline(outline);
+            session.defineExclude(excludes.toArray(new String[excludes.size()]));
+            if (policy != null) {
+                session.definePolicy(policy);
+            }
+            JickaClassLoader classLoader = new JickaClassLoader(session, inputs, ClassLoader.getSystemClassLoader().getParent());
+            classLoader.run(args[0], Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
+        /* Transform a class path */
+        if (batch != null) {
+            if (args.length == 0) {
+                System.err.println("Usage :\njava - jar Jicka.jar [-j threads] [-l level] [-c cacheDirectory] [-f keep|compute] [-o inline|outline] [-x shared|confined] [-e excludes] [-i policy] [-p report] [-t \"mainClass arguments\"] [-s port] -b outputDirectory [inputJars or directories]");
+                System.exit(1);
+            }
+            for (String input : args) {
+                if (!Files.exists(Paths.get(input))) {
+                    System.err.println(String.format("The file '%s' doesn't exist.", input));
+                    System.exit(1);
+                }
+            }
+            transform(server, new JickaRequest(Arrays.asList(args), batch, true, excludes, threads, level, cache, computeFrames, outline, escapeAnalysis, policy, report, archive));
+            return;
+        }
+
+        /* Get parameter */
+        if (args.length < 2) {
+            System.err.println("Usage :\njava - jar Jicka.jar [-j threads] [-l level] [-c cacheDirectory] [-f keep|compute] [-o inline|outline] [-x shared|confined] [-e excludes] [-i policy] [-p report] [-t \"mainClass arguments\"] [-s port] [inputJar] [outputJar] [optionnal exclude packages]\njava - jar Jicka.jar [options] -b outputDirectory [inputJars or directories]\njava - jar Jicka.jar [options] -m classPath mainClass [arguments]\njava - jar Jicka.jar -d port\njava - jar Jicka.jar -k port\njava - jar Jicka.jar -a pid [packages or classes]\njava - jar Jicka.jar -r pid [optionnal packages or classes]");
+            System.exit(1);
+        }
+
+        if (!Files.exists(Paths.get(args[0]))) {
+            System.err.println(String.format("The file '%s' doesn't exist.", args[0]));
+            System.exit(1);
+        }
+
+        /* Transform */
+        excludes.addAll(Arrays.asList(args).subList(2, args.length));
+        transform(server, new JickaRequest(Arrays.asList(args[0]), args[1], false, excludes, threads, level, cache, computeFrames, outline, escapeAnalysis, policy, report, archive));
+    }
+
+    /**
+     * Method to apply a transformation in this JVM, or to send it to a
+     * daemon. The program stops if the daemon returns an error.
+     *
+     * @param server The port of the daemon, or -1 to transform in this JVM.
+     * @param request The transformation.
+     * @throws Exception The transformation can return Exception during E/O of
+     * files.
+     */
+    private static void transform(int server, JickaRequest request) throws Exception {
+        if (server < 0) {
+            request.apply(Program.class.getClassLoader());
+            return;
+        }
+        try {
+            JickaDaemon.send(server, request);
+        } catch (IOException ex) {
+            System.err.println(String.format("The daemon can't transform the jars: %s", ex.getMessage()));
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Method to read the integer value of an option. The program stops if the
+     * value isn't an integer.
+     *
+     * @param option The name of the option.
+     * @param value The value of the option.
+     * @return the integer value.
+     */
+    private static int parseInt(String option, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            System.err.println(String.format("The value '%s' of the option '%s' isn't valid.", value, option));
+            System.exit(1);
+            return 0;
+        }
+    }
+}
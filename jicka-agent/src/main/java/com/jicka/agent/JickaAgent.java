@@ -0,0 +1,250 @@
+package com.jicka.agent;
+
+import com.jicka.core.Jicka;
+import com.jicka.core.JickaMappedCache;
+import com.sun.tools.attach.VirtualMachine;
+import java.io.IOException;
+import java.lang.instrument.Instrumentation;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ *
+ * @author Mickael Boudignot
+ */
+public class JickaAgent {
+
+    /**
+     * Prefix of the arguments of agentmain to restore classes.
+     */
+    public static final String REVERT = "revert:";
+
+    /**
+     * Option of premain to define the number of threads which transform
+     * classes in advance.
+     */
+    private static final String PREFETCH = "prefetch=";
+
+    /**
+     * Option of premain to define the maximum size in megabytes of the
+     * classes transformed in advance and not yet loaded.
+     */
+    private static final String PREFETCHSIZE = "prefetchsize=";
+
+    /**
+     * The maximum size in megabytes of the classes transformed in advance
+     * and not yet loaded, when the classes of a class list are transformed
+     * in advance without "prefetchsize".
+     */
+    private static final int PREFETCHLIMIT = 64;
+
+    /**
+     * Option of premain to define the file of the classes loaded by the
+     * previous run.
+     */
+    private static final String CLASSLIST = "classlist=";
+
+    /**
+     * Option of premain to define the file of the classes transformed by the
+     * previous runs.
+     */
+    private static final String CACHE = "cache=";
+
+    /**
+     * Option of premain to keep or recompute the frames of the classes.
+     */
+    private static final String FRAMES = "frames=";
+
+    /**
+     * Option of premain to rewrite the field instructions in place or to
+     * outline them.
+     */
+    private static final String CODE = "code=";
+
+    /**
+     * Option of premain to define the file of the policy of the classes and
+     * of the fields.
+     */
+    private static final String POLICY = "policy=";
+
+    /**
+     * The transformer used when the agent is attached to a running JVM. It's
+     * kept between two attachments to restore the classes.
+     */
+    private static JickaRetransformer retransformer = null;
+
+    /**
+     * Method called by the JVM before the main method when the program is
+     * started with -javaagent:Jicka.jar=[options and optionnal exclude
+     * packages]. Classes are transformed when they are loaded, so the program
+     * runs with the semantic without a transformed jar. Excluded packages and
+     * options are separated by commas.
+     * <p>
+     * With "classlist=file", the classes loaded by the previous run are
+     * transformed in advance by "prefetch=threads" threads (by default, the
+     * number of processors minus one, and 0 to disable it), in their loading
+     * order, and the file is updated when the JVM stops. Without class list,
+     * all the classes of the class path are transformed in advance, in the
+     * order of the class path, only if "prefetchsize=megabytes" is given.
+     * This size limits the transformed classes kept until their classes are
+     * loaded (64 MB by default with a class list), the other classes are
+     * transformed when they are loaded.
+     * <p>
+     * With "cache=file", the classes transformed by the previous runs are
+     * read from a file mapped in memory, and the classes transformed by this
+     * run are added to the file when the JVM stops. With "frames=compute", the
+     * stack map frames are recomputed instead of being kept, and with
+     * "code=outline" the field instructions call helpers instead of being
+     * rewritten in place. With "policy=file", the classes and the fields are
+     * included or excluded by the rules of the file.
+     *
+     * @param args The arguments of the agent.
+     * @param instrumentation The instrumentation provided by the JVM.
+     * @throws Exception The agent can't access the class loaders.
+     */
+    public static void premain(String args, Instrumentation instrumentation) throws Exception {
+        int threads = Runtime.getRuntime().availableProcessors() - 1;
+        int size = 0;
+        Path classList = null;
+        Path cacheFile = null;
+        List<String> excludes = new ArrayList<>();
+        if (args != null && !args.isEmpty()) {
+            for (String arg : args.split(",")) {
+                if (arg.startsWith(PREFETCH)) {
+                    threads = Integer.parseInt(arg.substring(PREFETCH.length()));
+                } else if (arg.startsWith(PREFETCHSIZE)) {
+                    size = Integer.parseInt(arg.substring(PREFETCHSIZE.length()));
+                } else if (arg.startsWith(CLASSLIST)) {
+                    classList = Paths.get(arg.substring(CLASSLIST.length()));
+                } else if (arg.startsWith(CACHE)) {
+                    cacheFile = Paths.get(arg.substring(CACHE.length()));
+                } else if (arg.startsWith(FRAMES)) {
+                    Jicka.defineComputeFrames(arg.substring(FRAMES.length()).equals("compute"));
+                } else if (arg.startsWith(POLICY)) {
+                    Jicka.definePolicy(arg.substring(POLICY.length()));
+                } else if (arg.startsWith(CODE)) {
+                    Jicka.defineOutline(arg.substring(CODE.length()).equals("outline"));
+                } else {
+                    excludes.add(arg);
+                }
+            }
+        }
+        Jicka.defineExclude(excludes.toArray(new String[excludes.size()]));
+        JickaTransformer.openClassLoaders(instrumentation);
+        JickaMappedCache cache = cacheFile == null ? null : new JickaMappedCache(cacheFile);
+
+        /* Transform the classes in advance, except the classes of the cache */
+        JickaPrefetcher prefetcher = null;
+        Set<String> classes = classList == null ? Collections.emptySet() : JickaPrefetcher.readClassList(classList);
+        if (classes.isEmpty() && size > 0) {
+            classes = JickaPrefetcher.getClassPath();
+        } else if (size == 0) {
+            size = PREFETCHLIMIT;
+        }
+        if (threads > 0 && !classes.isEmpty()) {
+            if (cache != null) {
+                classes.removeIf(cache::contains);
+            }
+            prefetcher = new JickaPrefetcher(ClassLoader.getSystemClassLoader(), (long) size << 20);
+            prefetcher.start(classes, threads);
+        }
+
+        JickaTransformer transformer = new JickaTransformer(prefetcher, cache, classList != null);
+        instrumentation.addTransformer(transformer);
+
+        /* Save the classes transformed by this run for the next run */
+        if (cache != null) {
+            Path file = cacheFile;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    cache.save();
+                } catch (IOException ex) {
+                    System.err.println(String.format("Jicka can't write '%s': %s", file, ex));
+                }
+            }));
+        }
+
+        /* Record the classes loaded for the next run */
+        if (classList != null) {
+            Path file = classList;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    JickaPrefetcher.writeClassList(file, transformer.getLoaded());
+                } catch (IOException ex) {
+                    System.err.println(String.format("Jicka can't write '%s': %s", file, ex));
+                }
+            }));
+        }
+    }
+
+    /**
+     * Method called by the JVM when the agent is attached to a running JVM.
+     * The arguments are the packages or classes (separated by commas) whose
+     * loaded classes will use the semantic. With the prefix "revert:", the
+     * packages or classes (all of them if the list is empty) are restored to
+     * their original code. Classes loaded after the attachment are never
+     * transformed.
+     *
+     * @param args The arguments of the agent.
+     * @param instrumentation The instrumentation provided by the JVM.
+     * @throws Exception The classes can't be retransformed.
+     */
+    public static synchronized void agentmain(String args, Instrumentation instrumentation) throws Exception {
+        if (retransformer == null) {
+            JickaTransformer.openClassLoaders(instrumentation);
+            retransformer = new JickaRetransformer();
+            instrumentation.addTransformer(retransformer, true);
+        }
+
+        /* Read the packages and classes */
+        boolean revert = args != null && args.startsWith(REVERT);
+        String list = args == null ? "" : revert ? args.substring(REVERT.length()) : args;
+        List<String> targets = list.isEmpty() ? Collections.emptyList() : Arrays.asList(list.split(","));
+
+        List<Class<?>> classes = new ArrayList<>();
+        if (revert) {
+            retransformer.unselect(targets);
+            classes.addAll(retransformer.getUnselected());
+        } else {
+            retransformer.select(targets);
+            for (Class<?> cls : instrumentation.getAllLoadedClasses()) {
+                if (cls.getClassLoader() != null && instrumentation.isModifiableClass(cls)
+                        && retransformer.isSelected(cls.getName()) && !retransformer.isTransformed(cls)) {
+                    classes.add(cls);
+                }
+            }
+        }
+
+        if (!classes.isEmpty()) {
+            instrumentation.retransformClasses(classes.toArray(new Class<?>[classes.size()]));
+        }
+        if (revert) {
+            for (Class<?> cls : classes) {
+                retransformer.restored(cls);
+            }
+        }
+    }
+
+    /**
+     * Method to attach the agent to a running JVM. On Java 8, the file
+     * tools.jar of the JDK must be in the class path.
+     *
+     * @param pid The id of the process of the JVM.
+     * @param args The arguments of agentmain.
+     * @throws Exception The agent can't be attached.
+     */
+    public static void attach(String pid, String args) throws Exception {
+        String agent = Paths.get(JickaAgent.class.getProtectionDomain().getCodeSource().getLocation().toURI()).toString();
+        VirtualMachine vm = VirtualMachine.attach(pid);
+        try {
+            vm.loadAgent(agent, args);
+        } finally {
+            vm.detach();
+        }
+    }
+}
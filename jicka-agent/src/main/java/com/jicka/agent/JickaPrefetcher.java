@@ -0,0 +1,314 @@
+package com.jicka.agent;
+
+import com.jicka.core.Jicka;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ *
+ * @author Mickael Boudignot
+ */
+class JickaPrefetcher {
+
+    /**
+     * Class to store the transformation of a class done in advance.
+     */
+    private class Prefetch implements Runnable {
+
+        /**
+         * The internal name of the class.
+         */
+        private final String className;
+
+        /**
+         * The SHA-256 digest of the original class read by the prefetcher, or
+         * null if the class wasn't transformed in advance.
+         */
+        private byte[] digest;
+
+        /**
+         * The transformed class, or null if the transformation doesn't modify
+         * the class.
+         */
+        private byte[] transformed;
+
+        /**
+         * True when the transformation is started by a worker or cancelled.
+         */
+        private boolean started = false;
+
+        /**
+         * True when the transformation is finished.
+         */
+        private boolean done = false;
+
+        /**
+         * Create the transformation of a class.
+         *
+         * @param className The internal name of the class.
+         */
+        Prefetch(String className) {
+            this.className = className;
+        }
+
+        /**
+         * Method called by a worker to transform the class. The class file is
+         * read from the class loader, so the class isn't loaded.
+         */
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (started) {
+                    return;
+                }
+                started = true;
+            }
+            try (InputStream stream = classLoader.getResourceAsStream(className + ".class")) {
+                if (stream != null && retained.get() < limit) {
+                    byte[] buffer = readFully(stream);
+                    byte[] result = Jicka.transform(buffer, classLoader);
+
+                    /* A class over the limit will be transformed when it is loaded */
+                    if (result != buffer && retained.addAndGet(result.length) > limit) {
+                        retained.addAndGet(-result.length);
+                        return;
+                    }
+                    transformed = result == buffer ? null : result;
+                    digest = digest(buffer);
+                }
+            } catch (Throwable ex) {
+
+                /* The class will be transformed when it is loaded */
+            } finally {
+                synchronized (this) {
+                    done = true;
+                    notifyAll();
+                }
+            }
+        }
+
+        /**
+         * Return the transformed class if the class loaded is the class
+         * transformed in advance. The method waits the end of the
+         * transformation if a worker is transforming the class.
+         *
+         * @param classfileBuffer The class loaded.
+         * @return the transformed class, or null if the class must be
+         * transformed by the caller.
+         * @throws InterruptedException The thread is interrupted.
+         */
+        synchronized byte[] get(byte[] classfileBuffer) throws InterruptedException {
+            if (!started) {
+                started = true;
+                return null;
+            }
+            while (!done) {
+                wait();
+            }
+            if (transformed != null) {
+                retained.addAndGet(-transformed.length);
+            }
+            if (digest == null || !Arrays.equals(digest, digest(classfileBuffer))) {
+                return null;
+            }
+            return transformed == null ? classfileBuffer : transformed;
+        }
+    }
+
+    /**
+     * The class loader of the class path.
+     */
+    private final ClassLoader classLoader;
+
+    /**
+     * The classes transformed in advance, or which will be transformed.
+     */
+    private final Map<String, Prefetch> prefetches = new ConcurrentHashMap<>();
+
+    /**
+     * The maximum size in bytes of the transformed classes kept until their
+     * classes are loaded.
+     */
+    private final long limit;
+
+    /**
+     * The size in bytes of the transformed classes kept, whose classes
+     * aren't loaded yet.
+     */
+    private final AtomicLong retained = new AtomicLong();
+
+    /**
+     * Create a prefetcher for the classes of a class loader. The classes
+     * which are never loaded keep their transformed class, so their size is
+     * limited: once the limit is reached, the other classes are transformed
+     * when they are loaded.
+     *
+     * @param classLoader The class loader of the class path.
+     * @param limit The maximum size in bytes of the transformed classes kept.
+     */
+    JickaPrefetcher(ClassLoader classLoader, long limit) {
+        this.classLoader = classLoader;
+        this.limit = limit;
+    }
+
+    /**
+     * Start the transformation in advance of classes. The classes are
+     * transformed in the given order by a pool of low priority threads.
+     *
+     * @param classes The internal names of the classes.
+     * @param threads The number of threads.
+     */
+    void start(Collection<String> classes, int threads) {
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "jicka-prefetch");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        for (String className : classes) {
+            Prefetch prefetch = new Prefetch(className);
+            prefetches.put(className, prefetch);
+            executor.execute(prefetch);
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * Return the transformation done in advance of a class. A class can be
+     * returned only once, because a class is loaded only once by a class
+     * loader.
+     *
+     * @param loader The class loader of the class.
+     * @param className The internal name of the class.
+     * @param classfileBuffer The original class.
+     * @return the transformed class, or null if the class wasn't transformed
+     * in advance.
+     * @throws InterruptedException The thread is interrupted.
+     */
+    byte[] get(ClassLoader loader, String className, byte[] classfileBuffer) throws InterruptedException {
+        Prefetch prefetch = loader == classLoader ? prefetches.remove(className) : null;
+        return prefetch == null ? null : prefetch.get(classfileBuffer);
+    }
+
+    /**
+     * Return the classes of the class path in the order of the class path.
+     * The classes of the agent itself are ignored.
+     *
+     * @return a set of internal names of classes.
+     * @throws Exception The class path can't be read.
+     */
+    static Set<String> getClassPath() throws Exception {
+        Path agent = Paths.get(JickaPrefetcher.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        Set<String> classes = new LinkedHashSet<>();
+        for (String element : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            Path path = Paths.get(element);
+            if (!Files.exists(path) || Files.isSameFile(path, agent)) {
+                continue;
+            }
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> files = Files.walk(path)) {
+                    for (Path file : files.filter(file -> file.toString().endsWith(".class")).sorted().collect(Collectors.toList())) {
+                        String name = path.relativize(file).toString().replace(File.separatorChar, '/');
+                        classes.add(name.substring(0, name.length() - ".class".length()));
+                    }
+                }
+            } else {
+                try (JarFile jar = new JarFile(path.toFile())) {
+                    Enumeration<JarEntry> entries = jar.entries();
+                    while (entries.hasMoreElements()) {
+                        String name = entries.nextElement().getName();
+                        if (name.endsWith(".class") && !name.startsWith("META-INF/")) {
+                            classes.add(name.substring(0, name.length() - ".class".length()));
+                        }
+                    }
+                }
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * Read a list of classes recorded by a previous run.
+     *
+     * @param path The file of the list, one internal name by line.
+     * @return a set of internal names of classes, empty if the file doesn't
+     * exist.
+     * @throws IOException The file can't be read.
+     */
+    static Set<String> readClassList(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return new LinkedHashSet<>();
+        }
+        return new LinkedHashSet<>(Files.readAllLines(path, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Write the list of the classes loaded by this run.
+     *
+     * @param path The file of the list.
+     * @param classes The internal names of the classes in their loading
+     * order.
+     * @throws IOException The file can't be written.
+     */
+    static void writeClassList(Path path, List<String> classes) throws IOException {
+        Files.write(path, new ArrayList<>(classes), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Compute the SHA-256 digest of a class, kept instead of the class to
+     * recognize the class when it's loaded.
+     *
+     * @param classBuffer The class.
+     * @return the digest.
+     */
+    private static byte[] digest(byte[] classBuffer) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(classBuffer);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Read a stream until its end.
+     *
+     * @param stream The stream.
+     * @return the content of the stream.
+     * @throws IOException The stream can't be read.
+     */
+    private static byte[] readFully(InputStream stream) throws IOException {
+        byte[] buffer = new byte[Math.max(stream.available(), 1024)];
+        int size = 0;
+        int read;
+        while ((read = stream.read(buffer, size, buffer.length - size)) != -1) {
+            size += read;
+            if (size == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+        }
+        return Arrays.copyOf(buffer, size);
+    }
+}
@@ -0,0 +1,143 @@
+package com.jicka.agent;
+
+import com.jicka.core.Jicka;
+import java.lang.instrument.ClassFileTransformer;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ *
+ * @author Mickael Boudignot
+ */
+class JickaRetransformer implements ClassFileTransformer {
+
+    /**
+     * The packages and classes selected to apply the semantic.
+     */
+    private final Set<String> targets = new HashSet<>();
+
+    /**
+     * The classes currently transformed. The classes can be unloaded.
+     */
+    private final Set<Class<?>> transformed = Collections.newSetFromMap(new WeakHashMap<>());
+
+    /**
+     * Add packages or classes to the selection.
+     *
+     * @param names The names of the packages or classes.
+     */
+    synchronized void select(Collection<String> names) {
+        targets.addAll(names);
+    }
+
+    /**
+     * Remove packages or classes from the selection.
+     *
+     * @param names The names of the packages or classes, or an empty
+     * collection to remove all of them.
+     */
+    synchronized void unselect(Collection<String> names) {
+        if (names.isEmpty()) {
+            targets.clear();
+        } else {
+            targets.removeAll(names);
+        }
+    }
+
+    /**
+     * Method to know if a class belongs to the selection, directly or by one
+     * of its packages or outer classes.
+     *
+     * @param name The name of the class.
+     * @return true if the class is selected.
+     */
+    synchronized boolean isSelected(String name) {
+        for (String target : targets) {
+            if (name.equals(target) || name.startsWith(target + ".") || name.startsWith(target + "$")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Method to know if a class is currently transformed.
+     *
+     * @param cls The class.
+     * @return true if the semantic is applied to the class.
+     */
+    synchronized boolean isTransformed(Class<?> cls) {
+        return transformed.contains(cls);
+    }
+
+    /**
+     * Return the transformed classes which don't belong anymore to the
+     * selection.
+     *
+     * @return a list of classes to restore.
+     */
+    synchronized List<Class<?>> getUnselected() {
+        List<Class<?>> classes = new ArrayList<>();
+        for (Class<?> cls : transformed) {
+            if (!isSelected(cls.getName())) {
+                classes.add(cls);
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * Method called by the JVM when a loaded class is retransformed. A
+     * selected class is transformed without changing its schema, the other
+     * classes are restored to their original code.
+     *
+     * @param loader The class loader of the class (null for bootstrap).
+     * @param className The internal name of the class.
+     * @param classBeingRedefined The class which is retransformed, or null.
+     * @param protectionDomain The protection domain of the class.
+     * @param classfileBuffer The original class.
+     * @return the transformed class, or null if the class isn't modified.
+     */
+    @Override
+    public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+            ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+
+        /* Classes loaded after the attachment aren't transformed */
+        if (loader == null || className == null || classBeingRedefined == null
+                || className.startsWith("org/objectweb/asm/")
+                || !isSelected(className.replace('/', '.'))) {
+            return null;
+        }
+
+        try {
+            byte[] classBuffer = Jicka.retransform(classfileBuffer, classBeingRedefined);
+            if (classBuffer == classfileBuffer) {
+                return null;
+            }
+            JickaTransformer.defineDataClass(loader, className);
+            synchronized (this) {
+                transformed.add(classBeingRedefined);
+            }
+            return classBuffer;
+        } catch (Throwable ex) {
+            System.err.println(String.format("Jicka can't transform '%s': %s", className, ex));
+            return null;
+        }
+    }
+
+    /**
+     * Method called when a class is restored to its original code.
+     *
+     * @param cls The restored class.
+     */
+    synchronized void restored(Class<?> cls) {
+        transformed.remove(cls);
+        Jicka.revert(cls);
+    }
+}
@@ -0,0 +1,198 @@
+package com.jicka.agent;
+
+import com.jicka.core.Jicka;
+import com.jicka.core.JickaMappedCache;
+import com.jicka.core.JickaThreadLocal;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.lang.reflect.Method;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ *
+ * @author Mickael Boudignot
+ */
+class JickaTransformer implements ClassFileTransformer {
+
+    /**
+     * The method ClassLoader.defineClass used to create classes Data in the
+     * class loader of the transformed classes.
+     */
+    private static Method defineClass;
+
+    /**
+     * The method ClassLoader.findLoadedClass used to know if a class Data is
+     * already defined.
+     */
+    private static Method findLoadedClass;
+
+    /**
+     * The classes transformed in advance, or null.
+     */
+    private final JickaPrefetcher prefetcher;
+
+    /**
+     * The classes transformed by the previous runs, or null.
+     */
+    private final JickaMappedCache cache;
+
+    /**
+     * The classes loaded by the class loader of the class path in their
+     * loading order, or null if the classes aren't recorded.
+     */
+    private final List<String> loaded;
+
+    /**
+     * Create a transformer which transforms each class when it is loaded.
+     */
+    JickaTransformer() {
+        this(null, null, false);
+    }
+
+    /**
+     * Create a transformer which uses the classes transformed in advance or
+     * by the previous runs.
+     *
+     * @param prefetcher The classes transformed in advance, or null.
+     * @param cache The classes transformed by the previous runs, or null.
+     * @param record true to record the classes loaded from the class path.
+     */
+    JickaTransformer(JickaPrefetcher prefetcher, JickaMappedCache cache, boolean record) {
+        this.prefetcher = prefetcher;
+        this.cache = cache;
+        this.loaded = record ? new ArrayList<>() : null;
+    }
+
+    /**
+     * Method to allow the agent to define classes in any class loader. Since
+     * Java 9, the package java.lang must be opened to the agent.
+     *
+     * @param instrumentation The instrumentation provided by the JVM.
+     * @throws Exception The agent can't access the class loaders.
+     */
+    static void openClassLoaders(Instrumentation instrumentation) throws Exception {
+        try {
+            Method getModule = Class.class.getMethod("getModule");
+            Class<?> module = Class.forName("java.lang.Module");
+            Method redefineModule = Instrumentation.class.getMethod("redefineModule",
+                    module, Set.class, Map.class, Map.class, Set.class, Map.class);
+            redefineModule.invoke(instrumentation, getModule.invoke(Object.class),
+                    Collections.emptySet(),
+                    Collections.emptyMap(),
+                    Collections.singletonMap("java.lang", Collections.singleton(getModule.invoke(JickaTransformer.class))),
+                    Collections.emptySet(),
+                    Collections.emptyMap());
+        } catch (NoSuchMethodException | ClassNotFoundException ex) {
+
+            /* Java 8, there are no modules */
+        }
+        defineClass = ClassLoader.class.getDeclaredMethod("defineClass", String.class, byte[].class, int.class, int.class);
+        defineClass.setAccessible(true);
+        findLoadedClass = ClassLoader.class.getDeclaredMethod("findLoadedClass", String.class);
+        findLoadedClass.setAccessible(true);
+    }
+
+    /**
+     * Method to define the class Data of a transformed class in its class
+     * loader, if it isn't already defined.
+     *
+     * @param loader The class loader of the transformed class.
+     * @param className The internal name of the transformed class.
+     * @return the class Data, or null if the class hasn't a class Data.
+     * @throws Exception The class Data can't be defined.
+     */
+    static byte[] defineDataClass(ClassLoader loader, String className) throws Exception {
+        byte[] dataBuffer = Jicka.createDataClass(className + JickaThreadLocal.CLASSEXTENSION);
+        defineDataClass(loader, className, dataBuffer);
+        return dataBuffer;
+    }
+
+    /**
+     * Method to define a class Data already created in the class loader of
+     * the transformed class, if it isn't already defined.
+     *
+     * @param loader The class loader of the transformed class.
+     * @param className The internal name of the transformed class.
+     * @param dataBuffer The class Data, or null if the class hasn't a class
+     * Data.
+     * @throws Exception The class Data can't be defined.
+     */
+    static void defineDataClass(ClassLoader loader, String className, byte[] dataBuffer) throws Exception {
+        String data = (className + JickaThreadLocal.CLASSEXTENSION).replace('/', '.');
+        if (dataBuffer != null && findLoadedClass.invoke(loader, data) == null) {
+            defineClass.invoke(loader, data, dataBuffer, 0, dataBuffer.length);
+        }
+    }
+
+    /**
+     * Method called by the JVM when a class is loaded. The class is
+     * transformed and its class Data is defined in the same class loader.
+     *
+     * @param loader The class loader of the class (null for bootstrap).
+     * @param className The internal name of the class.
+     * @param classBeingRedefined The class if it's a redefinition, or null.
+     * @param protectionDomain The protection domain of the class.
+     * @param classfileBuffer The original class.
+     * @return the transformed class, or null if the class isn't modified.
+     */
+    @Override
+    public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+            ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+
+        /* Classes of the JDK and of the agent itself are never transformed */
+        if (loader == null || className == null || classBeingRedefined != null
+                || className.startsWith("org/objectweb/asm/")) {
+            return null;
+        }
+
+        if (loaded != null && loader == ClassLoader.getSystemClassLoader() && !className.startsWith("com/jicka/")) {
+            synchronized (loaded) {
+                loaded.add(className);
+            }
+        }
+
+        try {
+
+            /* Use the class transformed by a previous run */
+            byte[] classBuffer = cache == null ? null : cache.get(className, classfileBuffer, loader);
+            if (classBuffer != null) {
+                defineDataClass(loader, className, cache.getData(className));
+                return classBuffer;
+            }
+
+            classBuffer = prefetcher == null ? null : prefetcher.get(loader, className, classfileBuffer);
+            if (classBuffer == null) {
+                classBuffer = Jicka.transform(classfileBuffer, loader);
+            }
+
+            /* Define the class Data before the class can create instances */
+            byte[] dataBuffer = defineDataClass(loader, className);
+            if (classBuffer == classfileBuffer) {
+                return null;
+            }
+            if (cache != null) {
+                cache.put(className, classfileBuffer, loader, classBuffer, dataBuffer);
+            }
+            return classBuffer;
+        } catch (Throwable ex) {
+            System.err.println(String.format("Jicka can't transform '%s': %s", className, ex));
+            return null;
+        }
+    }
+
+    /**
+     * Return the classes loaded from the class path since the start.
+     *
+     * @return the internal names of the classes in their loading order.
+     */
+    List<String> getLoaded() {
+        synchronized (loaded) {
+            return new ArrayList<>(loaded);
+        }
+    }
+}
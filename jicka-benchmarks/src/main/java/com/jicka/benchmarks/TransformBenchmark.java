@@ -0,0 +1,119 @@
+package com.jicka.benchmarks;
+
+import com.jicka.core.JickaSession;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.objectweb.asm.ClassReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the transformation of the classes of ASM, as done by the agent
+ * when the classes are loaded: a session transforms each class without a
+ * previous scan of the jar.
+ *
+ * @author Mickael Boudignot
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TransformBenchmark {
+
+    /**
+     * The package of the transformed classes.
+     */
+    private static final String PACKAGE = "org/objectweb/asm/";
+
+    /**
+     * Rewrite the field instructions in place or outline them.
+     */
+    @Param({"false", "true"})
+    private boolean outline;
+
+    /**
+     * Recompute the frames of the classes or keep them.
+     */
+    @Param({"false", "true"})
+    private boolean computeFrames;
+
+    /**
+     * The class files of the transformed classes.
+     */
+    private final List<byte[]> classes = new ArrayList<>();
+
+    /**
+     * Read the class files of ASM from the jar (or the class path entry)
+     * which contains them.
+     *
+     * @throws Exception The jar can't be read.
+     */
+    @Setup
+    public void setup() throws Exception {
+        String path = Paths.get(ClassReader.class.getProtectionDomain().getCodeSource().getLocation().toURI()).toString();
+        try (ZipFile jar = new ZipFile(path)) {
+            Enumeration<? extends ZipEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.getName().startsWith(PACKAGE) && entry.getName().endsWith(".class")) {
+                    try (InputStream stream = jar.getInputStream(entry)) {
+                        classes.add(readFully(stream));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Transform all the classes with a new session.
+     *
+     * @return the total size of the transformed classes.
+     */
+    @Benchmark
+    public int transform() {
+        int size = 0;
+        try (JickaSession session = new JickaSession()) {
+            session.defineOutline(outline);
+            session.defineComputeFrames(computeFrames);
+            for (byte[] classBuffer : classes) {
+                size += session.transform(classBuffer, TransformBenchmark.class.getClassLoader()).length;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Read a stream until its end.
+     *
+     * @param stream The stream.
+     * @return the content of the stream.
+     * @throws IOException An exception can be genered by E/O.
+     */
+    private static byte[] readFully(InputStream stream) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int n; (n = stream.read(buffer)) > 0;) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
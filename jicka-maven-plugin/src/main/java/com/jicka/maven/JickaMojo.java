@@ -0,0 +1,133 @@
+package com.jicka.maven;
+
+import com.jicka.core.JickaSession;
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Goal which applies the semantic of Jicka to the compiled classes of a
+ * project, in place, after the compilation. Only the classes compiled since
+ * the last execution are transformed, the others are kept: the state of the
+ * classes is written in a file of the build directory, so a "mvn clean"
+ * starts again from the compiled classes.
+ *
+ * @author Mickael Boudignot
+ */
+@Mojo(name = "instrument", defaultPhase = LifecyclePhase.PROCESS_CLASSES, threadSafe = true, requiresDependencyResolution = ResolutionScope.COMPILE)
+public class JickaMojo extends AbstractMojo {
+
+    /**
+     * The directory of the compiled classes.
+     */
+    @Parameter(defaultValue = "${project.build.outputDirectory}", required = true)
+    private File classesDirectory;
+
+    /**
+     * The file of the state of the classes between two executions.
+     */
+    @Parameter(defaultValue = "${project.build.directory}/jicka/state", required = true)
+    private File stateFile;
+
+    /**
+     * The excluded packages, with "/" or "." as separator.
+     */
+    @Parameter
+    private List<String> excludes = new ArrayList<>();
+
+    /**
+     * The policy file which includes or excludes packages, classes and
+     * fields.
+     */
+    @Parameter
+    private File policy;
+
+    /**
+     * Recompute the stack map frames of the transformed classes.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean computeFrames;
+
+    /**
+     * Replace the field instructions by calls of shared helpers.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean outline;
+
+    /**
+     * The number of threads used to transform classes (0 to use all
+     * available processors).
+     */
+    @Parameter(defaultValue = "0")
+    private int threads;
+
+    /**
+     * Skip the transformation.
+     */
+    @Parameter(property = "jicka.skip", defaultValue = "false")
+    private boolean skip;
+
+    /**
+     * The project whose classes are transformed.
+     */
+    @Parameter(defaultValue = "${project}", readonly = true, required = true)
+    private MavenProject project;
+
+    /**
+     * Transform the classes compiled since the last execution.
+     *
+     * @throws MojoExecutionException The classes can't be transformed.
+     */
+    @Override
+    public void execute() throws MojoExecutionException {
+        if (skip || !classesDirectory.isDirectory()) {
+            getLog().info("Jicka is skipped.");
+            return;
+        }
+
+        try (URLClassLoader classLoader = new URLClassLoader(getClassPath(), ClassLoader.getSystemClassLoader().getParent());
+                JickaSession session = new JickaSession()) {
+            session.defineExclude(excludes.toArray(new String[excludes.size()]));
+            if (policy != null) {
+                session.definePolicy(policy.getPath());
+            }
+            session.defineComputeFrames(computeFrames);
+            session.defineOutline(outline);
+
+            int count = session.instrument(classesDirectory.getPath(), stateFile.getPath(), classLoader,
+                    threads <= 0 ? Runtime.getRuntime().availableProcessors() : threads);
+            getLog().info(String.format("Jicka transformed %d classes of %s.", count, classesDirectory));
+        } catch (Exception ex) {
+            throw new MojoExecutionException(String.format("Jicka can't transform the classes (run \"mvn clean\" if they were transformed with other options): %s", ex.getMessage()), ex);
+        }
+    }
+
+    /**
+     * Return the class path of the compilation of the project, used to find
+     * the super classes of the transformed classes.
+     *
+     * @return the URLs of the class path.
+     * @throws DependencyResolutionRequiredException The dependencies aren't
+     * resolved.
+     * @throws MalformedURLException An element isn't a valid path.
+     */
+    private URL[] getClassPath() throws DependencyResolutionRequiredException, MalformedURLException {
+        List<String> elements = project.getCompileClasspathElements();
+        URL[] urls = new URL[elements.size()];
+        for (int i = 0; i < urls.length; i++) {
+            urls[i] = new File(elements.get(i)).toURI().toURL();
+        }
+        return urls;
+    }
+}
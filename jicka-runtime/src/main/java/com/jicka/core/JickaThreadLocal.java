@@ -1,5 +1,7 @@
 package com.jicka.core;
 
+import java.lang.ref.WeakReference;
+
 /**
  *
  * @author Mickael Boudignot
@@ -35,9 +37,10 @@ public class JickaThreadLocal<T> extends ThreadLocal {
     public static final String FIELDNAME = "threadLocalData";
 
     /**
-     *
+     * The current object. The reference is weak because the ThreadLocal can be
+     * stored outside of the object (see LocalHeap.getData).
      */
-    private final Object object;
+    private final WeakReference<Object> object;
 
     /**
      * Create a ThreadLocal that will be initialize from the current object.
@@ -45,11 +48,12 @@ public class JickaThreadLocal<T> extends ThreadLocal {
      * @param object The current object.
      */
     public JickaThreadLocal(Object object) {
-        this.object = object;
+        this.object = new WeakReference<>(object);
     }
 
     /**
-     * Create a Reflect Object Data from an instance.
+     * Create a Reflect Object Data from an instance. The class Data is loaded
+     * by the class loader of the instance, which defines it with an agent.
      *
      * @return a new Object Data
      */
@@ -57,8 +61,10 @@ public class JickaThreadLocal<T> extends ThreadLocal {
     @SuppressWarnings("unchecked")
     protected T initialValue() {
         try {
-            T data = (T) Class.forName(object.getClass().getCanonicalName() + CLASSEXTENSION).newInstance();
-            LocalHeap.refreshFieldAll(object, data);
+            Object instance = object.get();
+            Class<?> cls = instance.getClass();
+            T data = (T) Class.forName(cls.getName() + CLASSEXTENSION, true, cls.getClassLoader()).newInstance();
+            LocalHeap.refreshFieldAll(instance, data);
             return data;
         } catch (NoSuchFieldException | IllegalArgumentException | ClassNotFoundException | InstantiationException | IllegalAccessException ex) {
             System.out.println(ex);
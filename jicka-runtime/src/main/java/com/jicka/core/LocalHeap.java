@@ -4,6 +4,7 @@ import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.ref.WeakReference;
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.util.Arrays;
 import java.util.LinkedList;
 
@@ -61,6 +62,39 @@ public class LocalHeap {
      */
     private static final ThreadLocal<LocalHeap> localStorage = new ThreadLocal<>();
 
+    /**
+     * Offsets of the static fields registered by an agent attached to a
+     * running JVM. The threads already started read these fields from the
+     * heap before using them.
+     */
+    private static int[] attachedOffsets = new int[16];
+
+    /**
+     * Number of offsets in the array attachedOffsets.
+     */
+    private static volatile int attachedTop = 0;
+
+    /**
+     * Fields which store the JickaThreadLocal in each class, or null if the
+     * class was transformed after its loading and hasn't this field.
+     */
+    private static final ClassValue<Field> dataFields = new ClassValue<Field>() {
+        @Override
+        protected Field computeValue(Class<?> type) {
+            try {
+                return type.getField(JickaThreadLocal.FIELDNAME);
+            } catch (NoSuchFieldException ex) {
+                return null;
+            }
+        }
+    };
+
+    /**
+     * JickaThreadLocal of the instances whose class hasn't the field
+     * JickaThreadLocal.FIELDNAME.
+     */
+    private static final WeakIdentityMap<JickaThreadLocal> attachedData = new WeakIdentityMap<>();
+
     /**
      * Method called when a Thread is started. This method create a localHeap
      * and store it.
@@ -69,6 +103,7 @@ public class LocalHeap {
      */
     public static void createLocalHeap() throws Throwable {
         LocalHeap lh = new LocalHeap();
+        lh.attached = attachedTop;
         lh.refreshStaticAll();
         localStorage.set(lh);
 
@@ -83,8 +118,72 @@ public class LocalHeap {
      *
      * @return The localHeap associate from the Thread who call this method.
      */
-    private static LocalHeap getLocalHeap() {
-        return localStorage.get();
+    private static LocalHeap getLocalHeap() throws Throwable {
+        LocalHeap storage = localStorage.get();
+        if (storage == null) {
+
+            /* The thread was started before the transformation (agent) */
+            createLocalHeap();
+            storage = localStorage.get();
+        }
+        return storage;
+    }
+
+    /**
+     * Restore the local heap from a Thread with enough space to store a
+     * static field.
+     *
+     * @param offset The offset of the static field in array storage.
+     * @return The localHeap associate from the Thread who call this method.
+     * @throws Throwable
+     */
+    private static LocalHeap getLocalHeap(int offset) throws Throwable {
+        LocalHeap storage = getLocalHeap();
+        if (storage.attached != attachedTop) {
+            storage.refreshAttached();
+        }
+        storage.ensureStatic(offset);
+        return storage;
+    }
+
+    /**
+     * Method to know if a static field is volatile.
+     *
+     * @param offset The offset of the static field in array storage.
+     * @return true if the field is volatile.
+     */
+    private static boolean isVolatile(int offset) {
+        boolean[] volatiles = staticVolatile;
+        return offset < volatiles.length && volatiles[offset];
+    }
+
+    /**
+     * Method to get the reflect object Data of an instance for the current
+     * thread.
+     *
+     * @param instance The instance.
+     * @return the object Data of the instance.
+     * @throws ReflectiveOperationException
+     */
+    private static Object getData(Object instance) throws ReflectiveOperationException {
+        Field field = dataFields.get(instance.getClass());
+        if (field != null) {
+            return ((JickaThreadLocal) field.get(instance)).get();
+        }
+
+        /* The class was transformed after its loading (agent) */
+        return attachedData.computeIfAbsent(instance, JickaThreadLocal::new).get();
+    }
+
+    /**
+     * Method called when a class transformed after its loading is restored.
+     * The objects Data of its instances are forgotten, so the values not yet
+     * flushed by the threads are lost.
+     *
+     * @param cls The restored class.
+     */
+    static void removeData(Class<?> cls) {
+        attachedData.removeIf(instance -> instance.getClass() == cls);
     }
 
     /**
@@ -113,22 +212,22 @@ public class LocalHeap {
     /**
      * Array to store all local primitive static fields.
      */
-    private final long[] staticValuesPrimitiveLocal = new long[Configuration.STATICMAXSIZE];
+    private long[] staticValuesPrimitiveLocal = new long[Configuration.STATICMAXSIZE];
 
     /**
      * Array to store all heap primitive static fields.
      */
-    private final long[] staticValuesPrimitiveHeap = new long[Configuration.STATICMAXSIZE];
+    private long[] staticValuesPrimitiveHeap = new long[Configuration.STATICMAXSIZE];
 
     /**
      * Array to store all local objects static fields.
      */
-    private final Object[] staticValuesObjectLocal = new Object[Configuration.STATICMAXSIZE];
+    private Object[] staticValuesObjectLocal = new Object[Configuration.STATICMAXSIZE];
 
     /**
      * Array to store all heap objects static fields.
      */
-    private final Object[] staticValuesObjectHeap = new Object[Configuration.STATICMAXSIZE];
+    private Object[] staticValuesObjectHeap = new Object[Configuration.STATICMAXSIZE];
 
     /**
      * Field to indentidy the current block of the Thread.
@@ -138,7 +237,61 @@ public class LocalHeap {
     /**
      * Array to store all affected block for each static field.
      */
-    private final int[] staticBlock = new int[Configuration.STATICMAXSIZE];
+    private int[] staticBlock = new int[Configuration.STATICMAXSIZE];
+
+    /**
+     * Number of offsets of attachedOffsets already read by the thread.
+     */
+    private int attached = 0;
+
+    /**
+     * Read from the heap the static fields registered by an agent since the
+     * last call.
+     *
+     * @throws Throwable
+     */
+    private void refreshAttached() throws Throwable {
+        synchronized (lockLocalHeap) {
+            for (; attached < attachedTop; attached++) {
+                ensureStatic(attachedOffsets[attached]);
+                resfreshStatic(attachedOffsets[attached]);
+            }
+        }
+    }
+
+    /**
+     * Check that the arrays of static fields of the thread can store a static
+     * field.
+     *
+     * @param offset The offset of the static field in array storage.
+     * @throws Throwable
+     */
+    private void ensureStatic(int offset) throws Throwable {
+        if (offset >= staticBlock.length) {
+            growStatic(offset + 1);
+        }
+    }
+
+    /**
+     * Increase the size of the arrays of static fields of the thread. This
+     * happens only with agent, when a class is loaded after the creation of
+     * the local heap. The new static fields are read from the heap.
+     *
+     * @param size The minimal size of the arrays.
+     * @throws Throwable
+     */
+    private void growStatic(int size) throws Throwable {
+        int oldSize = staticBlock.length;
+        int newSize = Math.max(size, Math.max(Configuration.STATICMAXSIZE, oldSize * 2));
+        staticValuesPrimitiveLocal = Arrays.copyOf(staticValuesPrimitiveLocal, newSize);
+        staticValuesPrimitiveHeap = Arrays.copyOf(staticValuesPrimitiveHeap, newSize);
+        staticValuesObjectLocal = Arrays.copyOf(staticValuesObjectLocal, newSize);
+        staticValuesObjectHeap = Arrays.copyOf(staticValuesObjectHeap, newSize);
+        staticBlock = Arrays.copyOf(staticBlock, newSize);
+        for (int offset = oldSize; offset < newSize; offset++) {
+            resfreshStatic(offset);
+        }
+    }
 
     /**
      * Return a int type from a string type.
@@ -183,21 +336,8 @@ public class LocalHeap {
      */
     public static void createMethodHandles(MethodHandles.Lookup lookup, int offset, String classe, String name, String type, boolean isFinal, boolean isVolatile) throws Throwable {
 
-        /* If not enought space (only with agent) */
-        if (offset >= staticVolatile.length) {
-            Configuration.STATICMAXSIZE = offset + 1;
-            staticVolatile = Arrays.copyOf(staticVolatile, Configuration.STATICMAXSIZE);
-            staticType = Arrays.copyOf(staticType, Configuration.STATICMAXSIZE);
-            staticGetterMethodHandle = Arrays.copyOf(staticGetterMethodHandle, Configuration.STATICMAXSIZE);
-            staticSetterMethodHandle = Arrays.copyOf(staticSetterMethodHandle, Configuration.STATICMAXSIZE);
-        }
-
-        /* Store the volatile tag */
-        staticVolatile[offset] = isVolatile;
-
         /* Get the type of the element */
         int localType = getType(type);
-        staticType[offset] = localType;
 
         /* Get the classe of the element */
         Class classeType;
@@ -208,9 +348,78 @@ public class LocalHeap {
         }
 
         /* Create MethodHandles */
-        staticGetterMethodHandle[offset] = lookup.findStaticGetter(Class.forName(classe.replace("/", ".")), name, classeType);
+        MethodHandle getter = lookup.findStaticGetter(Class.forName(classe.replace("/", ".")), name, classeType);
+        MethodHandle setter = null;
         if (!isFinal) {
-            staticSetterMethodHandle[offset] = lookup.findStaticSetter(Class.forName(classe.replace("/", ".")), name, classeType);
+            setter = lookup.findStaticSetter(Class.forName(classe.replace("/", ".")), name, classeType);
+        }
+
+        putMethodHandles(offset, localType, getter, setter, isVolatile);
+    }
+
+    /**
+     * Method called by an agent attached to a running JVM to create a
+     * setter/getter of a static field. The threads already started read the
+     * field from the heap before using it.
+     *
+     * @param lookup Factory to create method handles.
+     * @param offset The offset of the static field in array storage.
+     * @param field The static field.
+     * @param desc The description which represent the type of the field.
+     * @throws Throwable
+     */
+    static void attachMethodHandles(MethodHandles.Lookup lookup, int offset, Field field, String desc) throws Throwable {
+        if (offset < staticGetterMethodHandle.length && staticGetterMethodHandle[offset] != null) {
+            return;
+        }
+        field.setAccessible(true);
+        MethodHandle getter = lookup.unreflectGetter(field);
+        MethodHandle setter = null;
+        if (!Modifier.isFinal(field.getModifiers())) {
+            setter = lookup.unreflectSetter(field);
+        }
+        putMethodHandles(offset, getType(desc), getter, setter, Modifier.isVolatile(field.getModifiers()));
+
+        synchronized (lockLocalHeap) {
+            if (attachedOffsets.length == attachedTop) {
+                attachedOffsets = Arrays.copyOf(attachedOffsets, attachedOffsets.length * 2);
+            }
+            attachedOffsets[attachedTop] = offset;
+            attachedTop++;
+        }
+    }
+
+    /**
+     * Store the setter/getter of a static field.
+     *
+     * @param offset The offset of the static field in array storage.
+     * @param type The type of the field (see getType).
+     * @param getter The getter of the field.
+     * @param setter The setter of the field, or null if the field is final.
+     * @param isVolatile A flag to identify if the flag is volatile or not.
+     */
+    private static void putMethodHandles(int offset, int type, MethodHandle getter, MethodHandle setter, boolean isVolatile) {
+        synchronized (lockLocalHeap) {
+
+            /* If not enought space (only with agent) */
+            if (offset >= staticVolatile.length) {
+                int size = Math.max(offset + 1, staticVolatile.length * 2);
+                staticType = Arrays.copyOf(staticType, size);
+                staticGetterMethodHandle = Arrays.copyOf(staticGetterMethodHandle, size);
+                staticSetterMethodHandle = Arrays.copyOf(staticSetterMethodHandle, size);
+                staticVolatile = Arrays.copyOf(staticVolatile, size);
+            }
+            if (offset >= Configuration.STATICMAXSIZE) {
+                Configuration.STATICMAXSIZE = offset + 1;
+            }
+
+            /* Store the volatile tag and the type of the element */
+            staticVolatile[offset] = isVolatile;
+            staticType[offset] = type;
+
+            /* Store MethodHandles */
+            staticGetterMethodHandle[offset] = getter;
+            staticSetterMethodHandle[offset] = setter;
         }
     }
 
@@ -221,7 +430,7 @@ public class LocalHeap {
      */
     private void putStaticRefreshOffsets(int offset) {
         if (staticRefreshOffsets.length == staticRefreshTop) {
-            staticRefreshOffsets = Arrays.copyOf(staticRefreshOffsets, staticRefreshOffsets.length * 2);
+            staticRefreshOffsets = Arrays.copyOf(staticRefreshOffsets, Math.max(16, staticRefreshOffsets.length * 2));
         }
         staticRefreshOffsets[staticRefreshTop] = offset;
         staticRefreshTop++;
@@ -234,7 +443,7 @@ public class LocalHeap {
      */
     private void putStaticFlushOffsets(int offset) {
         if (staticFlushOffsets.length == staticFlushTop) {
-            staticFlushOffsets = Arrays.copyOf(staticFlushOffsets, staticFlushOffsets.length * 2);
+            staticFlushOffsets = Arrays.copyOf(staticFlushOffsets, Math.max(16, staticFlushOffsets.length * 2));
         }
         staticFlushOffsets[staticFlushTop] = offset;
         staticFlushTop++;
@@ -275,7 +484,7 @@ public class LocalHeap {
      */
     private void putFieldRefreshOffsets(Object instance) {
         if (fieldRefreshOffsets.length == fieldRefreshTop) {
-            fieldRefreshOffsets = Arrays.copyOf(fieldRefreshOffsets, fieldRefreshOffsets.length * 2);
+            fieldRefreshOffsets = Arrays.copyOf(fieldRefreshOffsets, Math.max(16, fieldRefreshOffsets.length * 2));
         }
         fieldRefreshOffsets[fieldRefreshTop] = new WeakReference<>(instance);
         fieldRefreshTop++;
@@ -288,7 +497,7 @@ public class LocalHeap {
      */
     private void putFieldFlushOffsets(Object instance) {
         if (fieldFlushOffsets.length == fieldFlushTop) {
-            fieldFlushOffsets = Arrays.copyOf(fieldFlushOffsets, fieldFlushOffsets.length * 2);
+            fieldFlushOffsets = Arrays.copyOf(fieldFlushOffsets, Math.max(16, fieldFlushOffsets.length * 2));
         }
         fieldFlushOffsets[fieldFlushTop] = new WeakReference<>(instance);
         fieldFlushTop++;
@@ -340,7 +549,7 @@ public class LocalHeap {
      */
     private void resfreshStatic(int offset) throws Throwable {
 
-        if (staticGetterMethodHandle[offset] == null) {
+        if (offset >= staticGetterMethodHandle.length || staticGetterMethodHandle[offset] == null) {
             return;
         }
 
@@ -413,6 +622,7 @@ public class LocalHeap {
         LocalHeap storage = getLocalHeap();
         int offset;
         while ((offset = storage.popStaticRefreshOffsets()) != -1) {
+            storage.ensureStatic(offset);
             storage.resfreshStatic(offset);
         }
     }
@@ -435,9 +645,9 @@ public class LocalHeap {
     /**
      * Refresh all instance field from the Heap into localHeap.
      *
-     * @throws ReflectiveOperationException
+     * @throws Throwable
      */
-    private static void refreshField() throws ReflectiveOperationException {
+    private static void refreshField() throws Throwable {
         LocalHeap storage = getLocalHeap();
         WeakReference reference;
         Object instance;
@@ -449,9 +659,7 @@ public class LocalHeap {
             }
 
             /* Get Data */
-            Field field = getField(instance, JickaThreadLocal.FIELDNAME);
-            JickaThreadLocal data = (JickaThreadLocal) field.get(instance);
-            refreshFieldAll(instance, data.get());
+            refreshFieldAll(instance, getData(instance));
         }
     }
 
@@ -611,11 +819,9 @@ public class LocalHeap {
     /**
      * Method called to flush all local instance fied into the Heap.
      *
-     * @throws IllegalArgumentException
-     * @throws IllegalAccessException
-     * @throws NoSuchFieldException
+     * @throws Throwable
      */
-    private static void flushField() throws IllegalArgumentException, IllegalAccessException, NoSuchFieldException {
+    private static void flushField() throws Throwable {
         LocalHeap storage = getLocalHeap();
         WeakReference reference;
         Object instance, data;
@@ -707,8 +913,9 @@ public class LocalHeap {
 
     /**
      *
+     * @throws Throwable
      */
-    public static void increaseBlock() {
+    public static void increaseBlock() throws Throwable {
         LocalHeap storage = getLocalHeap();
         storage.putStaticFlushOffsets(-1);
         storage.block++;
@@ -716,8 +923,9 @@ public class LocalHeap {
 
     /**
      *
+     * @throws Throwable
      */
-    public static void decreaseBlock() {
+    public static void decreaseBlock() throws Throwable {
         LocalHeap storage = getLocalHeap();
         storage.block--;
     }
@@ -729,7 +937,7 @@ public class LocalHeap {
      * @throws Throwable
      */
     public static void setStaticObject(Object object, int offset) throws Throwable {
-        LocalHeap storage = getLocalHeap();
+        LocalHeap storage = getLocalHeap(offset);
 
         if (object != storage.staticValuesObjectHeap[offset]
                 && (storage.staticValuesObjectLocal[offset] == storage.staticValuesObjectHeap[offset]
@@ -741,7 +949,7 @@ public class LocalHeap {
         storage.staticBlock[offset] = storage.block;
 
         /* If volatile, write all data */
-        if (staticVolatile[offset]) {
+        if (isVolatile(offset)) {
             flush();
         }
     }
@@ -810,7 +1018,7 @@ public class LocalHeap {
      * @throws Throwable
      */
     public static void setStaticLong(long object, int offset) throws Throwable {
-        LocalHeap storage = getLocalHeap();
+        LocalHeap storage = getLocalHeap(offset);
 
         if (object != storage.staticValuesPrimitiveHeap[offset]
                 && (storage.staticValuesPrimitiveLocal[offset] == storage.staticValuesPrimitiveHeap[offset]
@@ -822,7 +1030,7 @@ public class LocalHeap {
         storage.staticBlock[offset] = storage.block;
 
         /* If volatile, write all data */
-        if (staticVolatile[offset]) {
+        if (isVolatile(offset)) {
             flush();
         }
     }
@@ -858,10 +1066,10 @@ public class LocalHeap {
      * @throws Throwable
      */
     public static Object getStaticObject(int offset) throws Throwable {
-        LocalHeap storage = getLocalHeap();
+        LocalHeap storage = getLocalHeap(offset);
 
         /* If volatile field, update all fields before */
-        if (staticVolatile[offset]) {
+        if (isVolatile(offset)) {
             refresh();
         }
 
@@ -933,10 +1141,10 @@ public class LocalHeap {
      * @throws Throwable
      */
     public static long getStaticLong(int offset) throws Throwable {
-        LocalHeap storage = getLocalHeap();
+        LocalHeap storage = getLocalHeap(offset);
 
         /* If volatile field, update all fields before */
-        if (staticVolatile[offset]) {
+        if (isVolatile(offset)) {
             refresh();
         }
 
@@ -977,8 +1185,7 @@ public class LocalHeap {
      */
     public static void setFieldObject(Object instance, Object value, String name) throws ReflectiveOperationException, Throwable {
 
-        Field field = getField(instance, JickaThreadLocal.FIELDNAME);
-        Object data = ((JickaThreadLocal) field.get(instance)).get();
+        Object data = getData(instance);
 
         LocalHeap storage = getLocalHeap();
         Field fieldVariable = getField(data, name);
@@ -1012,8 +1219,7 @@ public class LocalHeap {
      */
     public static void setFieldByte(Object instance, byte value, String name) throws ReflectiveOperationException, Throwable {
 
-        Field field = getField(instance, JickaThreadLocal.FIELDNAME);
-        Object data = ((JickaThreadLocal) field.get(instance)).get();
+        Object data = getData(instance);
 
         LocalHeap storage = getLocalHeap();
         Field fieldVariable = getField(data, name);
@@ -1048,8 +1254,7 @@ public class LocalHeap {
      */
     public static void setFieldShort(Object instance, short value, String name) throws ReflectiveOperationException, Throwable {
 
-        Field field = getField(instance, JickaThreadLocal.FIELDNAME);
-        Object data = ((JickaThreadLocal) field.get(instance)).get();
+        Object data = getData(instance);
 
         LocalHeap storage = getLocalHeap();
         Field fieldVariable = getField(data, name);
@@ -1084,8 +1289,7 @@ public class LocalHeap {
      */
     public static void setFieldBoolean(Object instance, boolean value, String name) throws ReflectiveOperationException, Throwable {
 
-        Field field = getField(instance, JickaThreadLocal.FIELDNAME);
-        Object data = ((JickaThreadLocal) field.get(instance)).get();
+        Object data = getData(instance);
 
         LocalHeap storage = getLocalHeap();
         Field fieldVariable = getField(data, name);
@@ -1120,8 +1324,7 @@ public class LocalHeap {
      */
     public static void setFieldInteger(Object instance, int value, String name) throws ReflectiveOperationException, Throwable {
 
-        Field field = getField(instance, JickaThreadLocal.FIELDNAME);
-        Object data = ((JickaThreadLocal) field.get(instance)).get();
+        Object data = getData(instance);
 
         LocalHeap storage = getLocalHeap();
         Field fieldVariable = getField(data, name);
@@ -1156,8 +1359,7 @@ public class LocalHeap {
      */
     public static void setFieldFloat(Object instance, float value, String name) throws ReflectiveOperationException, Throwable {
 
-        Field field = getField(instance, JickaThreadLocal.FIELDNAME);
-        Object data = ((JickaThreadLocal) field.get(instance)).get();
+        Object data = getData(instance);
 
         LocalHeap storage = getLocalHeap();
         Field fieldVariable = getField(data, name);
@@ -1192,8 +1394,7 @@ public class LocalHeap {
      */
     public static void setFieldLong(Object instance, long value, String name) throws ReflectiveOperationException, Throwable {
 
-        Field field = getField(instance, JickaThreadLocal.FIELDNAME);
-        Object data = ((JickaThreadLocal) field.get(instance)).get();
+        Object data = getData(instance);
 
         LocalHeap storage = getLocalHeap();
         Field fieldVariable = getField(data, name);
@@ -1228,8 +1429,7 @@ public class LocalHeap {
      */
     public static void setFieldDouble(Object instance, double value, String name) throws ReflectiveOperationException, Throwable {
 
-        Field field = getField(instance, JickaThreadLocal.FIELDNAME);
-        Object data = ((JickaThreadLocal) field.get(instance)).get();
+        Object data = getData(instance);
 
         LocalHeap storage = getLocalHeap();
         Field fieldVariable = getField(data, name);
@@ -1264,8 +1464,7 @@ public class LocalHeap {
      */
     public static void setFieldChar(Object instance, char value, String name) throws ReflectiveOperationException, Throwable {
 
-        Field field = getField(instance, JickaThreadLocal.FIELDNAME);
-        Object data = ((JickaThreadLocal) field.get(instance)).get();
+        Object data = getData(instance);
 
         LocalHeap storage = getLocalHeap();
         Field fieldVariable = getField(data, name);
@@ -1312,8 +1511,7 @@ public class LocalHeap {
      * @throws Throwable
      */
     public static Object getFieldObject(Object instance, String name) throws ReflectiveOperationException, Throwable {
-        Field fieldInstance = getField(instance, JickaThreadLocal.FIELDNAME);
-        Object data = ((JickaThreadLocal) fieldInstance.get(instance)).get();
+        Object data = getData(instance);
 
         Field fieldVolatile = getField(data, name + JickaThreadLocal.VOLATILEEXTENSION);
         if (fieldVolatile.getBoolean(data)) {
@@ -1334,8 +1532,7 @@ public class LocalHeap {
      * @throws Throwable
      */
     public static byte getFieldByte(Object instance, String name) throws ReflectiveOperationException, Throwable {
-        Field fieldInstance = getField(instance, JickaThreadLocal.FIELDNAME);
-        Object data = ((JickaThreadLocal) fieldInstance.get(instance)).get();
+        Object data = getData(instance);
 
         Field fieldVolatile = getField(data, name + JickaThreadLocal.VOLATILEEXTENSION);
         if (fieldVolatile.getBoolean(data)) {
@@ -1356,8 +1553,7 @@ public class LocalHeap {
      * @throws Throwable
      */
     public static short getFieldShort(Object instance, String name) throws ReflectiveOperationException, Throwable {
-        Field fieldInstance = getField(instance, JickaThreadLocal.FIELDNAME);
-        Object data = ((JickaThreadLocal) fieldInstance.get(instance)).get();
+        Object data = getData(instance);
 
         Field fieldVolatile = getField(data, name + JickaThreadLocal.VOLATILEEXTENSION);
         if (fieldVolatile.getBoolean(data)) {
@@ -1378,8 +1574,7 @@ public class LocalHeap {
      * @throws Throwable
      */
     public static boolean getFieldBoolean(Object instance, String name) throws ReflectiveOperationException, Throwable {
-        Field fieldInstance = getField(instance, JickaThreadLocal.FIELDNAME);
-        Object data = ((JickaThreadLocal) fieldInstance.get(instance)).get();
+        Object data = getData(instance);
 
         Field fieldVolatile = getField(data, name + JickaThreadLocal.VOLATILEEXTENSION);
         if (fieldVolatile.getBoolean(data)) {
@@ -1401,8 +1596,7 @@ public class LocalHeap {
      */
     public static int getFieldInteger(Object instance, String name) throws ReflectiveOperationException, Throwable {
         
-        Field fieldInstance = getField(instance, JickaThreadLocal.FIELDNAME);
-        Object data = ((JickaThreadLocal) fieldInstance.get(instance)).get();
+        Object data = getData(instance);
 
         Field fieldVolatile = getField(data, name + JickaThreadLocal.VOLATILEEXTENSION);
         if (fieldVolatile.getBoolean(data)) {
@@ -1423,8 +1617,7 @@ public class LocalHeap {
      * @throws Throwable
      */
     public static float getFieldFloat(Object instance, String name) throws ReflectiveOperationException, Throwable {
-        Field fieldInstance = getField(instance, JickaThreadLocal.FIELDNAME);
-        Object data = ((JickaThreadLocal) fieldInstance.get(instance)).get();
+        Object data = getData(instance);
 
         Field fieldVolatile = getField(data, name + JickaThreadLocal.VOLATILEEXTENSION);
         if (fieldVolatile.getBoolean(data)) {
@@ -1445,8 +1638,7 @@ public class LocalHeap {
      * @throws Throwable
      */
     public static long getFieldLong(Object instance, String name) throws ReflectiveOperationException, Throwable {
-        Field fieldInstance = getField(instance, JickaThreadLocal.FIELDNAME);
-        Object data = ((JickaThreadLocal) fieldInstance.get(instance)).get();
+        Object data = getData(instance);
 
         Field fieldVolatile = getField(data, name + JickaThreadLocal.VOLATILEEXTENSION);
         if (fieldVolatile.getBoolean(data)) {
@@ -1467,8 +1659,7 @@ public class LocalHeap {
      * @throws Throwable
      */
     public static double getFieldDouble(Object instance, String name) throws ReflectiveOperationException, Throwable {
-        Field fieldInstance = getField(instance, JickaThreadLocal.FIELDNAME);
-        Object data = ((JickaThreadLocal) fieldInstance.get(instance)).get();
+        Object data = getData(instance);
 
         Field fieldVolatile = getField(data, name + JickaThreadLocal.VOLATILEEXTENSION);
         if (fieldVolatile.getBoolean(data)) {
@@ -1489,8 +1680,7 @@ public class LocalHeap {
      * @throws Throwable
      */
     public static char getFieldChar(Object instance, String name) throws ReflectiveOperationException, Throwable {
-        Field fieldInstance = getField(instance, JickaThreadLocal.FIELDNAME);
-        Object data = ((JickaThreadLocal) fieldInstance.get(instance)).get();
+        Object data = getData(instance);
 
         Field fieldVolatile = getField(data, name + JickaThreadLocal.VOLATILEEXTENSION);
         if (fieldVolatile.getBoolean(data)) {
@@ -0,0 +1,125 @@
+package com.jicka.core;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ *
+ * @author Mickael Boudignot
+ * @param <V>
+ */
+class WeakIdentityMap<V> {
+
+    /**
+     * Class to store a key without preventing its garbage collection. Keys are
+     * compared with == and System.identityHashCode, so the methods equals and
+     * hashCode of the instances (which can be transformed) are never called.
+     */
+    private static class Key extends WeakReference<Object> {
+
+        /**
+         * The identity hash code of the instance.
+         */
+        private final int hash;
+
+        /**
+         * Create a key from an instance.
+         *
+         * @param instance The instance.
+         * @param queue The queue which receives the key when the instance is
+         * collected, or null.
+         */
+        Key(Object instance, ReferenceQueue<Object> queue) {
+            super(instance, queue);
+            hash = System.identityHashCode(instance);
+        }
+
+        /**
+         * Return the identity hash code of the instance.
+         *
+         * @return an integer.
+         */
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        /**
+         * Method to know if two keys reference the same instance.
+         *
+         * @param other The other key.
+         * @return true if the instances are the same.
+         */
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Object instance = get();
+            return instance != null && instance == ((Key) other).get();
+        }
+    }
+
+    /**
+     * The values associated to each instance.
+     */
+    private final HashMap<Key, V> values = new HashMap<>();
+
+    /**
+     * The queue of the keys whose instance is collected.
+     */
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+
+    /**
+     * Return the value associated to an instance. The value is created if the
+     * instance hasn't a value.
+     *
+     * @param instance The instance.
+     * @param create The function which creates the value of an instance.
+     * @return the value of the instance.
+     */
+    synchronized V computeIfAbsent(Object instance, Function<Object, V> create) {
+        expunge();
+        V value = values.get(new Key(instance, null));
+        if (value == null) {
+            value = create.apply(instance);
+            values.put(new Key(instance, queue), value);
+        }
+        return value;
+    }
+
+    /**
+     * Remove the values of all instances which match a condition.
+     *
+     * @param filter The condition on the instances.
+     */
+    synchronized void removeIf(Predicate<Object> filter) {
+        expunge();
+        Iterator<Map.Entry<Key, V>> iterator = values.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Object instance = iterator.next().getKey().get();
+            if (instance == null || filter.test(instance)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Remove the values of the instances collected by the garbage collector.
+     */
+    private void expunge() {
+        Reference<?> key;
+        while ((key = queue.poll()) != null) {
+            values.remove(key);
+        }
+    }
+}
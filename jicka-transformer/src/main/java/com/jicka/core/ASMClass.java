@@ -1,7 +1,8 @@
 package com.jicka.core;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -11,20 +12,6 @@ import java.util.Set;
  */
 class ASMClass {
 
-    /**
-     * Field to store the only instance of this class (singleton).
-     */
-    private final static ASMClass instance = new ASMClass();
-
-    /**
-     * Method to return the only instance of this class.
-     *
-     * @return the instance of ASMClass.
-     */
-    static ASMClass get() {
-        return instance;
-    }
-
     /**
      * Class to store information about a field.
      */
@@ -52,7 +39,7 @@ class ASMClass {
          * @param desc Description which represent the type of the field.
          * @param value The default value of the field.
          */
-        private Information(String name, String desc, Object value) {
+        Information(String name, String desc, Object value) {
             this.name = name;
             this.desc = desc;
             this.value = value;
@@ -66,15 +53,17 @@ class ASMClass {
     private int id = 0;
 
     /**
-     * Stucture to store fields. It associates a class and all its fields.
+     * Stucture to store fields. It associates a class and all its fields, in
+     * the order the classes are added.
      */
-    private final HashMap<String, List<Information>> objects = new HashMap<>();
+    private final LinkedHashMap<String, List<Information>> objects = new LinkedHashMap<>();
 
     /**
-     * This class is private and we don't want the generate another instance of
-     * this.
+     * Each JickaSession owns its own instance of this class, so two sessions
+     * never share their fields. All methods are synchronized because classes
+     * can be transformed by several threads at the same time.
      */
-    private ASMClass() {
+    ASMClass() {
     }
 
     /**
@@ -84,7 +73,7 @@ class ASMClass {
      *
      * @param name
      */
-    public void addClass(String name) {
+    public synchronized void addClass(String name) {
         objects.put(name + JickaThreadLocal.CLASSEXTENSION, new ArrayList<>());
         id++;
     }
@@ -98,17 +87,27 @@ class ASMClass {
      * @param desc Description which represent the type of the field.
      * @param value The default value of the field.
      */
-    public void addField(String owner, String name, String desc, Object value) {
+    public synchronized void addField(String owner, String name, String desc, Object value) {
         objects.get(owner + JickaThreadLocal.CLASSEXTENSION).add(new Information(name, desc, value));
     }
 
+    /**
+     * Method to know if a class is already stored.
+     *
+     * @param name The name of the class.
+     * @return true if the class has a class Data.
+     */
+    synchronized boolean contains(String name) {
+        return objects.containsKey(name + JickaThreadLocal.CLASSEXTENSION);
+    }
+
     /**
      * Return a list of all classes stored during inspection.
      *
-     * @return a set to avoid duplicate.
+     * @return a copy of the classes in the order they were added.
      */
-    public Set<String> getClasses() {
-        return objects.keySet();
+    public synchronized Set<String> getClasses() {
+        return new LinkedHashSet<>(objects.keySet());
     }
 
     /**
@@ -117,7 +116,7 @@ class ASMClass {
      * @param owner The name of the class where we want the fields.
      * @return a list of fields
      */
-    public List<Information> getFields(String owner) {
+    public synchronized List<Information> getFields(String owner) {
         return objects.get(owner);
     }
 
@@ -126,7 +125,15 @@ class ASMClass {
      *
      * @return an interger.
      */
-    public int getMaxId() {
+    public synchronized int getMaxId() {
         return id;
     }
+
+    /**
+     * Remove all classes and their fields.
+     */
+    synchronized void clear() {
+        objects.clear();
+        id = 0;
+    }
 }
@@ -1,6 +1,7 @@
 package com.jicka.core;
 
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  *
@@ -8,20 +9,6 @@ import java.util.HashMap;
  */
 class ASMFieldStatic {
 
-    /**
-     * Field to store the only instance of this class (singleton).
-     */
-    private final static ASMFieldStatic instance = new ASMFieldStatic();
-
-    /**
-     * Method to return the only instance of this class.
-     *
-     * @return the instance of ASMFieldStatic.
-     */
-    static ASMFieldStatic get() {
-        return instance;
-    }
-
     /**
      * Number of static field in the target program. This id increases when a
      * new instance field is discovered (when the method addClass is called).
@@ -32,13 +19,14 @@ class ASMFieldStatic {
      * Stucture to store static fields. It associates a class and all its
      * fields.
      */
-    private final HashMap<String, Integer> offsets = new HashMap<>();
+    private final LinkedHashMap<String, Integer> offsets = new LinkedHashMap<>();
 
     /**
-     * This class is private and we don't want the generate another instance of
-     * this.
+     * Each JickaSession owns its own instance of this class, so two sessions
+     * never share their fields. All methods are synchronized because classes
+     * can be transformed by several threads at the same time.
      */
-    private ASMFieldStatic() {
+    ASMFieldStatic() {
     }
 
     /**
@@ -50,7 +38,7 @@ class ASMFieldStatic {
      * @param desc Description which represent the type of the field.
      * @param value The default value of the field.
      */
-    public void putOffset(String owner, String name, String desc) {
+    public synchronized void putOffset(String owner, String name, String desc) {
         String hashString = getHashString(owner, name, desc);
         Integer offset = offsets.get(hashString);
         if (offset == null) {
@@ -68,7 +56,7 @@ class ASMFieldStatic {
      * @param desc Description which represent the type of the field.
      * @return an integer who represent an unique id for this field.
      */
-    public int getOffset(String owner, String name, String desc) {
+    public synchronized int getOffset(String owner, String name, String desc) {
         String hashString = getHashString(owner, name, desc);
         if (!offsets.containsKey(hashString)) {
             putOffset(owner, name, desc);
@@ -76,12 +64,39 @@ class ASMFieldStatic {
         return offsets.get(getHashString(owner, name, desc));
     }
 
+    /**
+     * Return the offsets of all static fields.
+     *
+     * @return a copy of the offsets, indexed by owner, name and description,
+     * in the order of the offsets.
+     */
+    synchronized Map<String, Integer> getOffsets() {
+        Map<String, Integer> sorted = new LinkedHashMap<>();
+        offsets.entrySet().stream()
+                .sorted(Map.Entry.comparingByValue())
+                .forEach(entry -> sorted.put(entry.getKey(), entry.getValue()));
+        return sorted;
+    }
+
+    /**
+     * Restore the offsets of static fields saved by a previous run (see
+     * getOffsets). The new static fields get offsets after them.
+     *
+     * @param saved The offsets indexed by owner, name and description.
+     */
+    synchronized void putOffsets(Map<String, Integer> saved) {
+        for (Map.Entry<String, Integer> entry : saved.entrySet()) {
+            offsets.put(entry.getKey(), entry.getValue());
+            id = Math.max(id, entry.getValue() + 1);
+        }
+    }
+
     /**
      * Return the max number of fields in all target program.
      *
      * @return an interger.
      */
-    public int getMaxId() {
+    public synchronized int getMaxId() {
         return id;
     }
 
@@ -97,4 +112,12 @@ class ASMFieldStatic {
     private String getHashString(String owner, String name, String desc) {
         return String.format("%s.%s.%s", owner, name, desc);
     }
+
+    /**
+     * Remove the offsets of all static fields.
+     */
+    synchronized void clear() {
+        offsets.clear();
+        id = 0;
+    }
 }
@@ -1,6 +1,8 @@
 package com.jicka.core;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 
 /**
@@ -9,20 +11,6 @@ import java.util.List;
  */
 class ASMMethodHandle {
 
-    /**
-     * Field to store the only instance of this class (singleton).
-     */
-    private final static ASMMethodHandle instance = new ASMMethodHandle();
-
-    /**
-     * Method to return the only instance of this class.
-     *
-     * @return the instance of ASMClass.
-     */
-    static ASMMethodHandle get() {
-        return instance;
-    }
-
     /**
      * Class to store information about a static field.
      */
@@ -62,7 +50,7 @@ class ASMMethodHandle {
          * @param isFinal A flag to know if it's a final field.
          * @param isVolatile A flag to know if it's a volatile field.
          */
-        private Information(String owner, String name, String desc, boolean isFinal, boolean isVolatile) {
+        Information(String owner, String name, String desc, boolean isFinal, boolean isVolatile) {
             this.owner = owner;
             this.name = name;
             this.desc = desc;
@@ -74,15 +62,17 @@ class ASMMethodHandle {
     /**
      * Structure to store all static field. There will be use when we want to
      * create each method handle to get and set a static field in target
-     * program.
+     * program. Static fields are grouped by class container, so each class
+     * only creates the method handles of its own static fields.
      */
-    private final List<Information> methodHandle = new ArrayList<>();
+    private final LinkedHashMap<String, List<Information>> methodHandle = new LinkedHashMap<>();
 
     /**
-     * This class is private and we don't want the generate another instance of
-     * this.
+     * Each JickaSession owns its own instance of this class, so two sessions
+     * never share their fields. All methods are synchronized because classes
+     * can be transformed by several threads at the same time.
      */
-    private ASMMethodHandle() {
+    ASMMethodHandle() {
     }
 
     /**
@@ -94,24 +84,45 @@ class ASMMethodHandle {
      * @param isFinal A flag to know if it's a final field.
      * @param isVolatile A flag to know if it's a volatile field.
      */
-    public void addMethodHandle(String owner, String name, String desc, boolean isFinal, boolean isVolatile) {
-        methodHandle.add(new Information(owner, name, desc, isFinal, isVolatile));
+    public synchronized void addMethodHandle(String owner, String name, String desc, boolean isFinal, boolean isVolatile) {
+        methodHandle.computeIfAbsent(owner, key -> new ArrayList<>()).add(new Information(owner, name, desc, isFinal, isVolatile));
     }
 
     /**
-     * Method to empty the storage. This method is called when we write all
-     * method handles.
+     * Method which replace the static fields of a class by the static fields
+     * of an index.
+     *
+     * @param owner The name of the class container.
+     * @param informations The static fields of the class.
      */
-    public void clearMethodHandle() {
-        methodHandle.clear();
+    synchronized void putMethodHandles(String owner, List<Information> informations) {
+        methodHandle.put(owner, new ArrayList<>(informations));
     }
 
     /**
-     * Method which return a list of all static fields.
+     * Method to empty the storage of a class. This method is called when we
+     * write all method handles of this class.
      *
+     * @param owner The name of the class container.
+     */
+    public synchronized void clearMethodHandle(String owner) {
+        methodHandle.remove(owner);
+    }
+
+    /**
+     * Method which return a list of all static fields of a class.
+     *
+     * @param owner The name of the class container.
      * @return a list which will be used to generate all method handles
      */
-    public List<Information> getMethodHandle() {
-        return methodHandle;
+    public synchronized List<Information> getMethodHandle(String owner) {
+        return methodHandle.getOrDefault(owner, Collections.emptyList());
+    }
+
+    /**
+     * Remove the static fields of all classes.
+     */
+    synchronized void clear() {
+        methodHandle.clear();
     }
 }
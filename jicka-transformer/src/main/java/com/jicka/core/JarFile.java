@@ -0,0 +1,649 @@
+package com.jicka.core;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+
+/**
+ *
+ * @author Mickael Boudignot
+ */
+class JarFile implements Closeable {
+
+    /**
+     * Size of buffers used to copy data.
+     */
+    private static final int BUFFERSIZE = 64 * 1024;
+
+    /**
+     * Signatures of the records of a zip file.
+     */
+    private static final int LOCALHEADER = 0x04034b50;
+    private static final int CENTRALHEADER = 0x02014b50;
+    private static final int ENDHEADER = 0x06054b50;
+
+    /**
+     * Size of the fixed part of the records of a zip file.
+     */
+    private static final int LOCALHEADERSIZE = 30;
+    private static final int CENTRALHEADERSIZE = 46;
+    private static final int ENDHEADERSIZE = 22;
+
+    /**
+     * Flag of an entry which stores its sizes after the data.
+     */
+    private static final int DESCRIPTORFLAG = 0x08;
+
+    /**
+     * Flag of an entry which has an UTF-8 name.
+     */
+    private static final int UTF8FLAG = 0x800;
+
+    /**
+     * Time and date in MS-DOS format of the entries created by Jicka
+     * (1980-02-01 00:00:00). They are fixed, so the same input always gives
+     * the same jar. The first day of February stays after 1980 in any time
+     * zone.
+     */
+    private static final int DOSTIME = 0;
+    private static final int DOSDATE = (2 << 5) | 1;
+
+    /**
+     * Class to store information about an entry of a jar.
+     */
+    static class Entry {
+
+        /**
+         * The name of the entry encoded in the jar.
+         */
+        final byte[] name;
+
+        /**
+         * The general purpose flags of the entry.
+         */
+        final int flags;
+
+        /**
+         * The compression method (stored or deflated).
+         */
+        final int method;
+
+        /**
+         * The last modification time and date in MS-DOS format.
+         */
+        final int time;
+        final int date;
+
+        /**
+         * The CRC-32 of the uncompressed data.
+         */
+        final long crc;
+
+        /**
+         * The size of the compressed and uncompressed data.
+         */
+        final long compressedSize;
+        final long size;
+
+        /**
+         * The version of the tool which created the entry and its external
+         * attributes (file permissions).
+         */
+        final int versionMadeBy;
+        final long externalAttributes;
+
+        /**
+         * The extra field of the central directory.
+         */
+        final byte[] extra;
+
+        /**
+         * The position of the local header in the jar.
+         */
+        long offset;
+
+        /**
+         * The compressed data when the entry is created in memory.
+         */
+        byte[] data;
+
+        /**
+         * Construct a new entry.
+         */
+        private Entry(byte[] name, int flags, int method, int time, int date, long crc, long compressedSize, long size,
+                int versionMadeBy, long externalAttributes, byte[] extra, long offset) {
+            this.name = name;
+            this.flags = flags;
+            this.method = method;
+            this.time = time;
+            this.date = date;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.versionMadeBy = versionMadeBy;
+            this.externalAttributes = externalAttributes;
+            this.extra = extra;
+            this.offset = offset;
+        }
+
+        /**
+         * Return the name of the entry.
+         *
+         * @return the decoded name.
+         */
+        String getName() {
+            return new String(name, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * The path of the current jar.
+     */
+    private final String jarPath;
+
+    /**
+     * Flag to know if the jar is a directory of classes (an exploded jar).
+     * Its entries are the files of the directory.
+     */
+    private final boolean directory;
+
+    /**
+     * The jar opened to read entries (null until the first read).
+     */
+    private FileChannel input;
+
+    /**
+     * The entries of the jar opened to read, in the order of the jar.
+     */
+    private Map<String, Entry> entries;
+
+    /**
+     * The jar opened to write entries (null until the first write).
+     */
+    private OutputStream output;
+
+    /**
+     * The temporary file which receives the written entries, moved to the
+     * path of the jar when it's closed, so a jar can be rewritten in place
+     * while it's read.
+     */
+    private Path temporary;
+
+    /**
+     * The compression level of entries written in the jar (0 to store entries
+     * without compression).
+     */
+    private final int level;
+
+    /**
+     * The number of bytes written in the jar.
+     */
+    private long position = 0;
+
+    /**
+     * The entries written in the jar, to create the central directory.
+     */
+    private final List<Entry> written = new ArrayList<>();
+
+    /**
+     * Create a new JarFile from a jar path. The jar is opened to read or to
+     * write on the first access. A directory of classes can be read like a
+     * jar.
+     *
+     * @param jarPath The path of the jar or of a directory.
+     */
+    JarFile(String jarPath) {
+        this(jarPath, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Create a new JarFile from a jar path with a compression level for the
+     * entries written.
+     *
+     * @param jarPath The path of the jar.
+     * @param level The compression level from 1 to 9, 0 to store entries
+     * without compression or -1 for the default level.
+     */
+    JarFile(String jarPath, int level) {
+        this.jarPath = jarPath;
+        this.level = level;
+        this.directory = Files.isDirectory(Paths.get(jarPath));
+    }
+
+    /**
+     * Method to know if an entry is a class which can be transformed.
+     *
+     * @param name The name of the entry.
+     * @return true if the entry is a class.
+     */
+    public static boolean isClassFile(String name) {
+        return name.endsWith(".class") && !name.contains("$1.class");
+    }
+
+    /**
+     * List the name of all entries of the jar in the order of the jar.
+     *
+     * @return A list of names.
+     * @throws IOException
+     */
+    public List<String> getEntries() throws IOException {
+        if (directory) {
+            Path root = Paths.get(jarPath);
+            try (Stream<Path> files = Files.walk(root)) {
+                return files.filter(Files::isRegularFile)
+                        .map(file -> root.relativize(file).toString().replace(File.separatorChar, '/'))
+                        .sorted()
+                        .collect(Collectors.toList());
+            }
+        }
+        return new ArrayList<>(getInput().keySet());
+    }
+
+    /**
+     * Method to know if the jar contains an entry.
+     *
+     * @param name The name of the entry.
+     * @return true if the entry exists.
+     * @throws IOException
+     */
+    public boolean contains(String name) throws IOException {
+        if (directory) {
+            return Files.isRegularFile(Paths.get(jarPath, name));
+        }
+        return getInput().containsKey(name);
+    }
+
+    /**
+     * Read the content of an entry.
+     *
+     * @param name The name of the entry.
+     * @return The uncompressed content of the entry.
+     * @throws IOException
+     */
+    public byte[] read(String name) throws IOException {
+        if (directory) {
+            return Files.readAllBytes(Paths.get(jarPath, name));
+        }
+        Entry entry = getInput().get(name);
+        ByteBuffer data = ByteBuffer.allocate((int) entry.compressedSize);
+        readFully(dataOffset(entry), data);
+        if (entry.method == ZipEntry.STORED) {
+            return data.array();
+        }
+        if (entry.method != ZipEntry.DEFLATED) {
+            throw new IOException(String.format("The compression method of '%s' isn't supported.", name));
+        }
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data.array());
+            byte[] buffer = new byte[(int) entry.size];
+            int len = 0;
+            while (len < buffer.length && !inflater.finished()) {
+                int read = inflater.inflate(buffer, len, buffer.length - len);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException(String.format("The entry '%s' is truncated.", name));
+                }
+                len += read;
+            }
+            return buffer;
+        } catch (DataFormatException ex) {
+            throw new IOException(String.format("The entry '%s' is corrupted.", name), ex);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Copy an entry of this jar into another jar. The compressed data is
+     * copied as it is, without decompression and compression. The files of a
+     * directory are compressed.
+     *
+     * @param name The name of the entry.
+     * @param target The jar which receives the entry.
+     * @throws IOException
+     */
+    public void copy(String name, JarFile target) throws IOException {
+        if (directory) {
+            target.write(target.compress(name, read(name)));
+            return;
+        }
+        Entry entry = getInput().get(name);
+        long dataOffset = dataOffset(entry);
+        Entry copy = new Entry(entry.name, entry.flags & ~DESCRIPTORFLAG, entry.method, entry.time, entry.date,
+                entry.crc, entry.compressedSize, entry.size, entry.versionMadeBy, entry.externalAttributes, entry.extra, 0);
+
+        OutputStream out = target.putEntry(copy);
+        byte[] buffer = new byte[BUFFERSIZE];
+        long remaining = entry.compressedSize;
+        while (remaining > 0) {
+            int len = (int) Math.min(buffer.length, remaining);
+            readFully(dataOffset + entry.compressedSize - remaining, ByteBuffer.wrap(buffer, 0, len));
+            out.write(buffer, 0, len);
+            remaining -= len;
+        }
+        target.position += entry.compressedSize;
+    }
+
+    /**
+     * Write an entry compressed by the method compress into the jar.
+     *
+     * @param entry The entry which contains the compressed data.
+     * @throws IOException
+     */
+    public void write(Entry entry) throws IOException {
+        putEntry(entry).write(entry.data);
+        position += entry.data.length;
+    }
+
+    /**
+     * Create an entry and compress its content with the compression level of
+     * this jar. This method doesn't write into the jar, so several entries can
+     * be compressed at the same time by different threads. The entry gets the
+     * fixed time of the entries created by Jicka.
+     *
+     * @param name The name of the entry.
+     * @param buffer The content of the entry.
+     * @return The entry which contains the compressed data.
+     */
+    public Entry compress(String name, byte[] buffer) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer);
+
+        byte[] data = buffer;
+        int method = ZipEntry.STORED;
+        if (level != Deflater.NO_COMPRESSION) {
+            method = ZipEntry.DEFLATED;
+            Deflater deflater = new Deflater(level, true);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(buffer.length / 2 + 64);
+            try {
+                deflater.setInput(buffer);
+                deflater.finish();
+                byte[] block = new byte[BUFFERSIZE];
+                while (!deflater.finished()) {
+                    int len = deflater.deflate(block);
+                    out.write(block, 0, len);
+                }
+            } finally {
+                deflater.end();
+            }
+            data = out.toByteArray();
+        }
+
+        Entry entry = new Entry(name.getBytes(StandardCharsets.UTF_8), UTF8FLAG, method, DOSTIME, DOSDATE,
+                crc.getValue(), data.length, buffer.length, 20, 0, new byte[0], 0);
+        entry.data = data;
+        return entry;
+    }
+
+    /**
+     * Close the jar. If entries have been written, the central directory is
+     * written to finish the jar, and the jar replaces atomically the file of
+     * its path. A jar read and written at the same time must be closed after
+     * its reader.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (output != null) {
+                writeCentralDirectory();
+                output.close();
+                output = null;
+                try {
+                    Files.move(temporary, Paths.get(jarPath), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException ex) {
+                    Files.move(temporary, Paths.get(jarPath), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        } finally {
+            discard();
+        }
+    }
+
+    /**
+     * Close the jar without finishing it: the entries written are dropped and
+     * the file of its path is left unchanged.
+     *
+     * @throws IOException
+     */
+    public void discard() throws IOException {
+        try {
+            if (output != null) {
+                output.close();
+                output = null;
+            }
+            if (temporary != null) {
+                Files.deleteIfExists(temporary);
+            }
+        } finally {
+            if (input != null) {
+                input.close();
+            }
+        }
+    }
+
+    /**
+     * Read a stream until its end.
+     *
+     * @param is The stream to read.
+     * @param size The expected size of the stream, or -1 if unknown.
+     * @return The content of the stream.
+     * @throws IOException
+     */
+    static byte[] readFully(InputStream is, int size) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size > 0 ? size : BUFFERSIZE);
+        byte[] buffer = new byte[BUFFERSIZE];
+        int len;
+        while ((len = is.read(buffer)) > 0) {
+            out.write(buffer, 0, len);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Open the jar to read entries and load its central directory.
+     *
+     * @return The entries of the jar.
+     * @throws IOException
+     */
+    private Map<String, Entry> getInput() throws IOException {
+        if (input != null) {
+            return entries;
+        }
+        input = FileChannel.open(Paths.get(jarPath), StandardOpenOption.READ);
+        entries = new LinkedHashMap<>();
+
+        /* Find the end of the central directory (it ends with a comment) */
+        long size = input.size();
+        int tail = (int) Math.min(size, ENDHEADERSIZE + 0xFFFF);
+        ByteBuffer end = ByteBuffer.allocate(tail).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(size - tail, end);
+        int endOffset = -1;
+        for (int i = tail - ENDHEADERSIZE; i >= 0; i--) {
+            if (end.getInt(i) == ENDHEADER) {
+                endOffset = i;
+                break;
+            }
+        }
+        if (endOffset == -1) {
+            throw new IOException(String.format("The file '%s' isn't a jar.", jarPath));
+        }
+        int count = end.getShort(endOffset + 10) & 0xFFFF;
+        long centralSize = end.getInt(endOffset + 12) & 0xFFFFFFFFL;
+        long centralOffset = end.getInt(endOffset + 16) & 0xFFFFFFFFL;
+        if (count == 0xFFFF || centralOffset == 0xFFFFFFFFL) {
+            throw new IOException(String.format("The jar '%s' uses Zip64 which isn't supported.", jarPath));
+        }
+
+        /* Load each entry of the central directory */
+        ByteBuffer central = ByteBuffer.allocate((int) centralSize).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(centralOffset, central);
+        int pos = 0;
+        for (int i = 0; i < count; i++) {
+            if (central.getInt(pos) != CENTRALHEADER) {
+                throw new IOException(String.format("The central directory of '%s' is corrupted.", jarPath));
+            }
+            int nameLength = central.getShort(pos + 28) & 0xFFFF;
+            int extraLength = central.getShort(pos + 30) & 0xFFFF;
+            int commentLength = central.getShort(pos + 32) & 0xFFFF;
+            byte[] name = new byte[nameLength];
+            byte[] extra = new byte[extraLength];
+            System.arraycopy(central.array(), pos + CENTRALHEADERSIZE, name, 0, nameLength);
+            System.arraycopy(central.array(), pos + CENTRALHEADERSIZE + nameLength, extra, 0, extraLength);
+            Entry entry = new Entry(name,
+                    central.getShort(pos + 8) & 0xFFFF,
+                    central.getShort(pos + 10) & 0xFFFF,
+                    central.getShort(pos + 12) & 0xFFFF,
+                    central.getShort(pos + 14) & 0xFFFF,
+                    central.getInt(pos + 16) & 0xFFFFFFFFL,
+                    central.getInt(pos + 20) & 0xFFFFFFFFL,
+                    central.getInt(pos + 24) & 0xFFFFFFFFL,
+                    central.getShort(pos + 4) & 0xFFFF,
+                    central.getInt(pos + 38) & 0xFFFFFFFFL,
+                    extra,
+                    central.getInt(pos + 42) & 0xFFFFFFFFL);
+            entries.put(entry.getName(), entry);
+            pos += CENTRALHEADERSIZE + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    /**
+     * Compute the position of the data of an entry from its local header.
+     *
+     * @param entry The entry of the jar opened to read.
+     * @return The position of the first byte of the compressed data.
+     * @throws IOException
+     */
+    private long dataOffset(Entry entry) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(LOCALHEADERSIZE).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(entry.offset, header);
+        if (header.getInt(0) != LOCALHEADER) {
+            throw new IOException(String.format("The entry '%s' of '%s' is corrupted.", entry.getName(), jarPath));
+        }
+        return entry.offset + LOCALHEADERSIZE + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+    }
+
+    /**
+     * Fill a buffer with the content of the jar opened to read.
+     *
+     * @param offset The position in the jar.
+     * @param buffer The buffer to fill until its limit.
+     * @throws IOException
+     */
+    private void readFully(long offset, ByteBuffer buffer) throws IOException {
+        long position = offset - buffer.position();
+        while (buffer.hasRemaining()) {
+            if (input.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException(String.format("Unexpected end of '%s'.", jarPath));
+            }
+        }
+    }
+
+    /**
+     * Write the local header of an entry. The data of the entry must be
+     * written just after.
+     *
+     * @param entry The entry to write.
+     * @return The stream to write the data.
+     * @throws IOException
+     */
+    private OutputStream putEntry(Entry entry) throws IOException {
+        if (output == null) {
+            temporary = Paths.get(jarPath + "." + System.nanoTime() + ".tmp");
+            output = new BufferedOutputStream(Files.newOutputStream(temporary, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE), BUFFERSIZE);
+        }
+        if (position > 0xFFFFFFFFL || entry.compressedSize > 0xFFFFFFFFL || written.size() >= 0xFFFF) {
+            throw new IOException(String.format("The jar '%s' needs Zip64 which isn't supported.", jarPath));
+        }
+        entry.offset = position;
+        written.add(entry);
+
+        ByteBuffer header = ByteBuffer.allocate(LOCALHEADERSIZE + entry.name.length).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(LOCALHEADER);
+        header.putShort((short) 20);
+        header.putShort((short) entry.flags);
+        header.putShort((short) entry.method);
+        header.putShort((short) entry.time);
+        header.putShort((short) entry.date);
+        header.putInt((int) entry.crc);
+        header.putInt((int) entry.compressedSize);
+        header.putInt((int) entry.size);
+        header.putShort((short) entry.name.length);
+        header.putShort((short) 0);
+        header.put(entry.name);
+        output.write(header.array());
+        position += header.capacity();
+        return output;
+    }
+
+    /**
+     * Write the central directory of all entries written.
+     *
+     * @throws IOException
+     */
+    private void writeCentralDirectory() throws IOException {
+        long centralOffset = position;
+        for (Entry entry : written) {
+            ByteBuffer header = ByteBuffer.allocate(CENTRALHEADERSIZE + entry.name.length + entry.extra.length).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(CENTRALHEADER);
+            header.putShort((short) entry.versionMadeBy);
+            header.putShort((short) 20);
+            header.putShort((short) entry.flags);
+            header.putShort((short) entry.method);
+            header.putShort((short) entry.time);
+            header.putShort((short) entry.date);
+            header.putInt((int) entry.crc);
+            header.putInt((int) entry.compressedSize);
+            header.putInt((int) entry.size);
+            header.putShort((short) entry.name.length);
+            header.putShort((short) entry.extra.length);
+            header.putShort((short) 0);
+            header.putShort((short) 0);
+            header.putShort((short) 0);
+            header.putInt((int) entry.externalAttributes);
+            header.putInt((int) entry.offset);
+            header.put(entry.name);
+            header.put(entry.extra);
+            output.write(header.array());
+            position += header.capacity();
+        }
+
+        ByteBuffer end = ByteBuffer.allocate(ENDHEADERSIZE).order(ByteOrder.LITTLE_ENDIAN);
+        end.putInt(ENDHEADER);
+        end.putShort((short) 0);
+        end.putShort((short) 0);
+        end.putShort((short) written.size());
+        end.putShort((short) written.size());
+        end.putInt((int) (position - centralOffset));
+        end.putInt((int) centralOffset);
+        end.putShort((short) 0);
+        output.write(end.array());
+    }
+}
@@ -0,0 +1,224 @@
+package com.jicka.core;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ *
+ * @author Mickael Boudignot
+ */
+public class Jicka {
+
+    /**
+     * The session used by the static methods, shared by the agent and the
+     * programs which don't create their own JickaSession.
+     */
+    private static final JickaSession session = new JickaSession();
+
+    /**
+     * Method which transform a class to the same class with the semantic.
+     *
+     * @param classBuffer The original byte array which will be converted by
+     * jicka to apply semantic.
+     * @return a byte array converted.
+     */
+    public static byte[] transform(byte[] classBuffer) {
+        return session.transform(classBuffer);
+    }
+
+    /**
+     * Method which transform a class to the same class with the semantic (see
+     * JickaSession).
+     *
+     * @param classBuffer The original byte array which will be converted by
+     * jicka to apply semantic.
+     * @param classLoader The class loader which can load the classes used by
+     * the class.
+     * @return a byte array converted.
+     */
+    public static byte[] transform(byte[] classBuffer, ClassLoader classLoader) {
+        return session.transform(classBuffer, classLoader);
+    }
+
+    /**
+     * Method which transform a class already loaded by the JVM (see
+     * JickaSession).
+     *
+     * @param classBuffer The original byte array of the loaded class.
+     * @param cls The loaded class.
+     * @return a byte array converted.
+     * @throws Throwable A static field can't be found.
+     */
+    public static byte[] retransform(byte[] classBuffer, Class<?> cls) throws Throwable {
+        return session.retransform(classBuffer, cls);
+    }
+
+    /**
+     * Method called when a class transformed by retransform is restored to
+     * its original code.
+     *
+     * @param cls The restored class.
+     */
+    public static void revert(Class<?> cls) {
+        session.revert(cls);
+    }
+
+    /**
+     * Method which transform a jar to another jar with the semantic.
+     *
+     * @param input The input jar file.
+     * @param output The output path which represent where the ouput jar will be
+     * written.
+     * @param classLoader A class loader is needed to load dynamically classes
+     * like LocalHeap and JickaThreadLocal.
+     * @throws Exception The transformation can return Exception during E/O of
+     * files.
+     */
+    public static void transform(String input, String output, ClassLoader classLoader) throws Exception {
+        session.transform(input, output, classLoader);
+    }
+
+    /**
+     * Method which transform a jar to another jar with the semantic.
+     *
+     * @param input The input jar file.
+     * @param output The output path which represent where the ouput jar will be
+     * written.
+     * @param classLoader A class loader is needed to load dynamically classes
+     * like LocalHeap and JickaThreadLocal.
+     * @param threads The number of threads used to transform classes.
+     * @throws Exception The transformation can return Exception during E/O of
+     * files.
+     */
+    public static void transform(String input, String output, ClassLoader classLoader, int threads) throws Exception {
+        session.transform(input, output, classLoader, threads);
+    }
+
+    /**
+     * Method which transform a jar to another jar with the semantic (see
+     * JickaSession).
+     *
+     * @param input The input jar file.
+     * @param output The output path which represent where the ouput jar will be
+     * written.
+     * @param classLoader A class loader is needed to load dynamically classes
+     * like LocalHeap and JickaThreadLocal.
+     * @param threads The number of threads used to transform classes.
+     * @param level The compression level of the output jar from 1 to 9, 0 to
+     * store entries without compression or -1 for the default level.
+     * @throws Exception The transformation can return Exception during E/O of
+     * files.
+     */
+    public static void transform(String input, String output, ClassLoader classLoader, int threads, int level) throws Exception {
+        session.transform(input, output, classLoader, threads, level);
+    }
+
+    /**
+     * Method which transform several jars or directories of classes in one
+     * run (see JickaSession).
+     *
+     * @param inputs The input jars or directories, in the order of the class
+     * path.
+     * @param directory The output directory.
+     * @param classLoader A class loader is needed to load dynamically classes
+     * like LocalHeap and JickaThreadLocal.
+     * @param threads The number of threads used to transform classes.
+     * @param level The compression level of the output jars from 1 to 9, 0 to
+     * store entries without compression or -1 for the default level.
+     * @throws Exception The transformation can return Exception during E/O of
+     * files.
+     */
+    public static void transform(List<String> inputs, String directory, ClassLoader classLoader, int threads, int level) throws Exception {
+        session.transform(inputs, directory, classLoader, threads, level);
+    }
+
+    /**
+     * Method which create the class Data of a class.
+     *
+     * @param object The name of the class Data (the name of the class
+     * followed by JickaThreadLocal.CLASSEXTENSION).
+     * @return the byte array of the class Data, or null if the class hasn't
+     * been transformed.
+     */
+    public static byte[] createDataClass(String object) {
+        return session.createDataClass(object);
+    }
+
+    /**
+     * Method to add a list of excuded packages.
+     *
+     * @param excludes An array contain the list of excuded packages.
+     */
+    public static void defineExclude(String[] excludes) {
+        session.defineExclude(excludes);
+    }
+
+    /**
+     * Method to read a policy which includes or excludes packages, classes
+     * and fields (see JickaSession).
+     *
+     * @param path The file of the policy.
+     * @throws IOException The policy can't be read.
+     */
+    public static void definePolicy(String path) throws IOException {
+        session.definePolicy(path);
+    }
+
+    /**
+     * Method to define the directory of the cache of transformed classes.
+     *
+     * @param path The directory of the cache, or null to disable the cache.
+     */
+    public static void defineCache(String path) {
+        session.defineCache(path);
+    }
+
+    /**
+     * Method to recompute the stack map frames of the transformed classes.
+     *
+     * @param computeFrames true to recompute the frames.
+     */
+    public static void defineComputeFrames(boolean computeFrames) {
+        session.defineComputeFrames(computeFrames);
+    }
+
+    /**
+     * Method to outline the semantic of the field instructions (see
+     * JickaSession).
+     *
+     * @param outline true to outline the field instructions.
+     */
+    public static void defineOutline(boolean outline) {
+        session.defineOutline(outline);
+    }
+
+    /**
+     * Method to write a report of each transformation of jars (see
+     * JickaSession).
+     *
+     * @param path The file of the report, or null to disable the report.
+     */
+    public static void defineReport(String path) {
+        session.defineReport(path);
+    }
+
+    /**
+     * Method to create an AppCDS archive after each transformation of jars
+     * (see JickaSession).
+     *
+     * @param command The main class and the arguments of the training run,
+     * or null to disable the archive.
+     */
+    public static void defineArchive(String command) {
+        session.defineArchive(command);
+    }
+
+    /**
+     * Return the session used by the static methods.
+     *
+     * @return the default session.
+     */
+    static JickaSession getSession() {
+        return session;
+    }
+}
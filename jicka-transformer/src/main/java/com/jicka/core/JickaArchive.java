@@ -0,0 +1,92 @@
+package com.jicka.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ *
+ * @author Mickael Boudignot
+ */
+class JickaArchive {
+
+    /**
+     * Extension of the archive of classes written next to a transformed jar.
+     */
+    static final String EXTENSION = ".jsa";
+
+    /**
+     * Extension of the list of the classes loaded by the training run.
+     */
+    static final String CLASSLIST = ".classlist";
+
+    /**
+     * The main class of the training run followed by its arguments.
+     */
+    private final List<String> training;
+
+    /**
+     * Create the archives of the classes loaded by a training run.
+     *
+     * @param command The main class and the arguments of the training run,
+     * separated by spaces.
+     */
+    JickaArchive(String command) {
+        this.training = Arrays.asList(command.trim().split("\\s+"));
+    }
+
+    /**
+     * Create an AppCDS archive for a class path. The program is run once with
+     * the class path to record the classes it loads (the classes Data, the
+     * runtime of the semantic and the classes of the program), then the JVM
+     * parses and verifies these classes and maps them into the archive. The
+     * program started with "-XX:SharedArchiveFile=archive" and the same class
+     * path loads them from the archive, so the classes added by the semantic
+     * don't slow down its start. The list of the classes is kept next to the
+     * archive.
+     * <p>
+     * The archive is created by the JVM which runs Jicka (Java 11 or later)
+     * and can only be used by the same JVM.
+     *
+     * @param classPath The jars of the program, in the order of the class
+     * path.
+     * @param path The file of the archive.
+     * @throws IOException The training run fails or the JVM can't create the
+     * archive.
+     * @throws InterruptedException The thread is interrupted while the JVM
+     * runs.
+     */
+    void create(List<String> classPath, String path) throws IOException, InterruptedException {
+        String version = System.getProperty("java.specification.version");
+        if (version.startsWith("1.") || Integer.parseInt(version) < 11) {
+            throw new IOException(String.format("An archive of classes needs a JVM 11 or later, but Jicka runs on Java %s.", version));
+        }
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        String cp = String.join(File.pathSeparator, classPath);
+        Path list = Paths.get(path + CLASSLIST);
+        Files.deleteIfExists(list);
+        Files.deleteIfExists(Paths.get(path));
+
+        /* Record the classes loaded by the training run */
+        List<String> command = new ArrayList<>(Arrays.asList(java, "-Xshare:off", "-XX:DumpLoadedClassList=" + list, "-cp", cp));
+        command.addAll(training);
+        int status = new ProcessBuilder(command).inheritIO().start().waitFor();
+        if (status != 0 || !Files.exists(list)) {
+            throw new IOException(String.format("The training run '%s' of the archive '%s' failed with the status %d.", String.join(" ", training), path, status));
+        }
+
+        /* Map the recorded classes into the archive */
+        command = Arrays.asList(java, "-Xshare:dump", "-XX:SharedClassListFile=" + list, "-XX:SharedArchiveFile=" + path, "-cp", cp);
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        String output = new String(JarFile.readFully(process.getInputStream(), -1), Charset.defaultCharset());
+        if (process.waitFor() != 0 || !Files.exists(Paths.get(path))) {
+            throw new IOException(String.format("The archive '%s' can't be created:%n%s", path, output));
+        }
+    }
+}
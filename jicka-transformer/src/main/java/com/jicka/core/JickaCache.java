@@ -0,0 +1,446 @@
+package com.jicka.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ *
+ * @author Mickael Boudignot
+ */
+class JickaCache {
+
+    /**
+     * Version of the format of the files stored in the cache.
+     */
+    private static final int FORMAT = 3;
+
+    /**
+     * The digest of the classes of the transformer, computed once (see
+     * digestTransformer).
+     */
+    private static byte[] transformer;
+
+    /**
+     * Class to store the result of the transformation of a class.
+     */
+    static class Entry {
+
+        /**
+         * The transformed class, or null if the class isn't modified.
+         */
+        final byte[] classBuffer;
+
+        /**
+         * The static fields used by the class (see JickaScanner).
+         */
+        final List<String[]> statics;
+
+        /**
+         * The offset of each static field when the class was transformed.
+         */
+        final int[] offsets;
+
+        /**
+         * The fields of the class Data.
+         */
+        final List<ASMClass.Information> fields;
+
+        /**
+         * The static fields declared by the class.
+         */
+        final List<ASMMethodHandle.Information> handles;
+
+        /**
+         * The instructions instrumented in the class (see
+         * JickaReport.Row.counters).
+         */
+        final int[] counters;
+
+        /**
+         * The methods pushed over a budget by the transformation.
+         */
+        final List<JickaReport.Method> methods;
+
+        /**
+         * Construct a new entry.
+         *
+         * @param classBuffer The transformed class or null.
+         * @param statics The static fields used by the class.
+         * @param offsets The offset of each static field.
+         * @param fields The fields of the class Data.
+         * @param handles The static fields declared by the class.
+         * @param counters The instructions instrumented in the class.
+         * @param methods The methods pushed over a budget.
+         */
+        Entry(byte[] classBuffer, List<String[]> statics, int[] offsets, List<ASMClass.Information> fields, List<ASMMethodHandle.Information> handles,
+                int[] counters, List<JickaReport.Method> methods) {
+            this.classBuffer = classBuffer;
+            this.statics = statics;
+            this.offsets = offsets;
+            this.fields = fields;
+            this.handles = handles;
+            this.counters = counters;
+            this.methods = methods;
+        }
+
+        /**
+         * Method to know if the transformed class can be used with the
+         * current offsets of static fields.
+         *
+         * @param current The offsets of the static fields of the session.
+         * @return true if all offsets are the same.
+         */
+        boolean isValid(ASMFieldStatic current) {
+            for (int i = 0; i < offsets.length; i++) {
+                String[] field = statics.get(i);
+                if (current.getOffset(field[0], field[1], field[2]) != offsets[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The directory of the cache.
+     */
+    private final Path directory;
+
+    /**
+     * The beginning of each key, computed from the transformer and the
+     * excluded packages.
+     */
+    private final byte[] salt;
+
+    /**
+     * Create a cache stored in a directory.
+     *
+     * @param directory The directory of the cache.
+     * @param session The session whose options change the transformation.
+     * @throws Exception An exception can be genered by E/O.
+     */
+    JickaCache(Path directory, JickaSession session) throws Exception {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        salt = salt(session);
+    }
+
+    /**
+     * Compute a digest of the transformer and of the options of a session
+     * (the excluded packages, the frames and the fields confined to a
+     * thread, which depend on all the classes of the jars). A transformed
+     * class can be reused only with the same digest.
+     *
+     * @param session The session whose options change the transformation.
+     * @return the SHA-256 digest.
+     * @throws Exception An exception can be genered by E/O.
+     */
+    static byte[] salt(JickaSession session) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(digestTransformer());
+        digest.update(String.join("\n", session.getExcludes()).getBytes(StandardCharsets.UTF_8));
+        digest.update(session.getPolicy().toString().getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) (session.isComputeFrames() ? 1 : 0));
+        digest.update((byte) (session.isOutline() ? 1 : 0));
+        digest.update(session.getConfined().toString().getBytes(StandardCharsets.UTF_8));
+        return digest.digest();
+    }
+
+    /**
+     * Compute a digest of the transformer: all the class files of the jar or
+     * of the directory which contains this class (with ASM when Jicka is
+     * packaged in a single jar), and the classes of the runtime, which can
+     * come from another jar. A change of any class of the transformer
+     * invalidates the cache. The digest is computed once, the classes of a
+     * JVM never change.
+     *
+     * @return the SHA-256 digest.
+     * @throws Exception The classes of the transformer can't be read.
+     */
+    private static synchronized byte[] digestTransformer() throws Exception {
+        if (transformer != null) {
+            return transformer;
+        }
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        CodeSource source = JickaCache.class.getProtectionDomain().getCodeSource();
+        if (source == null || source.getLocation() == null) {
+            throw new IOException("The location of the classes of Jicka is unknown.");
+        }
+        try (JarFile jar = new JarFile(Paths.get(source.getLocation().toURI()).toString())) {
+            for (String entry : new TreeSet<>(jar.getEntries())) {
+                if (entry.endsWith(".class")) {
+                    digest.update(entry.getBytes(StandardCharsets.UTF_8));
+                    digest.update(jar.read(entry));
+                }
+            }
+        }
+        for (String clz : JickaSession.RUNTIME) {
+            digest.update(JickaSession.readClass("/" + clz + ".class", JickaCache.class));
+        }
+        transformer = digest.digest();
+        return transformer;
+    }
+
+    /**
+     * Compute the key of a class. The key covers the facts of the other
+     * classes read to transform the class, so a class isn't reused once an
+     * annotation or the immutability of a field it uses changes.
+     *
+     * @param classBuffer The original class.
+     * @param dependencies The descriptions of the classes read to transform
+     * the class (see JickaSession.getDependencies).
+     * @return an hexadecimal string.
+     */
+    String key(byte[] classBuffer, Map<String, String> dependencies) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        digest.update(salt);
+        digest.update(classBuffer);
+        return hex(digest.digest(dependencies.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Convert a digest to an hexadecimal string.
+     *
+     * @param digest The digest.
+     * @return an hexadecimal string.
+     */
+    private static String hex(byte[] digest) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Load the index of the previous transformation into the same outputs,
+     * whose offsets are kept so the unchanged classes can be read from the
+     * cache after a static field is added to another class.
+     *
+     * @param outputs The output jars of the transformation.
+     * @return the index, or null if the outputs were never transformed with
+     * this cache.
+     */
+    JickaIndex loadIndex(List<String> outputs) {
+        Path path = indexPath(outputs);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try {
+            return JickaIndex.read(path);
+        } catch (IOException ex) {
+
+            /* A corrupted file is ignored */
+            return null;
+        }
+    }
+
+    /**
+     * Store the index of a transformation for the next transformation into
+     * the same outputs.
+     *
+     * @param outputs The output jars of the transformation.
+     * @param index The index of the transformation.
+     * @throws IOException An exception can be genered by E/O.
+     */
+    void storeIndex(List<String> outputs, JickaIndex index) throws IOException {
+        Path path = indexPath(outputs);
+        Files.createDirectories(path.getParent());
+        Path tmp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+        try {
+            index.write(tmp);
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+
+            /* The temporary file is left only if the move failed */
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Return the file of the index of a transformation, named by the digest
+     * of its outputs, so several programs can share the cache.
+     *
+     * @param outputs The output jars of the transformation.
+     * @return the path of the file.
+     */
+    private Path indexPath(List<String> outputs) {
+        List<String> paths = new ArrayList<>();
+        for (String output : outputs) {
+            paths.add(Paths.get(output).toAbsolutePath().normalize().toString());
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(String.join("\n", paths).getBytes(StandardCharsets.UTF_8));
+            return directory.resolve("index").resolve(hex(digest) + JickaIndex.EXTENSION);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Load the result of a transformation.
+     *
+     * @param key The key of the class.
+     * @return the entry or null if the class isn't in the cache.
+     */
+    Entry load(String key) {
+        Path path = path(key);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(path)))) {
+            if (in.readInt() != FORMAT) {
+                return null;
+            }
+
+            byte[] classBuffer = null;
+            if (in.readBoolean()) {
+                classBuffer = new byte[in.readInt()];
+                in.readFully(classBuffer);
+            }
+
+            int size = in.readInt();
+            List<String[]> statics = new ArrayList<>(size);
+            int[] offsets = new int[size];
+            for (int i = 0; i < size; i++) {
+                statics.add(new String[]{in.readUTF(), in.readUTF(), in.readUTF()});
+                offsets[i] = in.readInt();
+            }
+
+            size = in.readInt();
+            List<ASMClass.Information> fields = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                String name = in.readUTF();
+                String desc = in.readUTF();
+                Boolean value = in.readBoolean() ? in.readBoolean() : null;
+                fields.add(new ASMClass.Information(name, desc, value));
+            }
+
+            size = in.readInt();
+            List<ASMMethodHandle.Information> handles = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                handles.add(new ASMMethodHandle.Information(in.readUTF(), in.readUTF(), in.readUTF(), in.readBoolean(), in.readBoolean()));
+            }
+
+            int[] counters = new int[in.readInt()];
+            for (int i = 0; i < counters.length; i++) {
+                counters[i] = in.readInt();
+            }
+
+            size = in.readInt();
+            List<JickaReport.Method> methods = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                methods.add(new JickaReport.Method(in.readUTF(), in.readInt(), in.readInt(), in.readUTF()));
+            }
+            return new Entry(classBuffer, statics, offsets, fields, handles, counters, methods);
+        } catch (IOException ex) {
+
+            /* A corrupted file is ignored */
+            return null;
+        }
+    }
+
+    /**
+     * Store the result of a transformation.
+     *
+     * @param key The key of the class.
+     * @param entry The result of the transformation.
+     * @throws IOException
+     */
+    void store(String key, Entry entry) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(buffer)) {
+            out.writeInt(FORMAT);
+
+            out.writeBoolean(entry.classBuffer != null);
+            if (entry.classBuffer != null) {
+                out.writeInt(entry.classBuffer.length);
+                out.write(entry.classBuffer);
+            }
+
+            out.writeInt(entry.statics.size());
+            for (int i = 0; i < entry.statics.size(); i++) {
+                for (String value : entry.statics.get(i)) {
+                    out.writeUTF(value);
+                }
+                out.writeInt(entry.offsets[i]);
+            }
+
+            out.writeInt(entry.fields.size());
+            for (ASMClass.Information information : entry.fields) {
+                out.writeUTF(information.name);
+                out.writeUTF(information.desc);
+                out.writeBoolean(information.value != null);
+                if (information.value != null) {
+                    out.writeBoolean((Boolean) information.value);
+                }
+            }
+
+            out.writeInt(entry.handles.size());
+            for (ASMMethodHandle.Information information : entry.handles) {
+                out.writeUTF(information.owner);
+                out.writeUTF(information.name);
+                out.writeUTF(information.desc);
+                out.writeBoolean(information.isFinal);
+                out.writeBoolean(information.isVolatile);
+            }
+
+            out.writeInt(entry.counters.length);
+            for (int counter : entry.counters) {
+                out.writeInt(counter);
+            }
+
+            out.writeInt(entry.methods.size());
+            for (JickaReport.Method method : entry.methods) {
+                out.writeUTF(method.name);
+                out.writeInt(method.sizeBefore);
+                out.writeInt(method.sizeAfter);
+                out.writeUTF(method.budget);
+            }
+        }
+
+        /* Write a temporary file and move it to never read a partial file */
+        Path path = path(key);
+        Files.createDirectories(path.getParent());
+        Path tmp = Files.createTempFile(path.getParent(), key, ".tmp");
+        try {
+            Files.write(tmp, buffer.toByteArray());
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+
+            /* The temporary file is left only if the write or the move failed */
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Return the file of a key. Files are split in sub directories to avoid
+     * too many files in the same directory.
+     *
+     * @param key The key of the class.
+     * @return the path of the file.
+     */
+    private Path path(String key) {
+        return directory.resolve(key.substring(0, 2)).resolve(key.substring(2));
+    }
+}
@@ -0,0 +1,206 @@
+package com.jicka.core;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ *
+ * @author Mickael Boudignot
+ */
+public class JickaClassLoader extends URLClassLoader {
+
+    static {
+        registerAsParallelCapable();
+    }
+
+    /**
+     * Internal name of the Configuration class.
+     */
+    private static final String CONFIGURATION = "com/jicka/core/Configuration";
+
+    /**
+     * The session which transforms the classes.
+     */
+    private final JickaSession session;
+
+    /**
+     * The jars or directories of the classes, in the order of the class path.
+     */
+    private final List<JarFile> jars = new ArrayList<>();
+
+    /**
+     * The hierarchy of the classes, which finds the annotations of the fields
+     * and the super classes when the frames are recomputed.
+     */
+    private final JickaHierarchy hierarchy;
+
+    /**
+     * The Configuration class with the sizes of the index.
+     */
+    private final byte[] configuration;
+
+    /**
+     * Create a class loader which loads the classes of jars with the
+     * semantic. The classes are indexed now, like the first phase of the
+     * transformation of jars, and each class is transformed when it's loaded.
+     * The classes Data, the Configuration and the runtime of the semantic are
+     * defined from memory, so nothing is written on the disk. The other
+     * entries of the jars are found as resources.
+     * <p>
+     * The parent mustn't see the classes of Jicka, otherwise the transformed
+     * classes would share the runtime of the parent, whose Configuration
+     * doesn't match the index.
+     *
+     * @param session The session which transforms the classes. It mustn't be
+     * closed while the classes are used.
+     * @param inputs The jars or directories, in the order of the class path.
+     * @param parent The parent class loader of the classes of the jars.
+     * @throws IOException A jar can't be read.
+     */
+    public JickaClassLoader(JickaSession session, List<String> inputs, ClassLoader parent) throws IOException {
+        super(urls(inputs), parent);
+        this.session = session;
+        for (String input : inputs) {
+            jars.add(new JarFile(input));
+        }
+        session.index(jars);
+        this.hierarchy = new JickaHierarchy(jars, parent);
+        this.configuration = session.createConfiguration();
+    }
+
+    /**
+     * Define a class of the jars, a class Data or a class of the runtime. The
+     * classes of the jars are transformed from the index of the session.
+     *
+     * @param name The binary name of the class.
+     * @return the class.
+     * @throws ClassNotFoundException The class doesn't exist or can't be
+     * read.
+     */
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        byte[] classBuffer;
+        try {
+            classBuffer = read(name.replace('.', '/'));
+        } catch (Exception ex) {
+            throw new ClassNotFoundException(name, ex);
+        }
+        if (classBuffer == null) {
+            throw new ClassNotFoundException(name);
+        }
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) {
+            String packageName = name.substring(0, dot);
+
+            /* getDefinedPackage only exists since Java 9, and the build targets Java 8 */
+            @SuppressWarnings("deprecation")
+            Package defined = getPackage(packageName);
+            if (defined == null) {
+                try {
+                    definePackage(packageName, null, null, null, null, null, null, null);
+                } catch (IllegalArgumentException ex) {
+
+                    /* The package was defined by another thread */
+                }
+            }
+        }
+        return defineClass(name, classBuffer, 0, classBuffer.length);
+    }
+
+    /**
+     * Return the class file of a class loaded by this class loader.
+     *
+     * @param className The internal name of the class.
+     * @return the class file, or null if the class doesn't exist.
+     * @throws Exception An exception can be genered by E/O.
+     */
+    private byte[] read(String className) throws Exception {
+        if (className.equals(CONFIGURATION)) {
+            return configuration;
+        }
+        if (Arrays.asList(JickaSession.RUNTIME).contains(className)) {
+            return JickaSession.readClass("/" + className + ".class", JickaSession.class);
+        }
+        if (className.endsWith(JickaThreadLocal.CLASSEXTENSION)) {
+            return session.createDataClass(className);
+        }
+
+        /* The entries which aren't transformed in a jar are kept here */
+        String entry = className + ".class";
+        for (JarFile jar : jars) {
+            if (jar.contains(entry)) {
+                byte[] classBuffer = jar.read(entry);
+                return JarFile.isClassFile(entry) ? session.transform(classBuffer, hierarchy, true) : classBuffer;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Call the main method of a class of the jars in this thread, with this
+     * class loader as context class loader.
+     *
+     * @param mainClass The binary name of the class.
+     * @param args The arguments of the main method.
+     * @throws Exception The class or its main method can't be found, or the
+     * exception thrown by the main method.
+     */
+    public void run(String mainClass, String[] args) throws Exception {
+        Method main = loadClass(mainClass).getMethod("main", String[].class);
+        if (!Modifier.isStatic(main.getModifiers())) {
+            throw new NoSuchMethodException(String.format("The method main of '%s' isn't static.", mainClass));
+        }
+        Thread.currentThread().setContextClassLoader(this);
+        try {
+            main.invoke(null, (Object) args);
+        } catch (InvocationTargetException ex) {
+            if (ex.getCause() instanceof Exception) {
+                throw (Exception) ex.getCause();
+            }
+            if (ex.getCause() instanceof Error) {
+                throw (Error) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Close the jars and the resources of this class loader. The classes
+     * already loaded are still usable.
+     *
+     * @throws IOException A jar can't be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            for (JarFile jar : jars) {
+                jar.close();
+            }
+        }
+    }
+
+    /**
+     * Return the URL of each jar or directory.
+     *
+     * @param inputs The paths of the jars or directories.
+     * @return an array of URLs for the resources.
+     * @throws IOException A path can't be converted.
+     */
+    private static URL[] urls(List<String> inputs) throws IOException {
+        URL[] urls = new URL[inputs.size()];
+        for (int i = 0; i < urls.length; i++) {
+            urls[i] = Paths.get(inputs.get(i)).toUri().toURL();
+        }
+        return urls;
+    }
+}
@@ -0,0 +1,54 @@
+package com.jicka.core;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+
+/**
+ *
+ * @author Mickael Boudignot
+ */
+class JickaClassWriter extends ClassWriter {
+
+    /**
+     * The hierarchy used to find the super classes of the classes.
+     */
+    private final JickaHierarchy hierarchy;
+
+    /**
+     * Create a new JickaClassWriter.
+     *
+     * @param cr The reader of the original class.
+     * @param flags The options of the ClassWriter.
+     * @param classLoader The class loader of the class which is transformed.
+     */
+    JickaClassWriter(ClassReader cr, int flags, ClassLoader classLoader) {
+        this(cr, flags, JickaHierarchy.get(classLoader));
+    }
+
+    /**
+     * Create a new JickaClassWriter with a given hierarchy.
+     *
+     * @param cr The reader of the original class.
+     * @param flags The options of the ClassWriter.
+     * @param hierarchy The hierarchy of the classes used by the class.
+     */
+    JickaClassWriter(ClassReader cr, int flags, JickaHierarchy hierarchy) {
+        super(cr, flags);
+        this.hierarchy = hierarchy;
+    }
+
+    /**
+     * Returns the common super type of the two given types. The class files
+     * are read from the hierarchy, so classes are never loaded during a
+     * transformation. It's only called when the frames are recomputed.
+     *
+     * @param type1 The internal name of a class.
+     * @param type2 The internal name of another class.
+     * @return the internal name of the common super class of the two given
+     * classes.
+     */
+    @Override
+    protected String getCommonSuperClass(String type1, String type2) {
+        return hierarchy.getCommonSuperClass(type1, type2);
+    }
+}
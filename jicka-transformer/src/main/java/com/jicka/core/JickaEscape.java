@@ -0,0 +1,1165 @@
+package com.jicka.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ *
+ * @author Mickael Boudignot
+ */
+class JickaEscape {
+
+    /**
+     * The internal name of Object, the static type of the values whose type
+     * is unknown.
+     */
+    private static final String OBJECT = "java/lang/Object";
+
+    /**
+     * The classes of the JDK whose methods never keep their arguments nor the
+     * object they are called on, and such methods of other classes.
+     */
+    private static final Set<String> PURE = new HashSet<>(Arrays.asList(
+            OBJECT, "java/lang/String", "java/lang/StringBuilder", "java/lang/StringBuffer",
+            "java/lang/Math", "java/lang/StrictMath", "java/lang/Boolean", "java/lang/Byte",
+            "java/lang/Character", "java/lang/Short", "java/lang/Integer", "java/lang/Long",
+            "java/lang/Float", "java/lang/Double", "java/util/Objects", "java/io/PrintStream",
+            "java/lang/System.arraycopy", "java/lang/System.identityHashCode"));
+
+    /**
+     * The methods of Object, which don't keep their argument in any class.
+     */
+    private static final Set<String> OBJECTMETHODS = new HashSet<>(Arrays.asList(
+            "hashCode()I", "equals(Ljava/lang/Object;)Z", "toString()Ljava/lang/String;",
+            "getClass()Ljava/lang/Class;", "clone()Ljava/lang/Object;",
+            "notify()V", "notifyAll()V", "wait()V", "wait(J)V", "wait(JI)V"));
+
+    /**
+     * The super types of the arrays: a value of these types can be an array.
+     */
+    private static final Set<String> ARRAYSUPERS = new HashSet<>(Arrays.asList(
+            OBJECT, "java/lang/Cloneable", "java/io/Serializable"));
+
+    /**
+     * The descriptors of the arrays created by NEWARRAY, by operand.
+     */
+    private static final String[] ARRAYS = {null, null, null, null, "[Z", "[C", "[F", "[D", "[B", "[S", "[I", "[J"};
+
+    /**
+     * Class to store the declarations of a class of the inputs.
+     */
+    private static class Declaration {
+
+        /**
+         * The internal name of the super class, or null for Object.
+         */
+        final String superName;
+
+        /**
+         * The internal names of the super class and of the interfaces.
+         */
+        final List<String> supers = new ArrayList<>();
+
+        /**
+         * The flag to know if the class is an interface.
+         */
+        final boolean isInterface;
+
+        /**
+         * The access flags of the methods, by name followed by descriptor.
+         */
+        final Map<String, Integer> methods = new HashMap<>();
+
+        /**
+         * The names of the instance fields.
+         */
+        final List<String> fields = new ArrayList<>();
+
+        /**
+         * Construct the declarations of a class, without its members.
+         *
+         * @param cr The reader of the class file.
+         */
+        Declaration(ClassReader cr) {
+            this.superName = cr.getSuperName();
+            this.isInterface = (cr.getAccess() & Opcodes.ACC_INTERFACE) != 0;
+            if (superName != null) {
+                supers.add(superName);
+            }
+            Collections.addAll(supers, cr.getInterfaces());
+        }
+    }
+
+    /**
+     * The hierarchy of the classes which aren't in the inputs.
+     */
+    private final JickaHierarchy hierarchy;
+
+    /**
+     * The declarations of the classes of the inputs.
+     */
+    private final Map<String, Declaration> declarations = new ConcurrentHashMap<>();
+
+    /**
+     * The static types of the values which escape: stored in a static field,
+     * given to the JDK, captured by a lambda, thrown...
+     */
+    private final Set<String> escapes = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The static types of the values stored in the fields of an object or in
+     * an array, by static type of the object or of the array.
+     */
+    private final Map<String, Set<String>> stores = new ConcurrentHashMap<>();
+
+    /**
+     * The static types of the values returned by each method, by class name
+     * followed by '.', the name and the descriptor of the method.
+     */
+    private final Map<String, Set<String>> returns = new ConcurrentHashMap<>();
+
+    /**
+     * The methods referenced by a method handle (name followed by
+     * descriptor), which may be called by the JDK.
+     */
+    private final Set<String> callbacks = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The classes and interfaces of the inputs which have a sub class whose
+     * methods can be inherited from a class of the JDK.
+     */
+    private final Set<String> leaky = new HashSet<>();
+
+    /**
+     * The types which can be implemented by the JDK without a class of the
+     * inputs: the interfaces of the lambdas and of the method references, and
+     * the classes loaded as a constant, given to a Proxy for instance.
+     */
+    private final Set<String> implemented = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Create an analysis of the classes of a program.
+     *
+     * @param hierarchy The hierarchy which reads the super types of the
+     * classes of the JDK and of the dependencies.
+     */
+    JickaEscape(JickaHierarchy hierarchy) {
+        this.hierarchy = hierarchy;
+    }
+
+    /**
+     * Find the instance fields of the classes whose objects never escape the
+     * thread which creates them, so no other thread can reach them. The
+     * analysis is static and conservative, and works on the static types of
+     * the values: the stack and the local variables of each method are
+     * followed instruction by instruction, with the types of the stack map
+     * frames at the branches. A value escapes when it's stored in a static
+     * field, given to a method of the JDK (except the methods of String,
+     * StringBuilder, PrintStream... which never keep it), captured by a
+     * lambda, thrown, or returned by a method which can be called by the JDK
+     * (a method of a class which extends or implements a type of the JDK, or
+     * a method referenced by a method handle). A value stored in a field of an
+     * object which escapes escapes too, the values stored in arrays escape as
+     * soon as an array escapes, and all the objects of a class escape when a
+     * value of one of its super types escapes. The objects of the threads
+     * (Thread, Runnable, Callable...) are given to the JDK, so they always
+     * escape with the values they hold. The interfaces of the lambdas and of
+     * the proxies are implemented by the JDK, so their abstract methods may
+     * keep their arguments (a method reference to Queue.offer for instance).
+     * <p>
+     * The classes of the inputs are the whole program: their objects must be
+     * created by their code or by the JDK for their code. The classes with a
+     * runtime annotation, whose Class is loaded by their code or which have a
+     * finalizer escape, because a framework or the JVM can share their
+     * objects. A method without stack map frames, or a class which can't be
+     * read, makes every value of its static types escape, Object in
+     * practice.
+     *
+     * @param classBuffers All the classes of the inputs, transformed or not.
+     * @param executor The pool of threads which reads the classes.
+     * @return the names of the instance fields confined to a thread, by
+     * internal name of the class which declares them.
+     * @throws Exception A class can't be read.
+     */
+    Map<String, Set<String>> analyze(List<byte[]> classBuffers, ExecutorService executor) throws Exception {
+        List<ClassReader> readers = new ArrayList<>();
+        for (byte[] classBuffer : classBuffers) {
+            try {
+                readers.add(new ClassReader(classBuffer));
+            } catch (IllegalArgumentException ex) {
+
+                /* Unreadable class file (newer than Java 8) */
+                escapes.add(OBJECT);
+            }
+        }
+        List<Future<Object>> futures = new ArrayList<>();
+        for (ClassReader cr : readers) {
+            futures.add(executor.submit(() -> declare(cr)));
+        }
+        JickaSession.await(futures);
+        link();
+        futures.clear();
+        for (ClassReader cr : readers) {
+            futures.add(executor.submit(() -> {
+                cr.accept(new ClassVisitor(Opcodes.ASM5) {
+                    @Override
+                    public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+                        return new Method(cr.getClassName(), access, name, desc);
+                    }
+                }, ClassReader.SKIP_DEBUG | ClassReader.EXPAND_FRAMES);
+                return null;
+            }));
+        }
+        JickaSession.await(futures);
+        return solve();
+    }
+
+    /**
+     * Read the super types, the methods and the instance fields of a class,
+     * and the types its code can give to the JDK to implement.
+     *
+     * @param cr The reader of the class file.
+     * @return null.
+     */
+    private Object declare(ClassReader cr) {
+        String className = cr.getClassName();
+        Declaration declaration = new Declaration(cr);
+        cr.accept(new ClassVisitor(Opcodes.ASM5) {
+            @Override
+            public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+                if (visible) {
+                    escapes.add(className);
+                }
+                return null;
+            }
+
+            @Override
+            public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+                if ((access & Opcodes.ACC_STATIC) == 0) {
+                    declaration.fields.add(name);
+                }
+                return null;
+            }
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+                declaration.methods.put(name + desc, access);
+                if ((access & Opcodes.ACC_STATIC) == 0 && "finalize()V".equals(name + desc)) {
+                    escapes.add(className);
+                }
+                return new MethodVisitor(api) {
+                    @Override
+                    public void visitInvokeDynamicInsn(String name, String desc, Handle bsm, Object... bsmArgs) {
+                        implement(Type.getReturnType(desc));
+                        for (Object bsmArg : bsmArgs) {
+                            implement(bsmArg);
+                        }
+                    }
+
+                    @Override
+                    public void visitLdcInsn(Object cst) {
+                        implement(cst);
+                    }
+                };
+            }
+        }, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        declarations.put(className, declaration);
+        return null;
+    }
+
+    /**
+     * Register a type which the JDK can implement.
+     *
+     * @param cst A type, or another constant.
+     */
+    private void implement(Object cst) {
+        if (cst instanceof Type && ((Type) cst).getSort() == Type.OBJECT) {
+            implemented.add(((Type) cst).getInternalName());
+        }
+    }
+
+    /**
+     * Find the classes whose super class is a class of the JDK (other than
+     * Object), and the interfaces implemented by the JDK, and mark them with
+     * their super types as leaky: a method of such a type can be implemented
+     * by the JDK.
+     */
+    private void link() {
+        for (Map.Entry<String, Declaration> entry : declarations.entrySet()) {
+            String type = entry.getKey();
+            Declaration declaration = entry.getValue();
+            while (declaration != null && declaration.superName != null) {
+                type = declaration.superName;
+                declaration = declarations.get(type);
+            }
+            if (!entry.getValue().isInterface && declaration == null && !OBJECT.equals(type)) {
+                mark(entry.getKey());
+            }
+        }
+        for (String type : implemented) {
+            Declaration declaration = declarations.get(type);
+            if (declaration != null && declaration.isInterface) {
+                mark(type);
+            }
+        }
+    }
+
+    /**
+     * Mark a type of the inputs and its super types as leaky.
+     *
+     * @param type The internal name of the type.
+     */
+    private void mark(String type) {
+        Declaration declaration = declarations.get(type);
+        if (declaration != null && leaky.add(type)) {
+            for (String superType : declaration.supers) {
+                mark(superType);
+            }
+        }
+    }
+
+    /**
+     * Method to know if a call always executes a method of the inputs: the
+     * method is found in the super classes of the owner before a class of the
+     * JDK, or is a method of an interface of the inputs which no class of the
+     * JDK, no lambda and no proxy can implement instead.
+     *
+     * @param owner The class of the call.
+     * @param method The name and the descriptor of the method.
+     * @return true if the method is declared by the inputs.
+     */
+    private boolean isDeclared(String owner, String method) {
+        String type = owner;
+        Declaration declaration = declarations.get(type);
+        while (declaration != null && !declaration.isInterface) {
+            if (declaration.methods.containsKey(method)) {
+                return true;
+            }
+            type = declaration.superName;
+            declaration = type == null ? null : declarations.get(type);
+        }
+        if (declaration == null && type != null && !OBJECT.equals(type)) {
+            return false;
+        }
+        return !leaky.contains(owner) && isDefault(owner, method, new HashSet<>());
+    }
+
+    /**
+     * Method to know if an interface of the inputs, among the super types of
+     * a type, declares a method.
+     *
+     * @param type The internal name of the type.
+     * @param method The name and the descriptor of the method.
+     * @param visited The types already visited.
+     * @return true if an interface declares the method.
+     */
+    private boolean isDefault(String type, String method, Set<String> visited) {
+        Declaration declaration = declarations.get(type);
+        if (declaration == null || !visited.add(type)) {
+            return false;
+        }
+        if (declaration.isInterface && declaration.methods.containsKey(method)) {
+            return true;
+        }
+        for (String superType : declaration.supers) {
+            if (isDefault(superType, method, visited)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Propagate the escapes through the fields and the arrays, and return
+     * the instance fields of the classes which never escape.
+     *
+     * @return the confined fields by class.
+     */
+    private Map<String, Set<String>> solve() {
+
+        /* All the super types of each class, including the class */
+        Map<String, Set<String>> supers = new HashMap<>();
+        Map<String, List<String>> subclasses = new HashMap<>();
+        for (String className : declarations.keySet()) {
+            Set<String> types = new HashSet<>();
+            if (!collect(className, types)) {
+                escapes.add(className);
+            }
+            for (String type : types) {
+                subclasses.computeIfAbsent(type, key -> new ArrayList<>()).add(className);
+            }
+            supers.put(className, types);
+        }
+
+        /* The values returned to the JDK escape */
+        for (Map.Entry<String, Set<String>> entry : returns.entrySet()) {
+            String key = entry.getKey();
+            String className = key.substring(0, key.indexOf('.'));
+            String method = key.substring(key.indexOf('.') + 1);
+            int access = declarations.get(className).methods.get(method);
+            boolean inherited = (access & (Opcodes.ACC_STATIC | Opcodes.ACC_PRIVATE)) == 0
+                    && supers.get(className).stream().anyMatch(type -> !OBJECT.equals(type) && !declarations.containsKey(type));
+            if (inherited || callbacks.contains(method)) {
+                escapes.addAll(entry.getValue());
+            }
+        }
+
+        /* The values stored in an escaping object or array escape too */
+        Set<String> reached = new HashSet<>();
+        Set<String> visited = new HashSet<>();
+        Deque<String> work = new ArrayDeque<>(escapes);
+        for (Map.Entry<String, Set<String>> entry : stores.entrySet()) {
+            if (!entry.getKey().startsWith("[") && !declarations.containsKey(entry.getKey())) {
+                work.addAll(entry.getValue());
+            }
+        }
+        boolean arrays = false;
+        while (!work.isEmpty()) {
+            String type = work.pop();
+            if (!visited.add(type)) {
+                continue;
+            }
+            for (String className : subclasses.getOrDefault(type, Collections.emptyList())) {
+                for (String superType : supers.get(className)) {
+                    if (reached.add(superType)) {
+                        work.addAll(stores.getOrDefault(superType, Collections.emptySet()));
+                    }
+                }
+            }
+            if (!arrays && (type.startsWith("[") || ARRAYSUPERS.contains(type))) {
+                arrays = true;
+                for (Map.Entry<String, Set<String>> entry : stores.entrySet()) {
+                    if (entry.getKey().startsWith("[")) {
+                        work.addAll(entry.getValue());
+                    }
+                }
+            }
+        }
+
+        Map<String, Set<String>> confined = new TreeMap<>();
+        for (Map.Entry<String, Declaration> entry : declarations.entrySet()) {
+            if (!reached.contains(entry.getKey()) && !entry.getValue().fields.isEmpty()) {
+                confined.put(entry.getKey(), Collections.unmodifiableSet(new TreeSet<>(entry.getValue().fields)));
+            }
+        }
+        return Collections.unmodifiableMap(confined);
+    }
+
+    /**
+     * Collect a type and all its super types.
+     *
+     * @param type The internal name of the type.
+     * @param types The types already collected.
+     * @return false if a super type can't be found.
+     */
+    private boolean collect(String type, Set<String> types) {
+        if (!types.add(type)) {
+            return true;
+        }
+        Declaration declaration = declarations.get(type);
+        List<String> superTypes;
+        if (declaration != null) {
+            superTypes = declaration.supers;
+        } else {
+            try {
+                superTypes = hierarchy.getSuperTypes(type);
+            } catch (RuntimeException ex) {
+                return false;
+            }
+        }
+        boolean found = true;
+        for (String superType : superTypes) {
+            found &= collect(superType, types);
+        }
+        return found;
+    }
+
+    /**
+     * Visitor which follows the static types of the stack and of the local
+     * variables of a method. The primitive values are INTEGER, or LONG
+     * followed by TOP; the references are internal names (descriptors for
+     * arrays), NULL, UNINITIALIZED_THIS or the label of a NEW; TOP is an
+     * unknown value.
+     */
+    private class Method extends MethodVisitor {
+
+        /**
+         * The name of the class of the method.
+         */
+        private final String className;
+
+        /**
+         * The name and the descriptor of the method.
+         */
+        private final String method;
+
+        /**
+         * The types of the local variables.
+         */
+        private final List<Object> locals = new ArrayList<>();
+
+        /**
+         * The types of the stack.
+         */
+        private final List<Object> stack = new ArrayList<>();
+
+        /**
+         * The class created by each NEW, by label of the NEW.
+         */
+        private final Map<Label, String> news = new HashMap<>();
+
+        /**
+         * The labels visited since the last instruction.
+         */
+        private final List<Label> labels = new ArrayList<>();
+
+        /**
+         * The static types of the values returned by the method.
+         */
+        private final Set<String> returned = new HashSet<>();
+
+        /**
+         * The flags to know if the method has branches and frames.
+         */
+        private boolean branches = false;
+        private boolean frames = false;
+
+        /**
+         * Construct a visitor of the code of a method.
+         *
+         * @param className The name of the class of the method.
+         * @param access The method's access flags (see Opcodes).
+         * @param name The name of the method.
+         * @param desc The method's descriptor (see Type).
+         */
+        Method(String className, int access, String name, String desc) {
+            super(Opcodes.ASM5);
+            this.className = className;
+            this.method = name + desc;
+            if ((access & Opcodes.ACC_STATIC) == 0) {
+                locals.add("<init>".equals(name) ? Opcodes.UNINITIALIZED_THIS : className);
+            }
+            for (Type type : Type.getArgumentTypes(desc)) {
+                locals.add(value(type));
+                if (type.getSize() == 2) {
+                    locals.add(Opcodes.TOP);
+                }
+            }
+        }
+
+        @Override
+        public void visitFrame(int type, int nLocal, Object[] local, int nStack, Object[] stack) {
+            frames = true;
+            this.locals.clear();
+            for (int i = 0; i < nLocal; i++) {
+                add(this.locals, local[i]);
+            }
+            this.stack.clear();
+            for (int i = 0; i < nStack; i++) {
+                add(this.stack, stack[i]);
+            }
+        }
+
+        @Override
+        public void visitLabel(Label label) {
+            labels.add(label);
+        }
+
+        @Override
+        public void visitInsn(int opcode) {
+            labels.clear();
+            Object value1;
+            Object value2;
+            Object value3;
+            Object value4;
+            switch (opcode) {
+                case Opcodes.ACONST_NULL:
+                    push(Opcodes.NULL);
+                    break;
+                case Opcodes.ICONST_M1:
+                case Opcodes.ICONST_0:
+                case Opcodes.ICONST_1:
+                case Opcodes.ICONST_2:
+                case Opcodes.ICONST_3:
+                case Opcodes.ICONST_4:
+                case Opcodes.ICONST_5:
+                case Opcodes.FCONST_0:
+                case Opcodes.FCONST_1:
+                case Opcodes.FCONST_2:
+                    push(Opcodes.INTEGER);
+                    break;
+                case Opcodes.LCONST_0:
+                case Opcodes.LCONST_1:
+                case Opcodes.DCONST_0:
+                case Opcodes.DCONST_1:
+                    push(Opcodes.LONG);
+                    break;
+                case Opcodes.IALOAD:
+                case Opcodes.BALOAD:
+                case Opcodes.CALOAD:
+                case Opcodes.SALOAD:
+                case Opcodes.FALOAD:
+                    pop(2);
+                    push(Opcodes.INTEGER);
+                    break;
+                case Opcodes.LALOAD:
+                case Opcodes.DALOAD:
+                    pop(2);
+                    push(Opcodes.LONG);
+                    break;
+                case Opcodes.AALOAD:
+                    pop();
+                    push(element(pop()));
+                    break;
+                case Opcodes.IASTORE:
+                case Opcodes.BASTORE:
+                case Opcodes.CASTORE:
+                case Opcodes.SASTORE:
+                case Opcodes.FASTORE:
+                    pop(3);
+                    break;
+                case Opcodes.LASTORE:
+                case Opcodes.DASTORE:
+                    pop(4);
+                    break;
+                case Opcodes.AASTORE:
+                    value1 = pop();
+                    pop();
+                    store(pop(), value1);
+                    break;
+                case Opcodes.POP:
+                case Opcodes.MONITORENTER:
+                case Opcodes.MONITOREXIT:
+                case Opcodes.IRETURN:
+                case Opcodes.FRETURN:
+                    pop(1);
+                    break;
+                case Opcodes.POP2:
+                case Opcodes.LRETURN:
+                case Opcodes.DRETURN:
+                    pop(2);
+                    break;
+                case Opcodes.ARETURN:
+                    value1 = type(pop());
+                    if (value1 != null) {
+                        returned.add((String) value1);
+                    }
+                    break;
+                case Opcodes.ATHROW:
+                    escape(pop());
+                    break;
+                case Opcodes.DUP:
+                    value1 = pop();
+                    slots(value1, value1);
+                    break;
+                case Opcodes.DUP_X1:
+                    value1 = pop();
+                    value2 = pop();
+                    slots(value1, value2, value1);
+                    break;
+                case Opcodes.DUP_X2:
+                    value1 = pop();
+                    value2 = pop();
+                    value3 = pop();
+                    slots(value1, value3, value2, value1);
+                    break;
+                case Opcodes.DUP2:
+                    value1 = pop();
+                    value2 = pop();
+                    slots(value2, value1, value2, value1);
+                    break;
+                case Opcodes.DUP2_X1:
+                    value1 = pop();
+                    value2 = pop();
+                    value3 = pop();
+                    slots(value2, value1, value3, value2, value1);
+                    break;
+                case Opcodes.DUP2_X2:
+                    value1 = pop();
+                    value2 = pop();
+                    value3 = pop();
+                    value4 = pop();
+                    slots(value2, value1, value4, value3, value2, value1);
+                    break;
+                case Opcodes.SWAP:
+                    value1 = pop();
+                    value2 = pop();
+                    slots(value1, value2);
+                    break;
+                case Opcodes.LSHL:
+                case Opcodes.LSHR:
+                case Opcodes.LUSHR:
+                    pop(3);
+                    push(Opcodes.LONG);
+                    break;
+                case Opcodes.INEG:
+                case Opcodes.FNEG:
+                case Opcodes.I2F:
+                case Opcodes.F2I:
+                case Opcodes.I2B:
+                case Opcodes.I2C:
+                case Opcodes.I2S:
+                case Opcodes.ARRAYLENGTH:
+                    pop(1);
+                    push(Opcodes.INTEGER);
+                    break;
+                case Opcodes.LNEG:
+                case Opcodes.DNEG:
+                case Opcodes.L2D:
+                case Opcodes.D2L:
+                    pop(2);
+                    push(Opcodes.LONG);
+                    break;
+                case Opcodes.I2L:
+                case Opcodes.I2D:
+                case Opcodes.F2L:
+                case Opcodes.F2D:
+                    pop(1);
+                    push(Opcodes.LONG);
+                    break;
+                case Opcodes.L2I:
+                case Opcodes.L2F:
+                case Opcodes.D2I:
+                case Opcodes.D2F:
+                case Opcodes.FCMPL:
+                case Opcodes.FCMPG:
+                    pop(2);
+                    push(Opcodes.INTEGER);
+                    break;
+                case Opcodes.LCMP:
+                case Opcodes.DCMPL:
+                case Opcodes.DCMPG:
+                    pop(4);
+                    push(Opcodes.INTEGER);
+                    break;
+                default:
+                    if (opcode >= Opcodes.IADD && opcode <= Opcodes.LXOR) {
+
+                        /* Binary operations, the odd opcodes work on long and double values */
+                        boolean wide = opcode % 2 == 1;
+                        pop(wide ? 4 : 2);
+                        push(wide ? Opcodes.LONG : Opcodes.INTEGER);
+                    }
+            }
+        }
+
+        @Override
+        public void visitIntInsn(int opcode, int operand) {
+            labels.clear();
+            if (opcode == Opcodes.NEWARRAY) {
+                pop();
+                push(ARRAYS[operand]);
+            } else {
+                push(Opcodes.INTEGER);
+            }
+        }
+
+        @Override
+        public void visitVarInsn(int opcode, int var) {
+            labels.clear();
+            switch (opcode) {
+                case Opcodes.ILOAD:
+                case Opcodes.FLOAD:
+                    push(Opcodes.INTEGER);
+                    break;
+                case Opcodes.LLOAD:
+                case Opcodes.DLOAD:
+                    push(Opcodes.LONG);
+                    break;
+                case Opcodes.ALOAD:
+                    push(var < locals.size() ? locals.get(var) : Opcodes.TOP);
+                    break;
+                case Opcodes.ISTORE:
+                case Opcodes.FSTORE:
+                    pop();
+                    set(var, Opcodes.INTEGER);
+                    break;
+                case Opcodes.LSTORE:
+                case Opcodes.DSTORE:
+                    pop(2);
+                    set(var, Opcodes.LONG);
+                    set(var + 1, Opcodes.TOP);
+                    break;
+                case Opcodes.ASTORE:
+                    set(var, pop());
+                    break;
+                default:
+
+                    /* RET, the subroutines have no frames */
+                    escapes.add(OBJECT);
+            }
+        }
+
+        @Override
+        public void visitTypeInsn(int opcode, String type) {
+            List<Label> previous = new ArrayList<>(labels);
+            labels.clear();
+            switch (opcode) {
+                case Opcodes.NEW:
+                    Label label = previous.isEmpty() ? new Label() : previous.get(0);
+                    news.put(label, type);
+                    for (Label other : previous) {
+                        news.put(other, type);
+                    }
+                    push(label);
+                    break;
+                case Opcodes.ANEWARRAY:
+                    pop();
+                    push("[" + (type.startsWith("[") ? type : "L" + type + ";"));
+                    break;
+                case Opcodes.CHECKCAST:
+                    pop();
+                    push(type);
+                    break;
+                default:
+                    pop();
+                    push(Opcodes.INTEGER);
+            }
+        }
+
+        @Override
+        public void visitFieldInsn(int opcode, String owner, String name, String desc) {
+            labels.clear();
+            Type type = Type.getType(desc);
+            switch (opcode) {
+                case Opcodes.GETSTATIC:
+                    push(value(type));
+                    break;
+                case Opcodes.PUTSTATIC:
+                    escape(pop(type));
+                    break;
+                case Opcodes.GETFIELD:
+                    pop();
+                    push(value(type));
+                    break;
+                default:
+                    Object value = pop(type);
+                    store(pop(), value);
+            }
+        }
+
+        @Override
+        public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) {
+            labels.clear();
+            Type[] types = Type.getArgumentTypes(desc);
+            Object[] values = new Object[types.length];
+            for (int i = types.length - 1; i >= 0; i--) {
+                values[i] = pop(types[i]);
+            }
+            Object receiver = opcode == Opcodes.INVOKESTATIC ? null : pop();
+            boolean pure = owner.startsWith("[") || PURE.contains(owner) || PURE.contains(owner + "." + name)
+                    || OBJECTMETHODS.contains(name + desc) || isDeclared(owner, name + desc);
+            if (!pure) {
+                for (Object value : values) {
+                    escape(value);
+                }
+                escape(receiver);
+            }
+            if (opcode == Opcodes.INVOKESPECIAL && "<init>".equals(name)
+                    && (receiver instanceof Label || Opcodes.UNINITIALIZED_THIS.equals(receiver))) {
+                String type = type(receiver);
+                Collections.replaceAll(locals, receiver, type);
+                Collections.replaceAll(stack, receiver, type);
+            }
+            push(value(Type.getReturnType(desc)));
+        }
+
+        @Override
+        public void visitInvokeDynamicInsn(String name, String desc, Handle bsm, Object... bsmArgs) {
+            labels.clear();
+            Type[] types = Type.getArgumentTypes(desc);
+            for (int i = types.length - 1; i >= 0; i--) {
+                escape(pop(types[i]));
+            }
+            for (Object bsmArg : bsmArgs) {
+                handle(bsmArg);
+            }
+            push(value(Type.getReturnType(desc)));
+        }
+
+        @Override
+        public void visitJumpInsn(int opcode, Label label) {
+            labels.clear();
+            branches = true;
+            if (opcode >= Opcodes.IF_ICMPEQ && opcode <= Opcodes.IF_ACMPNE) {
+                pop(2);
+            } else if (opcode == Opcodes.JSR) {
+                escapes.add(OBJECT);
+            } else if (opcode != Opcodes.GOTO) {
+                pop();
+            }
+        }
+
+        @Override
+        public void visitLdcInsn(Object cst) {
+            labels.clear();
+            if (cst instanceof Long || cst instanceof Double) {
+                push(Opcodes.LONG);
+            } else if (cst instanceof String) {
+                push("java/lang/String");
+            } else if (cst instanceof Type) {
+                Type type = (Type) cst;
+                if (type.getSort() == Type.OBJECT) {
+                    escapes.add(type.getInternalName());
+                }
+                push(type.getSort() == Type.METHOD ? "java/lang/invoke/MethodType" : "java/lang/Class");
+            } else if (cst instanceof Handle) {
+                handle(cst);
+                push("java/lang/invoke/MethodHandle");
+            } else {
+                push(Opcodes.INTEGER);
+            }
+        }
+
+        @Override
+        public void visitIincInsn(int var, int increment) {
+            labels.clear();
+        }
+
+        @Override
+        public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+            this.labels.clear();
+            branches = true;
+            pop();
+        }
+
+        @Override
+        public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+            this.labels.clear();
+            branches = true;
+            pop();
+        }
+
+        @Override
+        public void visitMultiANewArrayInsn(String desc, int dims) {
+            labels.clear();
+            pop(dims);
+            push(desc);
+        }
+
+        @Override
+        public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
+            branches = true;
+        }
+
+        @Override
+        public void visitEnd() {
+            if (branches && !frames) {
+                escapes.add(OBJECT);
+            }
+            if (!returned.isEmpty()) {
+                returns.put(className + "." + method, returned);
+            }
+        }
+
+        /**
+         * Register a method handle given to the JDK: the objects created by a
+         * constructor escape, and the values returned by a method escape.
+         *
+         * @param cst A constant of the instruction.
+         */
+        private void handle(Object cst) {
+            if (cst instanceof Handle) {
+                Handle handle = (Handle) cst;
+                if (handle.getTag() == Opcodes.H_NEWINVOKESPECIAL) {
+                    escapes.add(handle.getOwner());
+                } else {
+                    callbacks.add(handle.getName() + handle.getDesc());
+                }
+            }
+        }
+
+        /**
+         * Register a value which escapes.
+         *
+         * @param value The value, or null.
+         */
+        private void escape(Object value) {
+            String type = value == null ? null : type(value);
+            if (type != null) {
+                escapes.add(type);
+            }
+        }
+
+        /**
+         * Register a value stored in an object or in an array.
+         *
+         * @param container The object or the array.
+         * @param value The value.
+         */
+        private void store(Object container, Object value) {
+            String type = value == null ? null : type(value);
+            String containerType = type(container);
+            if (type != null && containerType != null) {
+                stores.computeIfAbsent(containerType, key -> ConcurrentHashMap.newKeySet()).add(type);
+            }
+        }
+
+        /**
+         * Return the static type of a reference.
+         *
+         * @param value The value.
+         * @return the internal name or the descriptor of an array, Object for
+         * an unknown value, or null for null and the primitive values.
+         */
+        private String type(Object value) {
+            if (value instanceof String) {
+                return (String) value;
+            }
+            if (value instanceof Label) {
+                return news.getOrDefault(value, OBJECT);
+            }
+            if (Opcodes.UNINITIALIZED_THIS.equals(value)) {
+                return className;
+            }
+            return Opcodes.TOP.equals(value) ? OBJECT : null;
+        }
+
+        /**
+         * Return the type of the elements of an array.
+         *
+         * @param array The array.
+         * @return the type of its elements.
+         */
+        private Object element(Object array) {
+            String type = type(array);
+            if (type == null) {
+                return Opcodes.NULL;
+            }
+            if (!type.startsWith("[")) {
+                return OBJECT;
+            }
+            return type.charAt(1) == 'L' ? type.substring(2, type.length() - 1) : type.substring(1);
+        }
+
+        /**
+         * Return the value of a type.
+         *
+         * @param type The type.
+         * @return the value pushed by the type, or null for void.
+         */
+        private Object value(Type type) {
+            switch (type.getSort()) {
+                case Type.VOID:
+                    return null;
+                case Type.LONG:
+                case Type.DOUBLE:
+                    return Opcodes.LONG;
+                case Type.OBJECT:
+                    return type.getInternalName();
+                case Type.ARRAY:
+                    return type.getDescriptor();
+                default:
+                    return Opcodes.INTEGER;
+            }
+        }
+
+        /**
+         * Add a value of a frame to the locals or the stack.
+         *
+         * @param list The locals or the stack.
+         * @param value The value of the frame.
+         */
+        private void add(List<Object> list, Object value) {
+            if (Opcodes.LONG.equals(value) || Opcodes.DOUBLE.equals(value)) {
+                list.add(Opcodes.LONG);
+                list.add(Opcodes.TOP);
+            } else {
+                list.add(Opcodes.FLOAT.equals(value) ? Opcodes.INTEGER : value);
+            }
+        }
+
+        /**
+         * Push a value on the stack.
+         *
+         * @param value The value, LONG takes two slots, null is ignored.
+         */
+        private void push(Object value) {
+            if (value != null) {
+                stack.add(value);
+            }
+            if (Opcodes.LONG.equals(value)) {
+                stack.add(Opcodes.TOP);
+            }
+        }
+
+        /**
+         * Push slots on the stack, for the instructions which copy slots
+         * whatever their values.
+         *
+         * @param slots The slots.
+         */
+        private void slots(Object... slots) {
+            Collections.addAll(stack, slots);
+        }
+
+        /**
+         * Pop a value from the stack.
+         *
+         * @return the value, or TOP if the stack is empty.
+         */
+        private Object pop() {
+            return stack.isEmpty() ? Opcodes.TOP : stack.remove(stack.size() - 1);
+        }
+
+        /**
+         * Pop slots from the stack.
+         *
+         * @param slots The number of slots.
+         */
+        private void pop(int slots) {
+            for (int i = 0; i < slots; i++) {
+                pop();
+            }
+        }
+
+        /**
+         * Pop a value of a type from the stack.
+         *
+         * @param type The type.
+         * @return the value, or null for a long or a double.
+         */
+        private Object pop(Type type) {
+            if (type.getSize() == 2) {
+                pop(2);
+                return null;
+            }
+            return pop();
+        }
+
+        /**
+         * Set a local variable.
+         *
+         * @param var The index of the variable.
+         * @param value The value.
+         */
+        private void set(int var, Object value) {
+            while (locals.size() <= var) {
+                locals.add(Opcodes.TOP);
+            }
+            locals.set(var, value);
+        }
+    }
+}
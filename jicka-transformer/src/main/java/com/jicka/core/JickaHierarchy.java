@@ -0,0 +1,438 @@
+package com.jicka.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ *
+ * @author Mickael Boudignot
+ */
+class JickaHierarchy {
+
+    /**
+     * The hierarchy of each class loader.
+     */
+    private static final Map<ClassLoader, JickaHierarchy> hierarchies = new WeakHashMap<>();
+
+    /**
+     * Return the hierarchy of the classes of a class loader.
+     *
+     * @param classLoader The class loader, or null for the bootstrap classes.
+     * @return the hierarchy of the class loader.
+     */
+    static synchronized JickaHierarchy get(ClassLoader classLoader) {
+        return hierarchies.computeIfAbsent(classLoader, JickaHierarchy::new);
+    }
+
+    /**
+     * Class to store the super types of a class.
+     */
+    private static class Type {
+
+        /**
+         * The internal name of the super class, or null for Object.
+         */
+        final String superName;
+
+        /**
+         * The internal names of the interfaces.
+         */
+        final String[] interfaces;
+
+        /**
+         * The flag to know if the type is an interface.
+         */
+        final boolean isInterface;
+
+        /**
+         * Construct a new type.
+         *
+         * @param superName The internal name of the super class.
+         * @param interfaces The internal names of the interfaces.
+         * @param isInterface The flag interface.
+         */
+        Type(String superName, String[] interfaces, boolean isInterface) {
+            this.superName = superName;
+            this.interfaces = interfaces;
+            this.isInterface = isInterface;
+        }
+    }
+
+    /**
+     * Class to store the fields declared by a class, the annotations of the
+     * class and of its fields, and its immutable fields.
+     */
+    private static class Fields {
+
+        /**
+         * The internal name of the super class, or null.
+         */
+        String superName = null;
+
+        /**
+         * The descriptors of the annotations of the class.
+         */
+        final List<String> annotations = new ArrayList<>();
+
+        /**
+         * The descriptors of the annotations of each field, indexed by the
+         * name of the field.
+         */
+        final Map<String, List<String>> fields = new HashMap<>();
+
+        /**
+         * The fields which never change once initialized (see
+         * JickaPrescan.getImmutableFields).
+         */
+        Set<String> immutables = Collections.emptySet();
+    }
+
+    /**
+     * The class loader which finds the class files. The reference is weak
+     * because the class loader is the key of the hierarchy.
+     */
+    private final WeakReference<ClassLoader> classLoader;
+
+    /**
+     * The jars whose class files are read before the class loader.
+     */
+    private final List<JarFile> jars;
+
+    /**
+     * The types already read.
+     */
+    private final Map<String, Type> types = new ConcurrentHashMap<>();
+
+    /**
+     * The fields of the classes already read.
+     */
+    private final Map<String, Fields> fields = new ConcurrentHashMap<>();
+
+    /**
+     * Create the hierarchy of the classes of a class loader. The classes are
+     * read from their class files, so they are never loaded.
+     *
+     * @param classLoader The class loader, or null for the bootstrap classes.
+     */
+    JickaHierarchy(ClassLoader classLoader) {
+        this(Collections.emptyList(), classLoader);
+    }
+
+    /**
+     * Create the hierarchy of the classes of jars. The class files of the jars
+     * are read first, so the dependencies of the jars are only needed for the
+     * classes which aren't in the jars.
+     *
+     * @param jars The jars which are transformed.
+     * @param classLoader The class loader of the other classes.
+     */
+    JickaHierarchy(List<JarFile> jars, ClassLoader classLoader) {
+        this.jars = jars;
+        this.classLoader = new WeakReference<>(classLoader);
+    }
+
+    /**
+     * Returns the common super type of the two given types, like
+     * ClassWriter.getCommonSuperClass.
+     *
+     * @param type1 The internal name of a class.
+     * @param type2 The internal name of another class.
+     * @return the internal name of the common super class of the two given
+     * classes.
+     */
+    String getCommonSuperClass(String type1, String type2) {
+        if (isAssignableFrom(type1, type2)) {
+            return type1;
+        }
+        if (isAssignableFrom(type2, type1)) {
+            return type2;
+        }
+        if (getType(type1).isInterface || getType(type2).isInterface) {
+            return "java/lang/Object";
+        }
+        String type = type1;
+        do {
+            type = getType(type).superName;
+        } while (!isAssignableFrom(type, type2));
+        return type;
+    }
+
+    /**
+     * Return the direct super types of a class.
+     *
+     * @param name The internal name of the class.
+     * @return the internal name of the super class, if any, followed by the
+     * internal names of the interfaces.
+     */
+    List<String> getSuperTypes(String name) {
+        Type type = getType(name);
+        List<String> supers = new ArrayList<>();
+        if (type.superName != null) {
+            supers.add(type.superName);
+        }
+        Collections.addAll(supers, type.interfaces);
+        return supers;
+    }
+
+    /**
+     * Method to know if a type is a super type of another type.
+     *
+     * @param type1 The internal name of the super type.
+     * @param type2 The internal name of the sub type.
+     * @return true if a value of type2 can be assigned to type1.
+     */
+    private boolean isAssignableFrom(String type1, String type2) {
+        if (type1.equals(type2) || type1.equals("java/lang/Object")) {
+            return true;
+        }
+        Type type = getType(type2);
+        for (String itf : type.interfaces) {
+            if (isAssignableFrom(type1, itf)) {
+                return true;
+            }
+        }
+        return type.superName != null && isAssignableFrom(type1, type.superName);
+    }
+
+    /**
+     * Return the super types of a class.
+     *
+     * @param name The internal name of the class.
+     * @return the type of the class.
+     */
+    private Type getType(String name) {
+        Type type = types.get(name);
+        if (type == null) {
+            type = find(name);
+            types.put(name, type);
+        }
+        return type;
+    }
+
+    /**
+     * Find the class which declares a field, from the class of a field
+     * instruction up to its super classes, with the annotations of the class
+     * and of the field. The classes are read from their class files, so the
+     * annotations which aren't retained at runtime are found too.
+     *
+     * @param owner The class of the field instruction.
+     * @param name The name of the field.
+     * @return the internal name of the class which declares the field,
+     * followed by the descriptors of the annotations of the class and of the
+     * field, or only the owner if the field isn't found.
+     */
+    String[] getField(String owner, String name) {
+        String className = owner;
+        while (className != null) {
+            Fields declared = getFields(className);
+            List<String> annotations = declared.fields.get(name);
+            if (annotations != null) {
+                List<String> field = new ArrayList<>();
+                field.add(className);
+                field.addAll(declared.annotations);
+                field.addAll(annotations);
+                return field.toArray(new String[field.size()]);
+            }
+            className = declared.superName;
+        }
+        return new String[]{owner};
+    }
+
+    /**
+     * Return the classes read to find the class which declares a field (see
+     * getField): the class of the field instruction and its super classes,
+     * up to the class which declares the field.
+     *
+     * @param owner The class of the field instruction.
+     * @param name The name of the field.
+     * @return the internal names of the classes, from the owner.
+     */
+    List<String> getOwners(String owner, String name) {
+        List<String> owners = new ArrayList<>();
+        String className = owner;
+        while (className != null) {
+            owners.add(className);
+            Fields declared = getFields(className);
+            if (declared.fields.containsKey(name)) {
+                break;
+            }
+            className = declared.superName;
+        }
+        return owners;
+    }
+
+    /**
+     * Describe the facts of a class which decide how the instructions on its
+     * fields are transformed: its super class, its annotations, the
+     * annotations of its fields and its immutable fields. The classes which
+     * use the fields of a class are transformed again when its description
+     * changes.
+     *
+     * @param className The internal name of the class.
+     * @return the description of the class.
+     */
+    String describe(String className) {
+        Fields declared = getFields(className);
+        return declared.superName + " " + declared.annotations + " " + new TreeMap<>(declared.fields)
+                + " " + new TreeSet<>(declared.immutables);
+    }
+
+    /**
+     * Method to know if a field never changes once its class or its instance
+     * is initialized, so its accesses don't need the semantic.
+     *
+     * @param className The class which declares the field (see getField).
+     * @param name The name of the field.
+     * @return true if the field is final or effectively final.
+     */
+    boolean isImmutable(String className, String name) {
+        return getFields(className).immutables.contains(name);
+    }
+
+    /**
+     * Return the fields of a class, read once from its class file.
+     *
+     * @param className The internal name of the class.
+     * @return the fields of the class.
+     */
+    private Fields getFields(String className) {
+        Fields declared = fields.get(className);
+        if (declared == null) {
+            declared = readFields(className);
+            fields.put(className, declared);
+        }
+        return declared;
+    }
+
+    /**
+     * Read the fields of a class, their annotations and the immutable fields
+     * from its class file.
+     *
+     * @param name The internal name of the class.
+     * @return the fields of the class, empty if the class file can't be found.
+     */
+    private Fields readFields(String name) {
+        Fields declared = new Fields();
+        ClassReader cr = open(name);
+        if (cr == null) {
+            return declared;
+        }
+        declared.immutables = JickaPrescan.getImmutableFields(cr);
+        cr.accept(new ClassVisitor(Opcodes.ASM5) {
+            @Override
+            public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+                declared.superName = superName;
+            }
+
+            @Override
+            public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+                declared.annotations.add(desc);
+                return null;
+            }
+
+            @Override
+            public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+                List<String> annotations = new ArrayList<>();
+                declared.fields.put(name, annotations);
+                return new FieldVisitor(api) {
+                    @Override
+                    public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+                        annotations.add(desc);
+                        return null;
+                    }
+                };
+            }
+        }, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        return declared;
+    }
+
+    /**
+     * Open the class file of a class, in the jars and then in the class
+     * loader.
+     *
+     * @param name The internal name of the class.
+     * @return the reader of the class file, or null if the class file can't be
+     * found or read.
+     */
+    private ClassReader open(String name) {
+        ClassLoader classLoader = this.classLoader.get();
+        String resource = name + ".class";
+        for (JarFile jar : jars) {
+            try {
+                if (jar.contains(resource)) {
+                    return new ClassReader(jar.read(resource));
+                }
+            } catch (IOException | IllegalArgumentException ex) {
+
+                /* Unreadable entry, try the next jars and the class loader */
+            }
+        }
+
+        try (InputStream stream = classLoader == null
+                ? ClassLoader.getSystemResourceAsStream(resource)
+                : classLoader.getResourceAsStream(resource)) {
+            if (stream != null) {
+                return new ClassReader(stream);
+            }
+        } catch (IOException | IllegalArgumentException ex) {
+
+            /* Unreadable class file (newer than Java 8) */
+        }
+        return null;
+    }
+
+    /**
+     * Read the super types of a class from its class file (in the jars, then in
+     * the class loader), or from the loaded class if the class file can't be
+     * found.
+     *
+     * @param name The internal name of the class.
+     * @return the type of the class.
+     */
+    private Type find(String name) {
+        ClassLoader classLoader = this.classLoader.get();
+        ClassReader cr = open(name);
+        if (cr != null) {
+            return read(cr);
+        }
+
+        try {
+            Class<?> cls = Class.forName(name.replace('/', '.'), false, classLoader);
+            Class<?>[] classes = cls.getInterfaces();
+            String[] interfaces = new String[classes.length];
+            for (int i = 0; i < classes.length; i++) {
+                interfaces[i] = classes[i].getName().replace('.', '/');
+            }
+            String superName = cls.getSuperclass() == null ? null : cls.getSuperclass().getName().replace('.', '/');
+            return new Type(superName, interfaces, cls.isInterface());
+        } catch (ClassNotFoundException | LinkageError ex) {
+            throw new RuntimeException(ex.toString());
+        }
+    }
+
+    /**
+     * Read the super types of a class from its class file.
+     *
+     * @param cr The reader of the class file.
+     * @return the type of the class.
+     */
+    private static Type read(ClassReader cr) {
+        return new Type(cr.getSuperName(), cr.getInterfaces(), (cr.getAccess() & Opcodes.ACC_INTERFACE) != 0);
+    }
+}
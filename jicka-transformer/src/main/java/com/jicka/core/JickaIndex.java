@@ -0,0 +1,255 @@
+package com.jicka.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ * @author Mickael Boudignot
+ */
+class JickaIndex {
+
+    /**
+     * Signature of the file of an index.
+     */
+    private static final int MAGIC = 0x4a4b4958;
+
+    /**
+     * Version of the format of the file.
+     */
+    private static final int FORMAT = 1;
+
+    /**
+     * Extension of the file of the index written next to a transformed jar.
+     */
+    static final String EXTENSION = ".jickaidx";
+
+    /**
+     * The offset of each static field, indexed by owner, name and
+     * description, in the order of the offsets.
+     */
+    private final Map<String, Integer> offsets = new LinkedHashMap<>();
+
+    /**
+     * The fields of the class Data of each class, in the order of the
+     * classes.
+     */
+    private final Map<String, List<ASMClass.Information>> fields = new LinkedHashMap<>();
+
+    /**
+     * The static fields declared by each class.
+     */
+    private final Map<String, List<ASMMethodHandle.Information>> handles = new LinkedHashMap<>();
+
+    /**
+     * Add a class to the index. The static fields of the class which aren't
+     * already in the index receive the next offsets, so the classes must be
+     * added in the same order for each run to obtain the same offsets.
+     *
+     * @param scanner The fields found in the class.
+     */
+    void add(JickaScanner scanner) {
+        for (String[] field : scanner.getStatics()) {
+            offsets.putIfAbsent(String.format("%s.%s.%s", field[0], field[1], field[2]), offsets.size());
+        }
+        fields.put(scanner.getClassName(), new ArrayList<>(scanner.getFields()));
+        if (!scanner.getHandles().isEmpty()) {
+            handles.put(scanner.getClassName(), new ArrayList<>(scanner.getHandles()));
+        }
+    }
+
+    /**
+     * Keep the offsets of another index, so the static fields of the other
+     * index keep their offsets and the new static fields receive the next
+     * offsets.
+     *
+     * @param previous The index of a previous run.
+     */
+    void keepOffsets(JickaIndex previous) {
+        offsets.putAll(previous.offsets);
+    }
+
+    /**
+     * Add a class from another index, without scanning it again.
+     *
+     * @param className The internal name of the class.
+     * @param previous The index of a previous run which contains the class.
+     */
+    void add(String className, JickaIndex previous) {
+        fields.put(className, new ArrayList<>(previous.fields.getOrDefault(className, new ArrayList<>())));
+        if (previous.handles.containsKey(className)) {
+            handles.put(className, new ArrayList<>(previous.handles.get(className)));
+        }
+    }
+
+    /**
+     * Method to know if a class is in the index.
+     *
+     * @param className The internal name of the class.
+     * @return true if the class was added.
+     */
+    boolean contains(String className) {
+        return fields.containsKey(className);
+    }
+
+    /**
+     * Copy the index into the storages of a session used by the JickaVisitor.
+     * The classes of the index are then visited without modifying the
+     * storages.
+     *
+     * @param session The session which receives the index.
+     */
+    void install(JickaSession session) {
+        session.getStatics().putOffsets(offsets);
+        for (Map.Entry<String, List<ASMClass.Information>> entry : fields.entrySet()) {
+            session.getClasses().addClass(entry.getKey());
+            for (ASMClass.Information information : entry.getValue()) {
+                session.getClasses().addField(entry.getKey(), information.name, information.desc, information.value);
+            }
+        }
+        for (Map.Entry<String, List<ASMMethodHandle.Information>> entry : handles.entrySet()) {
+            session.getMethodHandles().putMethodHandles(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Write the index in a file. The names are written once in a table and
+     * referenced by their position.
+     *
+     * @param path The file of the index.
+     * @throws IOException An exception can be genered by E/O.
+     */
+    void write(Path path) throws IOException {
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        for (String key : offsets.keySet()) {
+            for (String part : split(key)) {
+                strings.putIfAbsent(part, strings.size());
+            }
+        }
+        for (Map.Entry<String, List<ASMClass.Information>> entry : fields.entrySet()) {
+            strings.putIfAbsent(entry.getKey(), strings.size());
+            for (ASMClass.Information information : entry.getValue()) {
+                strings.putIfAbsent(information.name, strings.size());
+                strings.putIfAbsent(information.desc, strings.size());
+            }
+        }
+        for (List<ASMMethodHandle.Information> informations : handles.values()) {
+            for (ASMMethodHandle.Information information : informations) {
+                strings.putIfAbsent(information.name, strings.size());
+                strings.putIfAbsent(information.desc, strings.size());
+            }
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeInt(strings.size());
+            for (String string : strings.keySet()) {
+                out.writeUTF(string);
+            }
+
+            out.writeInt(offsets.size());
+            for (Map.Entry<String, Integer> entry : offsets.entrySet()) {
+                for (String part : split(entry.getKey())) {
+                    out.writeInt(strings.get(part));
+                }
+                out.writeInt(entry.getValue());
+            }
+
+            out.writeInt(fields.size());
+            for (Map.Entry<String, List<ASMClass.Information>> entry : fields.entrySet()) {
+                out.writeInt(strings.get(entry.getKey()));
+                out.writeInt(entry.getValue().size());
+                for (ASMClass.Information information : entry.getValue()) {
+                    out.writeInt(strings.get(information.name));
+                    out.writeInt(strings.get(information.desc));
+                    out.writeByte(information.value == null ? -1 : (Boolean) information.value ? 1 : 0);
+                }
+                List<ASMMethodHandle.Information> informations = handles.getOrDefault(entry.getKey(), new ArrayList<>());
+                out.writeInt(informations.size());
+                for (ASMMethodHandle.Information information : informations) {
+                    out.writeInt(strings.get(information.name));
+                    out.writeInt(strings.get(information.desc));
+                    out.writeByte((information.isFinal ? 1 : 0) | (information.isVolatile ? 2 : 0));
+                }
+            }
+        }
+    }
+
+    /**
+     * Read an index written by write.
+     *
+     * @param path The file of the index.
+     * @return the index.
+     * @throws IOException The file can't be read or isn't an index.
+     */
+    static JickaIndex read(Path path) throws IOException {
+        JickaIndex index = new JickaIndex();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT) {
+                throw new IOException(String.format("The file '%s' isn't an index of Jicka.", path));
+            }
+            String[] strings = new String[in.readInt()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = in.readUTF();
+            }
+
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                String key = String.format("%s.%s.%s", strings[in.readInt()], strings[in.readInt()], strings[in.readInt()]);
+                index.offsets.put(key, in.readInt());
+            }
+
+            size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                String className = strings[in.readInt()];
+                int count = in.readInt();
+                List<ASMClass.Information> informations = new ArrayList<>(count);
+                for (int j = 0; j < count; j++) {
+                    String name = strings[in.readInt()];
+                    String desc = strings[in.readInt()];
+                    byte value = in.readByte();
+                    informations.add(new ASMClass.Information(name, desc, value < 0 ? null : value == 1));
+                }
+                index.fields.put(className, informations);
+
+                count = in.readInt();
+                List<ASMMethodHandle.Information> statics = new ArrayList<>(count);
+                for (int j = 0; j < count; j++) {
+                    String name = strings[in.readInt()];
+                    String desc = strings[in.readInt()];
+                    byte flags = in.readByte();
+                    statics.add(new ASMMethodHandle.Information(className, name, desc, (flags & 1) != 0, (flags & 2) != 0));
+                }
+                if (!statics.isEmpty()) {
+                    index.handles.put(className, statics);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException ex) {
+            throw new IOException(String.format("The index '%s' is corrupted.", path), ex);
+        }
+        return index;
+    }
+
+    /**
+     * Split the key of a static field into its owner, name and description.
+     * The owner and the name can't contain a dot, the description can.
+     *
+     * @param key The key of the static field.
+     * @return an array of three strings.
+     */
+    private static String[] split(String key) {
+        int first = key.indexOf('.');
+        int second = key.indexOf('.', first + 1);
+        return new String[]{key.substring(0, first), key.substring(first + 1, second), key.substring(second + 1)};
+    }
+}
@@ -0,0 +1,403 @@
+package com.jicka.core;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ *
+ * @author Mickael Boudignot
+ */
+public class JickaMappedCache {
+
+    /**
+     * Signature of the file of the cache.
+     */
+    private static final int MAGIC = 0x4a4b4341;
+
+    /**
+     * Version of the format of the file.
+     */
+    private static final int FORMAT = 2;
+
+    /**
+     * Class to store the position of a class in the file.
+     */
+    private static class Entry {
+
+        /**
+         * The SHA-256 digest of the original class and of its dependencies.
+         */
+        final byte[] hash;
+
+        /**
+         * The position of the transformed class in the file.
+         */
+        final int classPosition;
+
+        /**
+         * The length of the transformed class.
+         */
+        final int classLength;
+
+        /**
+         * The position of the class Data in the file.
+         */
+        final int dataPosition;
+
+        /**
+         * The length of the class Data, or -1 if the class hasn't a class
+         * Data.
+         */
+        final int dataLength;
+
+        /**
+         * Construct a new entry.
+         *
+         * @param hash The digest of the original class and of its
+         * dependencies.
+         * @param classPosition The position of the transformed class.
+         * @param classLength The length of the transformed class.
+         * @param dataPosition The position of the class Data.
+         * @param dataLength The length of the class Data or -1.
+         */
+        Entry(byte[] hash, int classPosition, int classLength, int dataPosition, int dataLength) {
+            this.hash = hash;
+            this.classPosition = classPosition;
+            this.classLength = classLength;
+            this.dataPosition = dataPosition;
+            this.dataLength = dataLength;
+        }
+    }
+
+    /**
+     * Class to store a class transformed by this run.
+     */
+    private static class Added {
+
+        /**
+         * The SHA-256 digest of the original class and of its dependencies.
+         */
+        final byte[] hash;
+
+        /**
+         * The transformed class.
+         */
+        final byte[] classBuffer;
+
+        /**
+         * The class Data, or null.
+         */
+        final byte[] dataBuffer;
+
+        /**
+         * Construct a new class to add to the file.
+         *
+         * @param hash The digest of the original class and of its
+         * dependencies.
+         * @param classBuffer The transformed class.
+         * @param dataBuffer The class Data or null.
+         */
+        Added(byte[] hash, byte[] classBuffer, byte[] dataBuffer) {
+            this.hash = hash;
+            this.classBuffer = classBuffer;
+            this.dataBuffer = dataBuffer;
+        }
+    }
+
+    /**
+     * The file of the cache.
+     */
+    private final Path path;
+
+    /**
+     * The session which transforms the classes of the cache.
+     */
+    private final JickaSession session;
+
+    /**
+     * The digest of the transformer and of the excluded packages.
+     */
+    private final byte[] salt;
+
+    /**
+     * The content of the file, or null if the file doesn't exist or is
+     * invalid.
+     */
+    private final ByteBuffer mapping;
+
+    /**
+     * The classes of the file indexed by their internal name.
+     */
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    /**
+     * The classes transformed by this run.
+     */
+    private final Map<String, Added> added = new ConcurrentHashMap<>();
+
+    /**
+     * Open the file of a cache. The offsets of the static fields saved in the
+     * file are restored, so this method must be called before the first
+     * transformation. A file created by another version of Jicka or with
+     * other excluded packages is ignored. The cache is used by the session of
+     * the static methods of Jicka.
+     *
+     * @param path The file of the cache.
+     * @throws Exception An exception can be genered by E/O.
+     */
+    public JickaMappedCache(Path path) throws Exception {
+        this(path, Jicka.getSession());
+    }
+
+    /**
+     * Open the file of a cache used by a session. The offsets of the static
+     * fields saved in the file are restored in the session.
+     *
+     * @param path The file of the cache.
+     * @param session The session which transforms the classes.
+     * @throws Exception An exception can be genered by E/O.
+     */
+    public JickaMappedCache(Path path, JickaSession session) throws Exception {
+        this.path = path;
+        this.session = session;
+        this.salt = JickaCache.salt(session);
+        this.mapping = map();
+    }
+
+    /**
+     * Map the file in memory and read its index.
+     *
+     * @return the mapping or null if the file can't be used.
+     * @throws IOException An exception can be genered by E/O.
+     */
+    private ByteBuffer map() throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        try {
+            byte[] hash = new byte[salt.length];
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT) {
+                return null;
+            }
+            buffer.get(hash);
+            if (!Arrays.equals(hash, salt)) {
+                return null;
+            }
+            byte[] index = new byte[buffer.getInt()];
+            buffer.get(index);
+            int start = buffer.position();
+
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(index))) {
+                Map<String, Integer> offsets = new LinkedHashMap<>();
+                int size = in.readInt();
+                for (int i = 0; i < size; i++) {
+                    offsets.put(in.readUTF(), in.readInt());
+                }
+                size = in.readInt();
+                for (int i = 0; i < size; i++) {
+                    String name = in.readUTF();
+                    byte[] classHash = new byte[salt.length];
+                    in.readFully(classHash);
+                    entries.put(name, new Entry(classHash, start + in.readInt(), in.readInt(), start + in.readInt(), in.readInt()));
+                }
+                session.getStatics().putOffsets(offsets);
+            }
+            return buffer;
+        } catch (RuntimeException | IOException ex) {
+
+            /* A corrupted file is ignored */
+            entries.clear();
+            return null;
+        }
+    }
+
+    /**
+     * Method to know if a class may be in the cache.
+     *
+     * @param className The internal name of the class.
+     * @return true if a class with the same name is in the cache.
+     */
+    public boolean contains(String className) {
+        return entries.containsKey(className) || added.containsKey(className);
+    }
+
+    /**
+     * Return the transformed class if the cache contains the same original
+     * class, transformed with the same facts of the classes whose fields it
+     * uses (see JickaSession.getDependencies).
+     *
+     * @param className The internal name of the class.
+     * @param classBuffer The original class.
+     * @param classLoader The class loader of the class.
+     * @return the transformed class or null.
+     */
+    public byte[] get(String className, byte[] classBuffer, ClassLoader classLoader) {
+        Entry entry = entries.get(className);
+        if (entry == null || !Arrays.equals(entry.hash, hash(classBuffer, classLoader))) {
+            return null;
+        }
+        return read(entry.classPosition, entry.classLength);
+    }
+
+    /**
+     * Return the class Data of a class returned by get.
+     *
+     * @param className The internal name of the class.
+     * @return the class Data or null.
+     */
+    public byte[] getData(String className) {
+        Entry entry = entries.get(className);
+        if (entry == null || entry.dataLength < 0) {
+            return null;
+        }
+        return read(entry.dataPosition, entry.dataLength);
+    }
+
+    /**
+     * Add a class transformed by this run. The class will be in the file
+     * after the next call to save.
+     *
+     * @param className The internal name of the class.
+     * @param original The original class.
+     * @param classLoader The class loader of the class.
+     * @param classBuffer The transformed class.
+     * @param dataBuffer The class Data or null.
+     */
+    public void put(String className, byte[] original, ClassLoader classLoader, byte[] classBuffer, byte[] dataBuffer) {
+        added.put(className, new Added(hash(original, classLoader), classBuffer, dataBuffer));
+    }
+
+    /**
+     * Write the file of the cache with the classes of the file and the
+     * classes added by this run. The file is replaced atomically, so the
+     * mapping of another JVM is never modified. Nothing is written if no
+     * class was added.
+     *
+     * @throws IOException An exception can be genered by E/O.
+     */
+    public synchronized void save() throws IOException {
+        if (added.isEmpty()) {
+            return;
+        }
+
+        /* Classes of the file which aren't replaced by this run are kept, sorted by name */
+        Map<String, Added> classes = new TreeMap<>();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            Entry value = entry.getValue();
+            byte[] data = value.dataLength < 0 ? null : read(value.dataPosition, value.dataLength);
+            classes.put(entry.getKey(), new Added(value.hash, read(value.classPosition, value.classLength), data));
+        }
+        classes.putAll(added);
+
+        /* Build the index, classes are stored after it in the same order */
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(index)) {
+            Map<String, Integer> offsets = session.getStatics().getOffsets();
+            out.writeInt(offsets.size());
+            for (Map.Entry<String, Integer> offset : offsets.entrySet()) {
+                out.writeUTF(offset.getKey());
+                out.writeInt(offset.getValue());
+            }
+
+            out.writeInt(classes.size());
+            long position = 0;
+            for (Map.Entry<String, Added> entry : classes.entrySet()) {
+                Added value = entry.getValue();
+                int dataLength = value.dataBuffer == null ? -1 : value.dataBuffer.length;
+                out.writeUTF(entry.getKey());
+                out.write(value.hash);
+                out.writeInt((int) position);
+                out.writeInt(value.classBuffer.length);
+                out.writeInt((int) (position + value.classBuffer.length));
+                out.writeInt(dataLength);
+                position += value.classBuffer.length + Math.max(dataLength, 0);
+                if (position > Integer.MAX_VALUE) {
+                    throw new IOException("The cache is too large.");
+                }
+            }
+        }
+
+        /* Write a temporary file and move it to never map a partial file */
+        Path directory = path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path tmp = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT);
+                out.write(salt);
+                out.writeInt(index.size());
+                index.writeTo(out);
+                for (Added value : classes.values()) {
+                    out.write(value.classBuffer);
+                    if (value.dataBuffer != null) {
+                        out.write(value.dataBuffer);
+                    }
+                }
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+
+            /* The temporary file is left only if the write or the move failed */
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Copy a part of the mapping.
+     *
+     * @param position The position in the file.
+     * @param length The length of the part.
+     * @return a new array.
+     */
+    private byte[] read(int position, int length) {
+        byte[] buffer = new byte[length];
+        ByteBuffer duplicate = mapping.duplicate();
+        ((Buffer) duplicate).position(position);
+        duplicate.get(buffer);
+        return buffer;
+    }
+
+    /**
+     * Compute the SHA-256 digest of a class and of the descriptions of the
+     * classes read to transform it.
+     *
+     * @param classBuffer The class.
+     * @param classLoader The class loader of the class.
+     * @return the digest.
+     */
+    private byte[] hash(byte[] classBuffer, ClassLoader classLoader) {
+        Map<String, String> dependencies = session.getDependencies(classBuffer, JickaHierarchy.get(classLoader));
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(classBuffer);
+            return digest.digest(dependencies.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -26,6 +26,11 @@ class JickaModifier {
      */
     private final ModifierMethodWriter mw;
 
+    /**
+     * The session which owns the fields of the class.
+     */
+    private final JickaSession session;
+
     /**
      * The current class that is in modification.
      */
@@ -36,10 +41,12 @@ class JickaModifier {
      * new semantic.
      *
      * @param mw The method writer.
+     * @param session The session which owns the fields of the class.
      * @param className The current name of the classe.
      */
-    JickaModifier(ModifierMethodWriter mw, String className) {
+    JickaModifier(ModifierMethodWriter mw, JickaSession session, String className) {
         this.mw = mw;
+        this.session = session;
         this.className = className;
     }
 
@@ -54,9 +61,12 @@ class JickaModifier {
     /**
      * Method called during the initialisation of a static block to create all
      * Getter/Setter (MethodHandles) for each static field.
+     *
+     * @param clear true to remove the static fields of the class once used,
+     * false if they belong to an index which can be used again.
      */
-    public void createMethodHandle() {
-        List<ASMMethodHandle.Information> methodHandles = ASMMethodHandle.get().getMethodHandle();
+    public void createMethodHandle(boolean clear) {
+        List<ASMMethodHandle.Information> methodHandles = session.getMethodHandles().getMethodHandle(className);
         for (ASMMethodHandle.Information smh : methodHandles) {
 
             /* Create and store a MethodHandles to allow modification during execution */
@@ -69,7 +79,9 @@ class JickaModifier {
             mw.visitLdcInsn(smh.isVolatile);
             mw.visitMethodInsn(INVOKESTATIC, LOCALHEAP, "createMethodHandles", "(Ljava/lang/invoke/MethodHandles$Lookup;ILjava/lang/String;Ljava/lang/String;Ljava/lang/String;ZZ)V", false, false);
         }
-        ASMMethodHandle.get().clearMethodHandle();
+        if (clear) {
+            session.getMethodHandles().clearMethodHandle(className);
+        }
     }
 
     /**
@@ -133,7 +145,7 @@ class JickaModifier {
      * @param desc The description which represent the type of the field.
      */
     private void pushOffset(String owner, String name, String desc) {
-        int offset = ASMFieldStatic.get().getOffset(owner, name, desc);
+        int offset = session.getStatics().getOffset(owner, name, desc);
         mw.visitLdcInsn(offset);
     }
 
@@ -0,0 +1,265 @@
+package com.jicka.core;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ *
+ * @author Mickael Boudignot
+ */
+class JickaPolicy {
+
+    /**
+     * The annotations which opt a class or a field out of the semantic when
+     * the policy doesn't define its own annotations.
+     */
+    private static final String[] ANNOTATIONS = {"ThreadConfined", "Immutable"};
+
+    /**
+     * Node of a trie of names. A node ends a rule when its flag is defined.
+     */
+    private static class Node {
+
+        /**
+         * The nodes of the next characters.
+         */
+        final Map<Character, Node> children = new HashMap<>();
+
+        /**
+         * True for an include, false for an exclude, null if no rule ends
+         * here.
+         */
+        Boolean include = null;
+
+        /**
+         * Return the node of the next character, created if needed.
+         *
+         * @param c The next character.
+         * @return the node.
+         */
+        Node child(char c) {
+            return children.computeIfAbsent(c, key -> new Node());
+        }
+    }
+
+    /**
+     * The include and exclude rules, matched from the start of the names.
+     */
+    private Node rules = new Node();
+
+    /**
+     * The excluded packages given by defineExclude, matched anywhere in the
+     * names.
+     */
+    private Node excludes = new Node();
+
+    /**
+     * Flag to know if a rule names a field.
+     */
+    private boolean fieldRules = false;
+
+    /**
+     * The annotations which opt out, as internal names or simple names.
+     */
+    private final Set<String> annotations = new LinkedHashSet<>(Arrays.asList(ANNOTATIONS));
+
+    /**
+     * The rules of the policy, in a canonical form.
+     */
+    private final List<String> lines = new ArrayList<>();
+
+    /**
+     * Replace the excluded packages. A class is excluded if its name contains
+     * one of them.
+     *
+     * @param packages The packages with "/" as separator.
+     */
+    void defineExcludes(String[] packages) {
+        Node root = new Node();
+        for (String name : packages) {
+            Node node = root;
+            for (int i = 0; i < name.length(); i++) {
+                node = node.child(name.charAt(i));
+            }
+            node.include = false;
+        }
+        excludes = root;
+    }
+
+    /**
+     * Replace the rules by the rules of a file. Each line is a rule, and the
+     * lines which are empty or start with "#" are ignored:
+     * <pre>
+     * exclude com.example.cache
+     * include com.example.cache.HotPath
+     * exclude com.example.Counter#hits
+     * annotation com.example.Confined
+     * </pre>
+     * A rule "include" or "exclude" names a package, a class (with its nested
+     * classes) or a field after "#", and the longest rule which matches a
+     * name wins. A rule "annotation" adds an annotation, by its full name or
+     * by its simple name, which opts the classes and the fields it annotates
+     * out of the semantic; the first one replaces the default annotations
+     * ThreadConfined and Immutable.
+     *
+     * @param path The file of the policy.
+     * @throws IOException The file can't be read or contains a line which
+     * isn't a rule.
+     */
+    void read(Path path) throws IOException {
+        Node root = new Node();
+        boolean fields = false;
+        List<String> names = new ArrayList<>();
+        List<String> canonical = new ArrayList<>();
+
+        int number = 0;
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            number++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.split("\\s+");
+            if (parts.length != 2 || !(parts[0].equals("include") || parts[0].equals("exclude") || parts[0].equals("annotation"))) {
+                throw new IOException(String.format("The line %d of '%s' isn't a rule of Jicka: %s", number, path, line));
+            }
+            String name = parts[1].replace('.', '/');
+            if (parts[0].equals("annotation")) {
+                names.add(name);
+            } else {
+                if (name.endsWith("/*")) {
+                    name = name.substring(0, name.length() - 2);
+                }
+                name = name.replace('#', '.');
+                fields |= name.indexOf('.') >= 0;
+                Node node = root;
+                for (int i = 0; i < name.length(); i++) {
+                    node = node.child(name.charAt(i));
+                }
+                node.include = parts[0].equals("include");
+            }
+            canonical.add(String.format("%s %s", parts[0], name));
+        }
+
+        rules = root;
+        fieldRules = fields;
+        annotations.clear();
+        annotations.addAll(names.isEmpty() ? Arrays.asList(ANNOTATIONS) : names);
+        lines.clear();
+        lines.addAll(canonical);
+    }
+
+    /**
+     * Method to know if a class is excluded.
+     *
+     * @param className The internal name of the class.
+     * @return true if the class mustn't be transformed.
+     */
+    boolean isExcluded(String className) {
+        Boolean include = match(className);
+        return include == null ? contains(className) : !include;
+    }
+
+    /**
+     * Method to know if a field is excluded by a rule.
+     *
+     * @param className The internal name of the class which declares the
+     * field.
+     * @param name The name of the field.
+     * @return true if the field must keep its original accesses.
+     */
+    boolean isExcluded(String className, String name) {
+        if (!fieldRules) {
+            return isExcluded(className);
+        }
+        Boolean include = match(className + "." + name);
+        return include == null ? contains(className) : !include;
+    }
+
+    /**
+     * Method to know if annotations opt a class or a field out of the
+     * semantic.
+     *
+     * @param descs The descriptors of the annotations.
+     * @return true if one of the annotations opts out.
+     */
+    boolean isOptedOut(Iterable<String> descs) {
+        for (String desc : descs) {
+            String name = desc.substring(1, desc.length() - 1);
+            String simpleName = name.substring(Math.max(name.lastIndexOf('/'), name.lastIndexOf('$')) + 1);
+            if (annotations.contains(name) || annotations.contains(simpleName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Find the longest rule which matches a name. A rule matches if it's the
+     * name or if it's followed in the name by "/" (a package), "$" (a nested
+     * class) or "." (a field).
+     *
+     * @param name The internal name of a class, followed by "." and the name
+     * of a field for a field.
+     * @return true for an include, false for an exclude and null without rule.
+     */
+    private Boolean match(String name) {
+        Boolean include = null;
+        Node node = rules;
+        for (int i = 0; node != null; i++) {
+            if (node.include != null && (i == name.length() || "/$.".indexOf(name.charAt(i)) >= 0)) {
+                include = node.include;
+            }
+            if (i == name.length()) {
+                break;
+            }
+            node = node.children.get(name.charAt(i));
+        }
+        return include;
+    }
+
+    /**
+     * Method to know if a name contains an excluded package.
+     *
+     * @param name The internal name of a class.
+     * @return true if an excluded package is found in the name.
+     */
+    private boolean contains(String name) {
+        if (excludes.children.isEmpty()) {
+            return false;
+        }
+        for (int start = 0; start < name.length(); start++) {
+            Node node = excludes;
+            for (int i = start; i < name.length() && node.include == null; i++) {
+                node = node.children.get(name.charAt(i));
+                if (node == null) {
+                    break;
+                }
+            }
+            if (node != null && node.include != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Return the rules of the policy, used to know if the transformation
+     * changes.
+     *
+     * @return the rules, one by line, followed by the annotations.
+     */
+    @Override
+    public String toString() {
+        return String.join("\n", lines) + "\n" + String.join(",", annotations);
+    }
+}
@@ -0,0 +1,324 @@
+package com.jicka.core;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+
+/**
+ *
+ * @author Mickael Boudignot
+ */
+class JickaPrescan {
+
+    /**
+     * Tag of a class in the constant pool.
+     */
+    private static final int CLASS = 7;
+
+    /**
+     * Tag of a field reference in the constant pool.
+     */
+    private static final int FIELDREF = 9;
+
+    /**
+     * Tag of an interface method reference in the constant pool.
+     */
+    private static final int INTERFACEMETHODREF = 11;
+
+    /**
+     * The interface whose methods lock and unlock are intercepted.
+     */
+    private static final String LOCK = "java/util/concurrent/locks/Lock";
+
+    /**
+     * The package of the runtime of the semantic.
+     */
+    private static final String RUNTIME = "com/jicka/core/";
+
+    /**
+     * Method to know if the JickaVisitor modifies a class. The constant pool,
+     * the fields and the methods are read without visiting the class: a class
+     * is modified if it uses a field or the interface Lock, declares a field
+     * (the class receives the field of its ThreadLocal and its constructors
+     * initialize it), starts a thread (main or run) or contains a
+     * synchronized block. The answer is conservative: a class can be
+     * modified even if none of its instructions is replaced.
+     *
+     * @param cr The reader of the class.
+     * @return false if the transformed class would be the same class.
+     */
+    static boolean isModified(ClassReader cr) {
+        char[] buffer = new char[cr.getMaxStringLength()];
+
+        /* Field instructions and calls of Lock need a constant */
+        for (int i = 1; i < cr.getItemCount(); i++) {
+            int item = cr.getItem(i);
+            if (item == 0) {
+                continue;
+            }
+            int tag = cr.b[item - 1];
+            if (tag == FIELDREF || (tag == INTERFACEMETHODREF && LOCK.equals(cr.readClass(item, buffer)))) {
+                return true;
+            }
+        }
+
+        /* Skip the access flags, the names and the interfaces */
+        int u = cr.header + 6;
+        u += 2 + 2 * cr.readUnsignedShort(u);
+        if (cr.readUnsignedShort(u) > 0) {
+            return true;
+        }
+        u += 2;
+
+        /* Methods which start a thread and synchronized blocks */
+        int methods = cr.readUnsignedShort(u);
+        u += 2;
+        for (int i = 0; i < methods; i++) {
+            String name = cr.readUTF8(u + 2, buffer);
+            String desc = cr.readUTF8(u + 4, buffer);
+            if ((name.equals("main") && desc.equals("([Ljava/lang/String;)V")) || (name.equals("run") && desc.equals("()V"))) {
+                return true;
+            }
+            int attributes = cr.readUnsignedShort(u + 6);
+            u += 8;
+            for (int j = 0; j < attributes; j++) {
+                int length = cr.readInt(u + 2);
+                if ("Code".equals(cr.readUTF8(u, buffer)) && hasMonitor(cr.b, u + 14, cr.readInt(u + 10))) {
+                    return true;
+                }
+                u += 6 + length;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Method to know if a class was already transformed by Jicka: its
+     * constant pool references a class of the runtime of the semantic.
+     *
+     * @param cr The reader of the class.
+     * @return true if the class uses the runtime of the semantic.
+     */
+    static boolean isTransformed(ClassReader cr) {
+        char[] buffer = new char[cr.getMaxStringLength()];
+        for (int i = 1; i < cr.getItemCount(); i++) {
+            int item = cr.getItem(i);
+            if (item != 0 && cr.b[item - 1] == CLASS && cr.readUTF8(item, buffer).startsWith(RUNTIME)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Return the size of the code of each method of a class, read from the
+     * attributes Code without visiting the instructions.
+     *
+     * @param cr The reader of the class.
+     * @return the size in bytes of each method with a code, indexed by the
+     * name and the descriptor of the method.
+     */
+    static Map<String, Integer> getCodeSizes(ClassReader cr) {
+        char[] buffer = new char[cr.getMaxStringLength()];
+        Map<String, Integer> sizes = new LinkedHashMap<>();
+
+        /* Skip the access flags, the names, the interfaces and the fields */
+        int u = cr.header + 6;
+        u += 2 + 2 * cr.readUnsignedShort(u);
+        int fields = cr.readUnsignedShort(u);
+        u += 2;
+        for (int i = 0; i < fields; i++) {
+            int attributes = cr.readUnsignedShort(u + 6);
+            u += 8;
+            for (int j = 0; j < attributes; j++) {
+                u += 6 + cr.readInt(u + 2);
+            }
+        }
+
+        int methods = cr.readUnsignedShort(u);
+        u += 2;
+        for (int i = 0; i < methods; i++) {
+            String name = cr.readUTF8(u + 2, buffer) + cr.readUTF8(u + 4, buffer);
+            int attributes = cr.readUnsignedShort(u + 6);
+            u += 8;
+            for (int j = 0; j < attributes; j++) {
+                if ("Code".equals(cr.readUTF8(u, buffer))) {
+                    sizes.put(name, cr.readInt(u + 10));
+                }
+                u += 6 + cr.readInt(u + 2);
+            }
+        }
+        return sizes;
+    }
+
+    /**
+     * Return the fields declared by a class which never change once the class
+     * or the instance is initialized: a final or private field which is only
+     * written by PUTFIELD in the constructors or by PUTSTATIC in the static
+     * block init of the class. A private field can only be written by its
+     * class (ASM 5 reads no class with nestmates), so the code of the class is
+     * enough; the writes by reflection aren't seen.
+     *
+     * @param cr The reader of the class.
+     * @return the names of the immutable fields.
+     */
+    static Set<String> getImmutableFields(ClassReader cr) {
+        char[] buffer = new char[cr.getMaxStringLength()];
+        String className = cr.getClassName();
+        Set<String> immutables = new HashSet<>();
+        Set<String> mutables = new HashSet<>();
+
+        /* Skip the access flags, the names and the interfaces */
+        int u = cr.header + 6;
+        u += 2 + 2 * cr.readUnsignedShort(u);
+        int fields = cr.readUnsignedShort(u);
+        u += 2;
+        for (int i = 0; i < fields; i++) {
+            String name = cr.readUTF8(u + 2, buffer);
+            if ((cr.readUnsignedShort(u) & (Opcodes.ACC_FINAL | Opcodes.ACC_PRIVATE)) != 0) {
+                immutables.add(name);
+            } else {
+                mutables.add(name);
+            }
+            int attributes = cr.readUnsignedShort(u + 6);
+            u += 8;
+            for (int j = 0; j < attributes; j++) {
+                u += 6 + cr.readInt(u + 2);
+            }
+        }
+        if (immutables.isEmpty()) {
+            return immutables;
+        }
+
+        /* Fields of the class written outside of their initialization */
+        int methods = cr.readUnsignedShort(u);
+        u += 2;
+        for (int i = 0; i < methods; i++) {
+            String name = cr.readUTF8(u + 2, buffer);
+            int attributes = cr.readUnsignedShort(u + 6);
+            u += 8;
+            for (int j = 0; j < attributes; j++) {
+                if ("Code".equals(cr.readUTF8(u, buffer))) {
+                    int start = u + 14;
+                    int length = cr.readInt(u + 10);
+                    for (int offset = 0; offset < length; offset = next(cr.b, start, offset)) {
+                        int opcode = cr.b[start + offset] & 0xFF;
+                        if ((opcode == Opcodes.PUTFIELD && !name.equals("<init>")) || (opcode == Opcodes.PUTSTATIC && !name.equals("<clinit>"))) {
+                            int item = cr.getItem(cr.readUnsignedShort(start + offset + 1));
+                            if (className.equals(cr.readClass(item, buffer))) {
+                                mutables.add(cr.readUTF8(cr.getItem(cr.readUnsignedShort(item + 2)), buffer));
+                            }
+                        }
+                    }
+                }
+                u += 6 + cr.readInt(u + 2);
+            }
+        }
+        immutables.removeAll(mutables);
+        return immutables;
+    }
+
+    /**
+     * Method to know if a code contains a MONITORENTER or a MONITOREXIT. The
+     * instructions are walked with their length, so an operand is never read
+     * as an opcode.
+     *
+     * @param b The class file.
+     * @param start The position of the first instruction.
+     * @param length The length of the code.
+     * @return true if the code contains a synchronized block.
+     */
+    private static boolean hasMonitor(byte[] b, int start, int length) {
+        for (int offset = 0; offset < length; offset = next(b, start, offset)) {
+            int opcode = b[start + offset] & 0xFF;
+            if (opcode == Opcodes.MONITORENTER || opcode == Opcodes.MONITOREXIT) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Return the position of the next instruction of a code.
+     *
+     * @param b The class file.
+     * @param start The position of the first instruction.
+     * @param offset The offset of the instruction in the code.
+     * @return the offset of the next instruction.
+     */
+    private static int next(byte[] b, int start, int offset) {
+        int opcode = b[start + offset] & 0xFF;
+        switch (opcode) {
+            case Opcodes.TABLESWITCH: {
+                int u = start + offset + 4 - (offset & 3);
+                return u - start + 12 + 4 * (readInt(b, u + 8) - readInt(b, u + 4) + 1);
+            }
+            case Opcodes.LOOKUPSWITCH: {
+                int u = start + offset + 4 - (offset & 3);
+                return u - start + 8 + 8 * readInt(b, u + 4);
+            }
+            case 0xC4: // WIDE
+                return offset + ((b[start + offset + 1] & 0xFF) == Opcodes.IINC ? 6 : 4);
+            default:
+                return offset + length(opcode);
+        }
+    }
+
+    /**
+     * Return the length of an instruction of fixed length.
+     *
+     * @param opcode The OPCODE of the instruction.
+     * @return the length of the instruction with its operands.
+     */
+    private static int length(int opcode) {
+        switch (opcode) {
+            case Opcodes.BIPUSH:
+            case Opcodes.LDC:
+            case Opcodes.ILOAD:
+            case Opcodes.LLOAD:
+            case Opcodes.FLOAD:
+            case Opcodes.DLOAD:
+            case Opcodes.ALOAD:
+            case Opcodes.ISTORE:
+            case Opcodes.LSTORE:
+            case Opcodes.FSTORE:
+            case Opcodes.DSTORE:
+            case Opcodes.ASTORE:
+            case Opcodes.RET:
+            case Opcodes.NEWARRAY:
+                return 2;
+            case Opcodes.MULTIANEWARRAY:
+                return 4;
+            case Opcodes.INVOKEINTERFACE:
+            case Opcodes.INVOKEDYNAMIC:
+            case 0xC8: // GOTO_W
+            case 0xC9: // JSR_W
+                return 5;
+            default:
+                if (opcode == Opcodes.SIPUSH || opcode == 0x13 || opcode == 0x14 // LDC_W, LDC2_W
+                        || opcode == Opcodes.IINC
+                        || (opcode >= Opcodes.IFEQ && opcode <= Opcodes.JSR)
+                        || (opcode >= Opcodes.GETSTATIC && opcode <= Opcodes.INVOKESTATIC)
+                        || opcode == Opcodes.NEW || opcode == Opcodes.ANEWARRAY
+                        || opcode == Opcodes.CHECKCAST || opcode == Opcodes.INSTANCEOF
+                        || opcode == Opcodes.IFNULL || opcode == Opcodes.IFNONNULL) {
+                    return 3;
+                }
+                return 1;
+        }
+    }
+
+    /**
+     * Read a signed int in a class file.
+     *
+     * @param b The class file.
+     * @param index The position of the int.
+     * @return the int.
+     */
+    private static int readInt(byte[] b, int index) {
+        return ((b[index] & 0xFF) << 24) | ((b[index + 1] & 0xFF) << 16) | ((b[index + 2] & 0xFF) << 8) | (b[index + 3] & 0xFF);
+    }
+}
@@ -0,0 +1,495 @@
+package com.jicka.core;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.objectweb.asm.ClassReader;
+
+/**
+ *
+ * @author Mickael Boudignot
+ */
+class JickaReport {
+
+    /**
+     * Names of the columns of the report, in the order of the values of a
+     * row.
+     */
+    private static final String[] COLUMNS = {
+        "jar", "class", "cached", "scanNanos", "transformNanos",
+        "getfield", "putfield", "getstatic", "putstatic", "monitors", "locks",
+        "sizeBefore", "sizeAfter", "dataSize", "overBudget"
+    };
+
+    /**
+     * Names of the columns of the methods pushed over a budget.
+     */
+    private static final String[] METHODCOLUMNS = {
+        "jar", "class", "method", "sizeBefore", "sizeAfter", "budget"
+    };
+
+    /**
+     * Names of the columns of the fields confined to a thread.
+     */
+    private static final String[] CONFINEDCOLUMNS = {"class", "field"};
+
+    /**
+     * The budgets of the size of the code of a method in HotSpot: the size
+     * of the methods always inlined (MaxInlineSize), of the hot methods
+     * inlined (FreqInlineSize on x86_64), of the methods compiled by the JIT
+     * (HugeMethodLimit) and the limit of the class file format.
+     */
+    private static final String[] BUDGETS = {"MaxInlineSize", "FreqInlineSize", "HugeMethodLimit", "MaxCodeLength"};
+    private static final int[] BUDGETSIZES = {35, 325, 8000, 65535};
+
+    /**
+     * The position of the first budget which isn't a budget of inlining.
+     * The static block init is never inlined, only the next budgets apply to
+     * it.
+     */
+    private static final int COMPILEBUDGET = 2;
+
+    /**
+     * Class to store a method whose code was pushed over a budget by the
+     * transformation.
+     */
+    static class Method {
+
+        /**
+         * The name and the descriptor of the method.
+         */
+        final String name;
+
+        /**
+         * The size of the code before the transformation.
+         */
+        final int sizeBefore;
+
+        /**
+         * The size of the code after the transformation.
+         */
+        final int sizeAfter;
+
+        /**
+         * The name of the budget exceeded.
+         */
+        final String budget;
+
+        /**
+         * Construct a new method over a budget.
+         *
+         * @param name The name and the descriptor of the method.
+         * @param sizeBefore The size of the code before the transformation.
+         * @param sizeAfter The size of the code after the transformation.
+         * @param budget The name of the budget exceeded.
+         */
+        Method(String name, int sizeBefore, int sizeAfter, String budget) {
+            this.name = name;
+            this.sizeBefore = sizeBefore;
+            this.sizeAfter = sizeAfter;
+            this.budget = budget;
+        }
+    }
+
+    /**
+     * Class to store the statistics of the transformation of a class. The
+     * counters are updated by one thread at a time: the scan, the rewrite and
+     * the creation of the class Data of a class are separate tasks.
+     */
+    static class Row {
+
+        /**
+         * The name of the input which contains the class.
+         */
+        final String jar;
+
+        /**
+         * The internal name of the class.
+         */
+        final String className;
+
+        /**
+         * 1 if the transformed class is read from the cache, its counters and
+         * its methods over a budget are then the ones stored with it (the
+         * number of such classes for a total).
+         */
+        int cached = 0;
+
+        /**
+         * The time spent to find the fields of the class, in nanoseconds.
+         */
+        long scanNanos = 0;
+
+        /**
+         * The time spent to rewrite the class, in nanoseconds.
+         */
+        long transformNanos = 0;
+
+        /**
+         * The number of field instructions redirected to the LocalHeap.
+         */
+        int getField = 0;
+        int putField = 0;
+        int getStatic = 0;
+        int putStatic = 0;
+
+        /**
+         * The number of MONITORENTER and MONITOREXIT instrumented.
+         */
+        int monitors = 0;
+
+        /**
+         * The number of calls of Lock.lock and Lock.unlock instrumented.
+         */
+        int locks = 0;
+
+        /**
+         * The size of the original class.
+         */
+        long sizeBefore;
+
+        /**
+         * The size of the transformed class.
+         */
+        long sizeAfter;
+
+        /**
+         * The size of the class Data, or 0 without class Data.
+         */
+        long dataSize = 0;
+
+        /**
+         * The methods pushed over a budget by the transformation.
+         */
+        final List<Method> methods = new ArrayList<>();
+
+        /**
+         * The number of methods pushed over a budget (for a total).
+         */
+        int overBudget = 0;
+
+        /**
+         * Construct a new row for a class not yet transformed.
+         *
+         * @param jar The name of the input which contains the class.
+         * @param className The internal name of the class.
+         * @param sizeBefore The size of the original class.
+         */
+        Row(String jar, String className, int sizeBefore) {
+            this.jar = jar;
+            this.className = className;
+            this.sizeBefore = sizeBefore;
+            this.sizeAfter = sizeBefore;
+        }
+
+        /**
+         * Add the values of another row to this row.
+         *
+         * @param row The row to add.
+         */
+        void add(Row row) {
+            cached += row.cached;
+            scanNanos += row.scanNanos;
+            transformNanos += row.transformNanos;
+            getField += row.getField;
+            putField += row.putField;
+            getStatic += row.getStatic;
+            putStatic += row.putStatic;
+            monitors += row.monitors;
+            locks += row.locks;
+            sizeBefore += row.sizeBefore;
+            sizeAfter += row.sizeAfter;
+            dataSize += row.dataSize;
+            overBudget += row.overBudget;
+        }
+
+        /**
+         * Return the numbers of instructions instrumented, to store them in
+         * the cache with the transformed class.
+         *
+         * @return the counters in the order of the columns.
+         */
+        int[] counters() {
+            return new int[]{getField, putField, getStatic, putStatic, monitors, locks};
+        }
+
+        /**
+         * Restore the statistics of a class read from the cache, stored by
+         * counters and budget when the class was transformed.
+         *
+         * @param counters The numbers of instructions instrumented.
+         * @param methods The methods pushed over a budget.
+         */
+        void restore(int[] counters, List<Method> methods) {
+            getField = counters[0];
+            putField = counters[1];
+            getStatic = counters[2];
+            putStatic = counters[3];
+            monitors = counters[4];
+            locks = counters[5];
+            this.methods.addAll(methods);
+            overBudget = this.methods.size();
+        }
+
+        /**
+         * Find the methods whose code was within a budget before the
+         * transformation and isn't anymore. The largest budget exceeded is
+         * kept for each method. The budgets of inlining are ignored for the
+         * static block init.
+         *
+         * @param before The original class.
+         * @param after The transformed class.
+         */
+        void budget(byte[] before, byte[] after) {
+            if (before == after) {
+                return;
+            }
+            Map<String, Integer> sizes = JickaPrescan.getCodeSizes(new ClassReader(before));
+            for (Map.Entry<String, Integer> entry : JickaPrescan.getCodeSizes(new ClassReader(after)).entrySet()) {
+                Integer size = sizes.get(entry.getKey());
+                if (size == null) {
+                    continue;
+                }
+                int first = entry.getKey().startsWith("<clinit>") ? COMPILEBUDGET : 0;
+                for (int i = BUDGETS.length - 1; i >= first; i--) {
+                    if (size <= BUDGETSIZES[i] && entry.getValue() > BUDGETSIZES[i]) {
+                        methods.add(new Method(entry.getKey(), size, entry.getValue(), BUDGETS[i]));
+                        break;
+                    }
+                }
+            }
+            overBudget = methods.size();
+        }
+
+        /**
+         * Return the values of the row in the order of the columns.
+         *
+         * @return the values, strings for the names and numbers otherwise.
+         */
+        Object[] values() {
+            return new Object[]{jar, className, cached, scanNanos, transformNanos,
+                getField, putField, getStatic, putStatic, monitors, locks,
+                sizeBefore, sizeAfter, dataSize, overBudget};
+        }
+    }
+
+    /**
+     * The rows of the classes in the order they are added.
+     */
+    private final List<Row> rows = new ArrayList<>();
+
+    /**
+     * The fields confined to a thread by class (see JickaEscape).
+     */
+    private Map<String, Set<String>> confined = Collections.emptyMap();
+
+    /**
+     * Add a class to the report.
+     *
+     * @param jar The name of the input which contains the class.
+     * @param className The internal name of the class.
+     * @param sizeBefore The size of the original class.
+     * @return the row of the class, to update during the transformation.
+     */
+    synchronized Row add(String jar, String className, int sizeBefore) {
+        Row row = new Row(jar, className, sizeBefore);
+        rows.add(row);
+        return row;
+    }
+
+    /**
+     * Add the fields confined to a thread to the report.
+     *
+     * @param confined The names of the fields by class.
+     */
+    synchronized void confine(Map<String, Set<String>> confined) {
+        this.confined = confined;
+    }
+
+    /**
+     * Compute the totals of each input and of all the inputs. The total of
+     * all the inputs is the last row, with the name "*".
+     *
+     * @return a row by input followed by the total.
+     */
+    synchronized List<Row> totals() {
+        Map<String, Row> totals = new LinkedHashMap<>();
+        Row all = new Row("*", "*", 0);
+        for (Row row : rows) {
+            totals.computeIfAbsent(row.jar, jar -> new Row(jar, "*", 0)).add(row);
+            all.add(row);
+        }
+        List<Row> result = new ArrayList<>(totals.values());
+        result.add(all);
+        return result;
+    }
+
+    /**
+     * Return the methods pushed over a budget, as rows of values in the
+     * order of the columns.
+     *
+     * @return a list of rows.
+     */
+    private synchronized List<Object[]> methods() {
+        List<Object[]> methods = new ArrayList<>();
+        for (Row row : rows) {
+            for (Method method : row.methods) {
+                methods.add(new Object[]{row.jar, row.className, method.name, method.sizeBefore, method.sizeAfter, method.budget});
+            }
+        }
+        return methods;
+    }
+
+    /**
+     * Return the fields confined to a thread, as rows of values in the order
+     * of the columns.
+     *
+     * @return a list of rows.
+     */
+    private synchronized List<Object[]> confined() {
+        List<Object[]> fields = new ArrayList<>();
+        for (Map.Entry<String, Set<String>> entry : confined.entrySet()) {
+            for (String field : entry.getValue()) {
+                fields.add(new Object[]{entry.getKey(), field});
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Write the report in a file. A file whose name ends with ".json" receives
+     * an object with the arrays "classes", "totals", "methods" and
+     * "confined". Any other file receives a CSV with a header, one line by
+     * class and then the totals (whose class is "*"), and the methods and the
+     * confined fields are written in other CSV whose names end with
+     * "-methods" and "-confined" before the extension.
+     *
+     * @param path The file of the report.
+     * @throws IOException An exception can be genered by E/O.
+     */
+    synchronized void write(Path path) throws IOException {
+        String name = path.getFileName().toString();
+        List<Object[]> classes = new ArrayList<>();
+        for (Row row : rows) {
+            classes.add(row.values());
+        }
+        List<Object[]> totals = new ArrayList<>();
+        for (Row row : totals()) {
+            totals.add(row.values());
+        }
+
+        if (name.endsWith(".json")) {
+            try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8))) {
+                out.println("{");
+                out.println("  \"classes\": [");
+                writeJson(out, COLUMNS, classes);
+                out.println("  ],");
+                out.println("  \"totals\": [");
+                writeJson(out, COLUMNS, totals);
+                out.println("  ],");
+                out.println("  \"methods\": [");
+                writeJson(out, METHODCOLUMNS, methods());
+                out.println("  ],");
+                out.println("  \"confined\": [");
+                writeJson(out, CONFINEDCOLUMNS, confined());
+                out.println("  ]");
+                out.println("}");
+            }
+            return;
+        }
+
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8))) {
+            out.println(String.join(",", COLUMNS));
+            writeCsv(out, classes);
+            writeCsv(out, totals);
+        }
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(sibling(path, "-methods"), StandardCharsets.UTF_8))) {
+            out.println(String.join(",", METHODCOLUMNS));
+            writeCsv(out, methods());
+        }
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(sibling(path, "-confined"), StandardCharsets.UTF_8))) {
+            out.println(String.join(",", CONFINEDCOLUMNS));
+            writeCsv(out, confined());
+        }
+    }
+
+    /**
+     * Return the file of a part of a CSV report.
+     *
+     * @param path The file of the report.
+     * @param suffix The suffix added before the extension.
+     * @return the file next to the report.
+     */
+    private static Path sibling(Path path, String suffix) {
+        String name = path.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return path.resolveSibling(dot > 0 ? name.substring(0, dot) + suffix + name.substring(dot) : name + suffix);
+    }
+
+    /**
+     * Write rows as JSON objects separated by commas.
+     *
+     * @param out The file of the report.
+     * @param columns The names of the values.
+     * @param list The rows.
+     */
+    private static void writeJson(PrintWriter out, String[] columns, List<Object[]> list) {
+        for (int i = 0; i < list.size(); i++) {
+            Object[] values = list.get(i);
+            StringBuilder line = new StringBuilder("    {");
+            for (int j = 0; j < columns.length; j++) {
+                line.append(j == 0 ? "" : ", ").append('"').append(columns[j]).append("\": ");
+                line.append(values[j] instanceof String ? quote((String) values[j]) : values[j]);
+            }
+            out.println(line.append(i == list.size() - 1 ? "}" : "},"));
+        }
+    }
+
+    /**
+     * Write rows as CSV lines.
+     *
+     * @param out The file of the report.
+     * @param list The rows.
+     */
+    private static void writeCsv(PrintWriter out, List<Object[]> list) {
+        for (Object[] values : list) {
+            StringBuilder line = new StringBuilder();
+            for (int j = 0; j < values.length; j++) {
+                String value = String.valueOf(values[j]);
+                if (value.contains(",") || value.contains("\"")) {
+                    value = "\"" + value.replace("\"", "\"\"") + "\"";
+                }
+                line.append(j == 0 ? "" : ",").append(value);
+            }
+            out.println(line);
+        }
+    }
+
+    /**
+     * Quote a string for JSON.
+     *
+     * @param value The string.
+     * @return the string between quotes with its special characters escaped.
+     */
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
@@ -0,0 +1,230 @@
+package com.jicka.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ *
+ * @author Mickael Boudignot
+ */
+class JickaScanner extends ClassVisitor {
+
+    /**
+     * The session which decides the fields to inspect.
+     */
+    private final JickaSession session;
+
+    /**
+     * The name of the current class visited.
+     */
+    private final String className;
+
+    /**
+     * List of static fields found in the class, in the order they will be
+     * visited by the JickaVisitor. Each element contains the owner, the name
+     * and the description of the field.
+     */
+    private final List<String[]> statics = new ArrayList<>();
+
+    /**
+     * The fields of the class Data of the class.
+     */
+    private final List<ASMClass.Information> fields = new ArrayList<>();
+
+    /**
+     * The static fields declared by the class, whose method handles are
+     * created by its static block init.
+     */
+    private final List<ASMMethodHandle.Information> handles = new ArrayList<>();
+
+    /**
+     * The descriptors of the annotations of the class.
+     */
+    private final List<String> annotations = new ArrayList<>();
+
+    /**
+     * The fields of the class which never change once initialized.
+     */
+    private final Set<String> immutables;
+
+    /**
+     * Create a new JickaScanner.
+     *
+     * @param api The version of ASM.
+     * @param session The session which decides the fields to inspect.
+     * @param className The name of the class.
+     */
+    JickaScanner(int api, JickaSession session, String className) {
+        this(api, session, className, Collections.emptySet());
+    }
+
+    /**
+     * Create a new JickaScanner for a class whose immutable fields are known.
+     * The private immutable fields have no copy in the class Data, because
+     * only the class uses them.
+     *
+     * @param api The version of ASM.
+     * @param session The session which decides the fields to inspect.
+     * @param className The name of the class.
+     * @param immutables The fields which never change once initialized.
+     */
+    JickaScanner(int api, JickaSession session, String className, Set<String> immutables) {
+        super(api);
+        this.session = session;
+        this.className = className;
+        this.immutables = immutables;
+    }
+
+    /**
+     * Create a JickaScanner from fields already found.
+     *
+     * @param api The version of ASM.
+     * @param session The session which decides the fields to inspect.
+     * @param className The name of the class.
+     * @param statics The static fields of the class.
+     * @param fields The fields of the class Data.
+     * @param handles The static fields declared by the class.
+     */
+    JickaScanner(int api, JickaSession session, String className, List<String[]> statics, List<ASMClass.Information> fields, List<ASMMethodHandle.Information> handles) {
+        this(api, session, className);
+        this.statics.addAll(statics);
+        this.fields.addAll(fields);
+        this.handles.addAll(handles);
+    }
+
+    /**
+     * Visits an annotation of the class, which can opt its fields out of the
+     * semantic.
+     *
+     * @param desc The class descriptor of the annotation class.
+     * @param visible true if the annotation is visible at runtime.
+     * @return null because the values of the annotation are not needed.
+     */
+    @Override
+    public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+        annotations.add(desc);
+        return null;
+    }
+
+    /**
+     * Visits a field of the class to keep static fields. An instance field is
+     * added to the class Data at the end of its annotations, unless it's
+     * opted out of the semantic or private and immutable.
+     *
+     * @param access The field's access flags (see Opcodes).
+     * @param name The name of the field.
+     * @param desc The field's descriptor (see Type).
+     * @param signature The field's signature.
+     * @param value The field's initial value.
+     * @return a visitor of the annotations of an instance field, or null.
+     */
+    @Override
+    public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+        boolean isVolatile = (access & Opcodes.ACC_VOLATILE) != 0;
+        if ((access & Opcodes.ACC_STATIC) != 0) {
+            statics.add(new String[]{className, name, desc});
+            handles.add(new ASMMethodHandle.Information(className, name, desc, (access & Opcodes.ACC_FINAL) != 0, isVolatile));
+            return null;
+        }
+
+        if ((access & Opcodes.ACC_PRIVATE) != 0 && immutables.contains(name)) {
+            return null;
+        }
+        List<String> fieldAnnotations = new ArrayList<>(annotations);
+        return new FieldVisitor(api) {
+            @Override
+            public AnnotationVisitor visitAnnotation(String annotation, boolean visible) {
+                fieldAnnotations.add(annotation);
+                return null;
+            }
+
+            @Override
+            public void visitEnd() {
+                if (!session.isOptedOut(className, name, fieldAnnotations)) {
+                    fields.add(new ASMClass.Information(name, desc, null));
+                    fields.add(new ASMClass.Information(name + JickaThreadLocal.HEAPEXTENSION, desc, null));
+                    fields.add(new ASMClass.Information(name + JickaThreadLocal.BLOCKEXTENSION, "I", null));
+                    fields.add(new ASMClass.Information(name + JickaThreadLocal.VOLATILEEXTENSION, "Z", isVolatile));
+                }
+            }
+        };
+    }
+
+    /**
+     * Visits a method of the class to keep static fields used by instructions.
+     *
+     * @param access The method's access flags (see Opcodes).
+     * @param name The name of the method.
+     * @param desc The method's descriptor (see Type).
+     * @param signature The method's signature.
+     * @param exceptions The internal names of the method's exception classes.
+     * @return An object to visit the byte code of the method.
+     */
+    @Override
+    public MethodVisitor visitMethod(int access, final String name, String desc, String signature, String[] exceptions) {
+        return new MethodVisitor(api) {
+            @Override
+            public void visitFieldInsn(int opcode, String owner, String fieldName, String fieldDesc) {
+                if ((opcode == Opcodes.GETSTATIC || opcode == Opcodes.PUTSTATIC)
+                        && session.inspect(owner, name)) {
+                    statics.add(new String[]{owner, fieldName, fieldDesc});
+                }
+            }
+        };
+    }
+
+    /**
+     * Return the static fields found in the class.
+     *
+     * @return a list of owner, name and description of each field.
+     */
+    List<String[]> getStatics() {
+        return statics;
+    }
+
+    /**
+     * Return the name of the class.
+     *
+     * @return the internal name of the class.
+     */
+    String getClassName() {
+        return className;
+    }
+
+    /**
+     * Return the fields of the class Data, in the order they are created by
+     * the JickaVisitor.
+     *
+     * @return a list of fields.
+     */
+    List<ASMClass.Information> getFields() {
+        return fields;
+    }
+
+    /**
+     * Return the static fields declared by the class.
+     *
+     * @return a list of static fields with their modifiers.
+     */
+    List<ASMMethodHandle.Information> getHandles() {
+        return handles;
+    }
+
+    /**
+     * Give an offset to each static field found in the class. This method
+     * must be called in the same order for each run to obtain the same
+     * offsets.
+     */
+    void register() {
+        for (String[] field : statics) {
+            session.getStatics().putOffset(field[0], field[1], field[2]);
+        }
+    }
+}
@@ -0,0 +1,1424 @@
+package com.jicka.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ *
+ * @author Mickael Boudignot
+ */
+public class JickaSession implements Closeable {
+
+    /**
+     * The excluded packages with "/" as separator.
+     */
+    private String[] excludes = new String[0];
+
+    /**
+     * The rules which decide the classes and the fields which use the
+     * semantic, with the excluded packages.
+     */
+    private final JickaPolicy policy = new JickaPolicy();
+
+    /**
+     * Name of the jar which contains the runtime of the semantic when several
+     * jars are transformed together.
+     */
+    private static final String RUNTIMEJAR = "jicka-runtime.jar";
+
+    /**
+     * Classes of the runtime of the semantic, added to each transformed jar.
+     * They are read from the artifact jicka-runtime, which contains them with
+     * the template of Configuration and doesn't depend on ASM.
+     */
+    static final String[] RUNTIME = {
+        "com/jicka/core/LocalHeap",
+        "com/jicka/core/LocalHeap$1",
+        "com/jicka/core/JickaThreadLocal",
+        "com/jicka/core/WeakIdentityMap",
+        "com/jicka/core/WeakIdentityMap$Key"
+    };
+
+    /**
+     * The directory of the cache of transformed classes (null without cache).
+     */
+    private Path cache = null;
+
+    /**
+     * Flag to recompute the stack map frames of the transformed classes
+     * instead of keeping the frames of the original classes.
+     */
+    private boolean computeFrames = false;
+
+    /**
+     * Flag to replace the field instructions by calls of helpers shared by the
+     * instructions of a same field, instead of rewriting them in place.
+     */
+    private boolean outline = false;
+
+    /**
+     * Flag to find the fields of the classes confined to a thread during the
+     * transformations of jars (see JickaEscape).
+     */
+    private boolean escapeAnalysis = false;
+
+    /**
+     * The instance fields confined to a thread by class, found by the last
+     * transformation of jars. They keep their original accesses.
+     */
+    private volatile Map<String, Set<String>> confined = Collections.emptyMap();
+
+    /**
+     * The file of the report of the transformations of jars (null without
+     * report).
+     */
+    private Path report = null;
+
+    /**
+     * The archive of classes created after each transformation of jars (null
+     * without archive).
+     */
+    private JickaArchive archive = null;
+
+    /**
+     * The instance fields of the classes transformed by this session.
+     */
+    private final ASMClass classes = new ASMClass();
+
+    /**
+     * The offsets of the static fields used by the classes transformed by
+     * this session.
+     */
+    private final ASMFieldStatic statics = new ASMFieldStatic();
+
+    /**
+     * The static fields declared by the classes transformed by this session.
+     */
+    private final ASMMethodHandle handles = new ASMMethodHandle();
+
+    /**
+     * Flag set when the session is closed.
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * Create a new session without excluded package, cache of transformed
+     * classes or recomputed frames. Each session has its own fields, so
+     * several sessions can transform classes concurrently in the same JVM.
+     */
+    public JickaSession() {
+    }
+
+    /**
+     * Class to store the state of a class during the transformation of a jar.
+     */
+    private static class Transformation {
+
+        /**
+         * The name of the entry in the jar.
+         */
+        final String entry;
+
+        /**
+         * The original class.
+         */
+        final byte[] classBuffer;
+
+        /**
+         * The key of the class in the cache.
+         */
+        String key;
+
+        /**
+         * The result found in the cache, or null.
+         */
+        JickaCache.Entry cached;
+
+        /**
+         * The static fields of the class.
+         */
+        JickaScanner scanner;
+
+        /**
+         * The statistics of the class, or null without report.
+         */
+        JickaReport.Row row;
+
+        /**
+         * Create the transformation of a class.
+         *
+         * @param entry The name of the entry in the jar.
+         * @param classBuffer The original class.
+         */
+        Transformation(String entry, byte[] classBuffer) {
+            this.entry = entry;
+            this.classBuffer = classBuffer;
+        }
+    }
+
+    /**
+     * Method which transform a class to the same class with the semantic.
+     *
+     * @param classBuffer The original byte array which will be converted by
+     * jicka to apply semantic.
+     * @return a byte array converted.
+     */
+    public byte[] transform(byte[] classBuffer) {
+        return transform(classBuffer, JickaSession.class.getClassLoader());
+    }
+
+    /**
+     * Method which transform a class to the same class with the semantic. The
+     * class loader is used to find the super classes of the classes used by
+     * the class (it's the class loader which loads the class with an agent)
+     * when the frames are recomputed, and the annotations of the fields.
+     *
+     * @param classBuffer The original byte array which will be converted by
+     * jicka to apply semantic.
+     * @param classLoader The class loader which can load the classes used by
+     * the class.
+     * @return a byte array converted.
+     */
+    public byte[] transform(byte[] classBuffer, ClassLoader classLoader) {
+        checkOpen();
+        return transform(classBuffer, JickaHierarchy.get(classLoader), false);
+    }
+
+    /**
+     * Method which transform a class to the same class with the semantic. The
+     * modifications only replace instructions by instructions with the same
+     * effect on the stack and add sequences without branch, so the frames of
+     * the original class are kept and only the maximum stack size is
+     * recomputed. Without frames, the frames are recomputed with the
+     * hierarchy.
+     *
+     * @param classBuffer The original byte array which will be converted by
+     * jicka to apply semantic.
+     * @param hierarchy The hierarchy of the classes used by the class, which
+     * finds the annotations of their fields and their super classes.
+     * @param indexed true if the class is in the installed index (see
+     * JickaIndex), false to add its fields while it's visited.
+     * @return a byte array converted.
+     */
+    byte[] transform(byte[] classBuffer, JickaHierarchy hierarchy, boolean indexed) {
+        return transform(classBuffer, hierarchy, indexed, null);
+    }
+
+    /**
+     * Method which transform a class and count the instructions modified.
+     *
+     * @param classBuffer The original byte array which will be converted by
+     * jicka to apply semantic.
+     * @param hierarchy The hierarchy of the classes used by the class.
+     * @param indexed true if the class is in the installed index.
+     * @param row The statistics of the class, or null.
+     * @return a byte array converted.
+     */
+    private byte[] transform(byte[] classBuffer, JickaHierarchy hierarchy, boolean indexed, JickaReport.Row row) {
+
+        /* Load the class from byteBuffer */
+        byte[] classBufferReturn = classBuffer;
+        ClassReader cr = new ClassReader(classBufferReturn);
+        String className = cr.getClassName();
+
+        /* Check if we have to apply the semantic */
+        if (isTransformable(className)) {
+
+            /* A class which wouldn't be modified only needs its class Data */
+            if (!JickaPrescan.isModified(cr)) {
+                if (!indexed) {
+                    classes.addClass(className);
+                }
+                return classBufferReturn;
+            }
+
+            /* Call ASM to inpect and modify the code */
+            ClassWriter cw = new JickaClassWriter(cr, flags(), hierarchy);
+            ClassVisitor cv = new JickaVisitor(ASM5, cw, this, className, false, indexed, row, hierarchy);
+            cr.accept(cv, 0);
+            try {
+                classBufferReturn = cw.toByteArray();
+            } catch (RuntimeException ex) {
+                if (!outline && "Method code too large!".equals(ex.getMessage())) {
+                    throw new IllegalStateException(String.format("A method of '%s' exceeds 64 KB once transformed, the field instructions must be outlined.", className), ex);
+                }
+                throw ex;
+            }
+            if (row != null) {
+                row.budget(classBuffer, classBufferReturn);
+            }
+            return classBufferReturn;
+        }
+
+        /* Return the default byteBuffer */
+        return classBufferReturn;
+    }
+
+    /**
+     * Method which transform a class already loaded by the JVM, when an agent
+     * is attached to a running JVM. The schema of the class can't change: the
+     * instances keep their class Data outside of the object and the
+     * getters/setters of the static fields are created now, because the
+     * static block init of the classes was already called.
+     *
+     * @param classBuffer The original byte array of the loaded class.
+     * @param cls The loaded class.
+     * @return a byte array converted.
+     * @throws Throwable A static field can't be found.
+     */
+    public byte[] retransform(byte[] classBuffer, Class<?> cls) throws Throwable {
+        checkOpen();
+        ClassReader cr = new ClassReader(classBuffer);
+        String className = cr.getClassName();
+        if (!isTransformable(className)) {
+            return classBuffer;
+        }
+
+        /* Create the getters/setters before the new code is used */
+        JickaScanner scanner = scan(classBuffer);
+        scanner.register();
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        for (String[] field : scanner.getStatics()) {
+            Class<?> owner = Class.forName(field[0].replace('/', '.'), false, cls.getClassLoader());
+            int offset = statics.getOffset(field[0], field[1], field[2]);
+            LocalHeap.attachMethodHandles(lookup, offset, findField(owner, field[1]), field[2]);
+        }
+
+        JickaHierarchy hierarchy = JickaHierarchy.get(cls.getClassLoader());
+        ClassWriter cw = new JickaClassWriter(cr, flags(), hierarchy);
+        cr.accept(new JickaVisitor(ASM5, cw, this, className, true, false, null, hierarchy), 0);
+        return cw.toByteArray();
+    }
+
+    /**
+     * Return the options of the ClassWriter of a transformation.
+     *
+     * @return the options of the ClassWriter.
+     */
+    private int flags() {
+        return computeFrames ? ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS : ClassWriter.COMPUTE_MAXS;
+    }
+
+    /**
+     * Method called when a class transformed by retransform is restored to
+     * its original code. The values of its instances not yet flushed by the
+     * threads are lost.
+     *
+     * @param cls The restored class.
+     */
+    public void revert(Class<?> cls) {
+        LocalHeap.removeData(cls);
+    }
+
+    /**
+     * Method to find a field like the JVM resolves a field instruction: in the
+     * class, then in its interfaces and then in its super class.
+     *
+     * @param cls The owner of the field instruction.
+     * @param name The name of the field.
+     * @return the field.
+     * @throws NoSuchFieldException The field doesn't exist.
+     */
+    private static Field findField(Class<?> cls, String name) throws NoSuchFieldException {
+        for (Field field : cls.getDeclaredFields()) {
+            if (field.getName().equals(name)) {
+                return field;
+            }
+        }
+        for (Class<?> itf : cls.getInterfaces()) {
+            try {
+                return findField(itf, name);
+            } catch (NoSuchFieldException ex) {
+
+                /* Try the next interface */
+            }
+        }
+        if (cls.getSuperclass() == null) {
+            throw new NoSuchFieldException(name);
+        }
+        return findField(cls.getSuperclass(), name);
+    }
+
+    /**
+     * Method which list all static fields used by a class without modifying
+     * it. The static fields are returned in the same order that the
+     * transformation visits them.
+     *
+     * @param classBuffer The original byte array of the class.
+     * @return a scanner which contains the static fields of the class.
+     */
+    JickaScanner scan(byte[] classBuffer) {
+        ClassReader cr = new ClassReader(classBuffer);
+        String className = cr.getClassName();
+        if (!isTransformable(className) || !JickaPrescan.isModified(cr)) {
+            return new JickaScanner(ASM5, this, className);
+        }
+        JickaScanner scanner = new JickaScanner(ASM5, this, className, JickaPrescan.getImmutableFields(cr));
+        cr.accept(scanner, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        return scanner;
+    }
+
+    /**
+     * Method which build the index of the classes of jars and install it in
+     * the session, like the first phase of the transformation of jars. The
+     * classes are then transformed one by one in any order (see
+     * JickaClassLoader), with the same offsets as in a transformed jar.
+     *
+     * @param jars The jars or directories, in the order of the class path.
+     * @throws IOException An exception can be genered by E/O.
+     */
+    synchronized void index(List<JarFile> jars) throws IOException {
+        checkOpen();
+        clear();
+        JickaIndex index = new JickaIndex();
+        for (JarFile jar : jars) {
+            for (String entry : jar.getEntries()) {
+                if (JarFile.isClassFile(entry) && isTransformable(entry.substring(0, entry.length() - ".class".length()))) {
+                    index.add(scan(jar.read(entry)));
+                }
+            }
+        }
+        index.install(this);
+    }
+
+    /**
+     * Method which transform a jar to another jar with the semantic.
+     *
+     * @param input The input jar file.
+     * @param output The output path which represent where the ouput jar will be
+     * written.
+     * @param classLoader A class loader is needed to load dynamically classes
+     * like LocalHeap and JickaThreadLocal.
+     * @throws Exception The transformation can return Exception during E/O of
+     * files.
+     */
+    public void transform(String input, String output, ClassLoader classLoader) throws Exception {
+        transform(input, output, classLoader, 1);
+    }
+
+    /**
+     * Method which transform a jar to another jar with the semantic. Classes
+     * are transformed concurrently by a pool of threads. Offsets of static
+     * fields are given in the order of the jar before the transformation, so
+     * the result doesn't depend on the number of threads.
+     *
+     * @param input The input jar file.
+     * @param output The output path which represent where the ouput jar will be
+     * written.
+     * @param classLoader A class loader is needed to load dynamically classes
+     * like LocalHeap and JickaThreadLocal.
+     * @param threads The number of threads used to transform classes.
+     * @throws Exception The transformation can return Exception during E/O of
+     * files.
+     */
+    public void transform(String input, String output, ClassLoader classLoader, int threads) throws Exception {
+        transform(input, output, classLoader, threads, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Method which transform a jar to another jar with the semantic. The
+     * transformation has two phases. First, the classes are analysed to
+     * build a global index of their instance and static fields; offsets of
+     * static fields are given in the order of the jar, and the index is
+     * written next to the output jar (with the extension ".jickaidx").
+     * Then, the classes are rewritten from the index only, concurrently by a
+     * pool of threads, so the result doesn't depend on the number of threads
+     * nor on the order of the rewrites. Classes are compressed by the same
+     * threads and written in the order of the input jar. Entries are read from the
+     * input jar and written into the output jar in memory, without temporary
+     * files. Entries which are not modified are copied without decompression.
+     * If a cache is defined, unchanged classes are read from the cache, and
+     * the static fields keep the offsets of the previous transformation into
+     * the same output, so a new static field doesn't change the offsets of
+     * the unchanged classes. The offsets then depend on the previous
+     * transformations, not only on the order of the jar.
+     *
+     * @param input The input jar file.
+     * @param output The output path which represent where the ouput jar will be
+     * written.
+     * @param classLoader A class loader is needed to load dynamically classes
+     * like LocalHeap and JickaThreadLocal.
+     * @param threads The number of threads used to transform classes.
+     * @param level The compression level of the output jar from 1 to 9, 0 to
+     * store entries without compression or -1 for the default level.
+     * @throws Exception The transformation can return Exception during E/O of
+     * files.
+     */
+    public void transform(String input, String output, ClassLoader classLoader, int threads, int level) throws Exception {
+        transform(Collections.singletonList(input), Collections.singletonList(output), output, classLoader, threads, level);
+    }
+
+    /**
+     * Method which transform several jars or directories of classes (the
+     * class path of a program) in one run. The classes of all inputs share
+     * the same index, so the offsets of static fields and the sizes of the
+     * Configuration are consistent across the inputs. Each input is written
+     * into a jar with the same name in the output directory, with the class
+     * Data of its classes, and the runtime of the semantic is written once in
+     * the jar "jicka-runtime.jar" of the output directory (with the index).
+     *
+     * @param inputs The input jars or directories, in the order of the class
+     * path.
+     * @param directory The output directory.
+     * @param classLoader A class loader is needed to load dynamically classes
+     * like LocalHeap and JickaThreadLocal.
+     * @param threads The number of threads used to transform classes.
+     * @param level The compression level of the output jars from 1 to 9, 0 to
+     * store entries without compression or -1 for the default level.
+     * @throws Exception The transformation can return Exception during E/O of
+     * files.
+     */
+    public void transform(List<String> inputs, String directory, ClassLoader classLoader, int threads, int level) throws Exception {
+        List<String> outputs = new ArrayList<>();
+        for (String input : inputs) {
+            String name = Paths.get(input).getFileName().toString();
+            String output = Paths.get(directory, name.endsWith(".jar") ? name : name + ".jar").toString();
+            if (outputs.contains(output) || name.equals(RUNTIMEJAR)) {
+                throw new IOException(String.format("Two inputs would be written into '%s'.", output));
+            }
+            outputs.add(output);
+        }
+        Files.createDirectories(Paths.get(directory));
+        transform(inputs, outputs, Paths.get(directory, RUNTIMEJAR).toString(), classLoader, threads, level);
+    }
+
+    /**
+     * Method which transform jars with a shared index (see the transformation
+     * of a jar). The index describes all the classes of the jars, so the
+     * fields registered by the previous transformations of the session are
+     * forgotten first. A session transforms one set of jars at a time, a
+     * session by set is needed to transform them concurrently.
+     *
+     * @param inputs The input jars or directories.
+     * @param outputs The output jar of each input.
+     * @param runtime The jar which receives the runtime of the semantic, one
+     * of the outputs or another jar.
+     * @param classLoader A class loader is needed to load dynamically classes
+     * like LocalHeap and JickaThreadLocal.
+     * @param threads The number of threads used to transform classes.
+     * @param level The compression level of the output jars.
+     * @throws Exception The transformation can return Exception during E/O of
+     * files.
+     */
+    private synchronized void transform(List<String> inputs, List<String> outputs, String runtime, ClassLoader classLoader, int threads, int level) throws Exception {
+        checkOpen();
+        clear();
+        JickaReport jickaReport = report == null ? null : new JickaReport();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<JarFile> inputJars = new ArrayList<>();
+        List<JarFile> outputJars = new ArrayList<>();
+        boolean written = false;
+        try {
+            for (int i = 0; i < inputs.size(); i++) {
+                inputJars.add(new JarFile(inputs.get(i)));
+                outputJars.add(new JarFile(outputs.get(i), level));
+            }
+            JarFile runtimeJar = outputs.contains(runtime) ? outputJars.get(outputs.indexOf(runtime)) : new JarFile(runtime, level);
+            if (!outputs.contains(runtime)) {
+                outputJars.add(runtimeJar);
+            }
+
+            /* Load classes, excluded classes are never decompressed */
+            List<List<String>> entries = new ArrayList<>();
+            List<List<Transformation>> classes = new ArrayList<>();
+            for (int i = 0; i < inputs.size(); i++) {
+                JarFile inputJar = inputJars.get(i);
+                String jar = Paths.get(inputs.get(i)).getFileName().toString();
+                List<String> names = inputJar.getEntries();
+                List<Transformation> transformations = new ArrayList<>();
+                for (String entry : names) {
+                    if (JarFile.isClassFile(entry) && isTransformable(entry.substring(0, entry.length() - ".class".length()))) {
+                        Transformation transformation = new Transformation(entry, inputJar.read(entry));
+                        if (jickaReport != null) {
+                            String className = entry.substring(0, entry.length() - ".class".length());
+                            transformation.row = jickaReport.add(jar, className, transformation.classBuffer.length);
+                        }
+                        transformations.add(transformation);
+                    }
+                }
+                entries.add(names);
+                classes.add(transformations);
+            }
+
+            /* Find the fields confined to a thread, the excluded classes are a part of the program too */
+            JickaHierarchy hierarchy = new JickaHierarchy(inputJars, classLoader);
+            if (escapeAnalysis) {
+                List<byte[]> classBuffers = new ArrayList<>();
+                for (int i = 0; i < inputs.size(); i++) {
+                    for (Transformation transformation : classes.get(i)) {
+                        classBuffers.add(transformation.classBuffer);
+                    }
+                    for (String entry : entries.get(i)) {
+                        if (JarFile.isClassFile(entry) && !isTransformable(entry.substring(0, entry.length() - ".class".length()))) {
+                            classBuffers.add(inputJars.get(i).read(entry));
+                        }
+                    }
+                }
+                confined = new JickaEscape(hierarchy).analyze(classBuffers, executor);
+                if (jickaReport != null) {
+                    jickaReport.confine(confined);
+                }
+            }
+            JickaCache jickaCache = cache == null ? null : new JickaCache(cache, this);
+
+            /* Find static fields of each class, from the cache if possible */
+            List<Future<JickaScanner>> scanners = new ArrayList<>();
+            for (List<Transformation> transformations : classes) {
+                for (Transformation transformation : transformations) {
+                    scanners.add(executor.submit(() -> {
+                        long start = System.nanoTime();
+                        if (jickaCache != null) {
+                            transformation.key = jickaCache.key(transformation.classBuffer, getDependencies(transformation.classBuffer, hierarchy));
+                            transformation.cached = jickaCache.load(transformation.key);
+                        }
+                        if (transformation.cached != null) {
+                            String className = new ClassReader(transformation.classBuffer).getClassName();
+                            transformation.scanner = new JickaScanner(ASM5, this, className, transformation.cached.statics,
+                                    transformation.cached.fields, transformation.cached.handles);
+                        } else {
+                            transformation.scanner = scan(transformation.classBuffer);
+                        }
+                        if (transformation.row != null) {
+                            transformation.row.scanNanos = System.nanoTime() - start;
+                        }
+                        return transformation.scanner;
+                    }));
+                }
+            }
+
+            /* Build the index in the order of the inputs, the rewrites only read it */
+            JickaIndex index = new JickaIndex();
+            JickaIndex previous = jickaCache == null ? null : jickaCache.loadIndex(outputs);
+            if (previous != null) {
+                index.keepOffsets(previous);
+            }
+            for (JickaScanner scanner : await(scanners)) {
+                index.add(scanner);
+            }
+            index.install(this);
+            index.write(Paths.get(runtime + JickaIndex.EXTENSION));
+
+            /* For each class, apply modifications and compress the modified classes */
+            List<List<Future<JarFile.Entry>>> transformed = new ArrayList<>();
+            for (int i = 0; i < inputs.size(); i++) {
+                JarFile outputJar = outputJars.get(i);
+                List<Future<JarFile.Entry>> futures = new ArrayList<>();
+                for (Transformation transformation : classes.get(i)) {
+                    futures.add(executor.submit(() -> {
+                        byte[] classBuffer = transform(transformation, jickaCache, hierarchy);
+                        return classBuffer == transformation.classBuffer ? null : outputJar.compress(transformation.entry, classBuffer);
+                    }));
+                }
+                transformed.add(futures);
+            }
+
+            /* Create the runtime of the semantic */
+            Map<String, Future<JarFile.Entry>> runtimeEntries = new LinkedHashMap<>();
+            byte[] configuration = createConfiguration();
+            runtimeEntries.put("com/jicka/core/Configuration.class", executor.submit(() -> runtimeJar.compress("com/jicka/core/Configuration.class", configuration)));
+            for (String clz : RUNTIME) {
+                byte[] buffer = readClass("/" + clz + ".class", JickaSession.class);
+                runtimeEntries.put(clz + ".class", executor.submit(() -> runtimeJar.compress(clz + ".class", buffer)));
+            }
+
+            for (int i = 0; i < inputs.size(); i++) {
+                JarFile inputJar = inputJars.get(i);
+                JarFile outputJar = outputJars.get(i);
+                Map<String, JarFile.Entry> modified = new HashMap<>();
+                for (JarFile.Entry entry : await(transformed.get(i))) {
+                    if (entry != null) {
+                        modified.put(entry.getName(), entry);
+                    }
+                }
+
+                /* Create the class Data of the classes of this input */
+                Map<String, Future<JarFile.Entry>> generated = new LinkedHashMap<>();
+                for (Transformation transformation : classes.get(i)) {
+                    String object = transformation.scanner.getClassName() + JickaThreadLocal.CLASSEXTENSION;
+                    if (this.classes.getFields(object) != null) {
+                        generated.put(object + ".class", executor.submit(() -> {
+                            byte[] dataBuffer = createDataClass(object);
+                            if (transformation.row != null) {
+                                transformation.row.dataSize = dataBuffer.length;
+                            }
+                            return outputJar.compress(object + ".class", dataBuffer);
+                        }));
+                    }
+                }
+                if (outputJar == runtimeJar) {
+                    generated.putAll(runtimeEntries);
+                }
+
+                /* Pack modification into output jar, untouched entries are copied without compression */
+                for (String entry : entries.get(i)) {
+                    if (generated.containsKey(entry) || runtimeEntries.containsKey(entry)) {
+                        continue;
+                    }
+                    if (modified.containsKey(entry)) {
+                        outputJar.write(modified.get(entry));
+                    } else {
+                        inputJar.copy(entry, outputJar);
+                    }
+                }
+                for (JarFile.Entry entry : await(new ArrayList<>(generated.values()))) {
+                    outputJar.write(entry);
+                }
+            }
+            if (!outputs.contains(runtime)) {
+                for (JarFile.Entry entry : await(new ArrayList<>(runtimeEntries.values()))) {
+                    runtimeJar.write(entry);
+                }
+            }
+            if (jickaReport != null) {
+                jickaReport.write(report);
+            }
+            if (jickaCache != null) {
+                jickaCache.storeIndex(outputs, index);
+            }
+            written = true;
+        } finally {
+            executor.shutdown();
+
+            /* The outputs replace their files once the inputs are closed, an output can be an input */
+            close(inputJars);
+            if (written) {
+                close(outputJars);
+            } else {
+                for (JarFile outputJar : outputJars) {
+                    outputJar.discard();
+                }
+            }
+        }
+
+        /* Archive the classes loaded by the transformed program */
+        if (archive != null) {
+            List<String> classPath = new ArrayList<>(outputs);
+            if (!outputs.contains(runtime)) {
+                classPath.add(runtime);
+            }
+            archive.create(classPath, runtime + JickaArchive.EXTENSION);
+        }
+    }
+
+    /**
+     * Method which transform in place a directory of classes, like the output
+     * directory of a build. The state of the directory is written in a file
+     * with the digest of each class file written, so the next run only
+     * transforms the class files which have changed since (the class files
+     * compiled again): the other class files are already transformed and are
+     * kept. A kept class is transformed again from its original class file
+     * when a class whose fields it uses changes its annotations or the
+     * immutability of its fields; the original class files of the classes
+     * written are kept next to the state for this (with the extension
+     * ".originals"). The offsets of the static fields are kept between two runs and
+     * the new static fields receive the next offsets, so the kept classes
+     * stay valid. The classes Data of the transformed classes and the runtime
+     * of the semantic are written in the directory, the runtime only if its
+     * content changes. A class Data whose class is removed is deleted.
+     *
+     * @param directory The directory of classes.
+     * @param state The file of the state of the directory.
+     * @param classLoader The class loader of the dependencies of the classes.
+     * @param threads The number of threads used to transform classes.
+     * @return the number of classes transformed by this run.
+     * @throws Exception The transformation can return Exception during E/O of
+     * files, or the directory was transformed with other options.
+     */
+    public synchronized int instrument(String directory, String state, ClassLoader classLoader, int threads) throws Exception {
+        checkOpen();
+        clear();
+        Path root = Paths.get(directory);
+        Path statePath = Paths.get(state);
+        byte[] salt = JickaCache.salt(this);
+        JickaState previous = JickaState.read(statePath);
+        if (previous != null && !previous.hasSalt(salt)) {
+            throw new IOException(String.format("The classes of '%s' were transformed by another version or with other options, they must be compiled again.", directory));
+        }
+        JickaState next = new JickaState(salt);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Path originals = Paths.get(state + JickaState.ORIGINALS);
+        Files.createDirectories(originals);
+        JarFile input = new JarFile(directory);
+        JarFile kept = new JarFile(originals.toString());
+        try {
+
+            /* Find the class files compiled since the last run */
+            List<String> names = new ArrayList<>();
+            Map<String, Transformation> changed = new LinkedHashMap<>();
+            Map<String, byte[]> unchanged = new LinkedHashMap<>();
+            for (String entry : input.getEntries()) {
+                if (!JarFile.isClassFile(entry) || (previous != null && previous.isGenerated(entry))
+                        || !isTransformable(entry.substring(0, entry.length() - ".class".length()))) {
+                    continue;
+                }
+                byte[] classBuffer = input.read(entry);
+                names.add(entry);
+                if (previous == null || !previous.isOutput(entry, classBuffer)) {
+                    if (JickaPrescan.isTransformed(new ClassReader(classBuffer))) {
+                        throw new IOException(String.format("The class '%s' of '%s' is already transformed but isn't in the state '%s', the classes must be compiled again.", entry, directory, state));
+                    }
+                    changed.put(entry, new Transformation(entry, classBuffer));
+                    Files.deleteIfExists(originals.resolve(entry));
+                } else {
+                    unchanged.put(entry, classBuffer);
+                }
+            }
+
+            /* Transform again the kept classes whose dependencies changed, the hierarchy reads the original class files */
+            JickaHierarchy hierarchy = new JickaHierarchy(Arrays.asList(kept, input), classLoader);
+            for (Map.Entry<String, byte[]> entry : unchanged.entrySet()) {
+                Map<String, String> dependencies = new TreeMap<>();
+                for (String className : previous.getDependencies(entry.getKey())) {
+                    dependencies.put(className, hierarchy.describe(className));
+                }
+                if (previous.hasDependencies(entry.getKey(), dependencies)) {
+                    next.putOutput(entry.getKey(), entry.getValue());
+                    next.putDependencies(entry.getKey(), dependencies);
+                } else {
+                    byte[] original = kept.contains(entry.getKey()) ? kept.read(entry.getKey()) : entry.getValue();
+                    changed.put(entry.getKey(), new Transformation(entry.getKey(), original));
+                }
+            }
+
+            /* Scan the changed classes, the other classes are read from the previous index */
+            List<Future<JickaScanner>> scanners = new ArrayList<>();
+            for (Transformation transformation : changed.values()) {
+                scanners.add(executor.submit(() -> transformation.scanner = scan(transformation.classBuffer)));
+            }
+            await(scanners);
+            JickaIndex index = new JickaIndex();
+            if (previous != null) {
+                index.keepOffsets(previous.getIndex());
+            }
+            for (String entry : names) {
+                if (changed.containsKey(entry)) {
+                    index.add(changed.get(entry).scanner);
+                } else {
+                    index.add(entry.substring(0, entry.length() - ".class".length()), previous.getIndex());
+                }
+            }
+            index.install(this);
+            next.setIndex(index);
+
+            /* Transform the changed classes and create their classes Data */
+            List<Future<byte[]>> futures = new ArrayList<>();
+            for (Transformation transformation : changed.values()) {
+                futures.add(executor.submit(() -> transform(transformation.classBuffer, hierarchy, true)));
+            }
+            List<byte[]> transformed = await(futures);
+            int i = 0;
+            for (Transformation transformation : changed.values()) {
+                byte[] classBuffer = transformed.get(i++);
+                writeIfChanged(root.resolve(transformation.entry), classBuffer);
+                if (classBuffer != transformation.classBuffer) {
+                    writeIfChanged(originals.resolve(transformation.entry), transformation.classBuffer);
+                } else {
+                    Files.deleteIfExists(originals.resolve(transformation.entry));
+                }
+                next.putOutput(transformation.entry, classBuffer);
+                next.putDependencies(transformation.entry, getDependencies(transformation.classBuffer, hierarchy));
+
+                String object = transformation.scanner.getClassName() + JickaThreadLocal.CLASSEXTENSION;
+                if (classes.getFields(object) != null) {
+                    Files.write(root.resolve(object + ".class"), createDataClass(object));
+                    next.putGenerated(object + ".class");
+                }
+            }
+
+            /* Keep the classes Data of the kept classes, delete the others */
+            if (previous != null) {
+                for (String entry : previous.getGenerated()) {
+                    String className = entry.substring(0, entry.length() - (JickaThreadLocal.CLASSEXTENSION + ".class").length());
+                    if (next.isGenerated(entry)) {
+                        continue;
+                    }
+                    if (next.hasOutput(className + ".class") && !changed.containsKey(className + ".class")) {
+                        next.putGenerated(entry);
+                    } else {
+                        Files.deleteIfExists(root.resolve(entry));
+                    }
+                }
+
+                /* Delete the original class files of the removed classes */
+                for (String entry : previous.getOutputs()) {
+                    if (!next.hasOutput(entry)) {
+                        Files.deleteIfExists(originals.resolve(entry));
+                    }
+                }
+            }
+
+            /* Write the runtime of the semantic if it changes */
+            writeIfChanged(root.resolve("com/jicka/core/Configuration.class"), createConfiguration());
+            for (String clz : RUNTIME) {
+                writeIfChanged(root.resolve(clz + ".class"), readClass("/" + clz + ".class", JickaSession.class));
+            }
+            next.write(statePath);
+            return changed.size();
+        } finally {
+            executor.shutdown();
+            input.close();
+            kept.close();
+        }
+    }
+
+    /**
+     * Write a file only if its content changes, so its date doesn't change
+     * for the tools which compare the dates of the files.
+     *
+     * @param path The file.
+     * @param buffer The content of the file.
+     * @throws IOException An exception can be genered by E/O.
+     */
+    private static void writeIfChanged(Path path, byte[] buffer) throws IOException {
+        if (Files.exists(path) && Arrays.equals(Files.readAllBytes(path), buffer)) {
+            return;
+        }
+        Files.createDirectories(path.getParent());
+        Files.write(path, buffer);
+    }
+
+    /**
+     * Close jars. All the jars are closed even if a jar can't be closed.
+     *
+     * @param jars The jars to close.
+     * @throws IOException The first exception thrown by a jar.
+     */
+    private static void close(List<JarFile> jars) throws IOException {
+        IOException exception = null;
+        for (JarFile jar : jars) {
+            try {
+                jar.close();
+            } catch (IOException ex) {
+                if (exception == null) {
+                    exception = ex;
+                }
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    /**
+     * Method which transform a class of a jar whose fields are in the
+     * installed index. If the cache contains the result of the transformation
+     * with the same offsets, the class isn't transformed again and its
+     * statistics are the ones stored with it. The statistics are stored in
+     * the cache even without report, for the next runs with a report.
+     *
+     * @param transformation The class to transform.
+     * @param cache The cache of transformed classes, or null.
+     * @param hierarchy The hierarchy of the classes of the jar.
+     * @return a byte array converted, or the original byte array if the class
+     * isn't modified.
+     * @throws IOException An exception can be genered by E/O of the cache.
+     */
+    private byte[] transform(Transformation transformation, JickaCache cache, JickaHierarchy hierarchy) throws IOException {
+        JickaCache.Entry cached = transformation.cached;
+        JickaReport.Row row = transformation.row;
+        long start = System.nanoTime();
+
+        /* Use the result from the cache */
+        if (cached != null && cached.isValid(statics)) {
+            byte[] classBuffer = cached.classBuffer == null ? transformation.classBuffer : cached.classBuffer;
+            if (row != null) {
+                row.cached = 1;
+                row.restore(cached.counters, cached.methods);
+                row.transformNanos = System.nanoTime() - start;
+                row.sizeAfter = classBuffer.length;
+            }
+            return classBuffer;
+        }
+
+        /* Transform the class and store the result */
+        if (row == null && cache != null) {
+            row = new JickaReport.Row(null, null, transformation.classBuffer.length);
+        }
+        byte[] classBuffer = transform(transformation.classBuffer, hierarchy, true, row);
+        if (row != null) {
+            row.transformNanos = System.nanoTime() - start;
+            row.sizeAfter = classBuffer.length;
+        }
+        if (cache != null) {
+            List<String[]> used = transformation.scanner.getStatics();
+            int[] offsets = new int[used.size()];
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = statics.getOffset(used.get(i)[0], used.get(i)[1], used.get(i)[2]);
+            }
+            cache.store(transformation.key, new JickaCache.Entry(classBuffer == transformation.classBuffer ? null : classBuffer,
+                    used, offsets, transformation.scanner.getFields(), transformation.scanner.getHandles(), row.counters(), row.methods));
+        }
+        return classBuffer;
+    }
+
+    /**
+     * Method which create the class Data of a class. The class Data contains
+     * a copy of each instance field with its metadata.
+     *
+     * @param object The name of the class Data (the name of the class
+     * followed by JickaThreadLocal.CLASSEXTENSION).
+     * @return the byte array of the class Data, or null if the class hasn't
+     * been transformed.
+     */
+    public byte[] createDataClass(String object) {
+        checkOpen();
+        if (classes.getFields(object) == null) {
+            return null;
+        }
+        MethodVisitor mv;
+
+        /* Create class, its code has no branch so it needs no frame */
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(52, ACC_PUBLIC + ACC_SUPER, object, null, "java/lang/Object", null);
+
+        classes.getFields(object).stream().forEach((information) -> {
+            cw.visitField(ACC_PUBLIC, information.name, information.desc, information.desc, information.value);
+        });
+
+        /* Create public constructor */
+        {
+            mv = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+
+            /* Init all field */
+            for (ASMClass.Information information : classes.getFields(object)) {
+                if (information.value != null) {
+                    mv.visitVarInsn(ALOAD, 0);
+                    mv.visitLdcInsn(information.value);
+                    mv.visitFieldInsn(PUTFIELD, object, information.name, information.desc);
+                }
+            }
+
+            mv.visitInsn(RETURN);
+            mv.visitMaxs(1, 1);
+            mv.visitEnd();
+        }
+
+        /* Close class */
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * Method which create the Configuration class with the number of static
+     * and instance fields found during the transformation.
+     *
+     * @return the byte array of the Configuration class.
+     */
+    byte[] createConfiguration() {
+        MethodVisitor mv;
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(52, ACC_PUBLIC + ACC_SUPER, "com/jicka/core/Configuration", null, "java/lang/Object", null);
+        cw.visitField(ACC_PUBLIC | ACC_STATIC, "STATICMAXSIZE", "I", "I", statics.getMaxId());
+        cw.visitField(ACC_PUBLIC | ACC_STATIC, "FIELDMAXSIZE", "I", "I", classes.getMaxId());
+        {
+            mv = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+            mv.visitInsn(RETURN);
+            mv.visitMaxs(1, 1);
+            mv.visitEnd();
+        }
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * Wait the end of all tasks and return their results.
+     *
+     * @param futures The tasks submitted to the pool of threads.
+     * @return a list of results in the same order that the tasks.
+     * @throws Exception The first exception thrown by a task.
+     */
+    static <T> List<T> await(List<Future<T>> futures) throws Exception {
+        List<T> results = new ArrayList<>();
+        for (Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof Exception) {
+                    throw (Exception) ex.getCause();
+                }
+                throw ex;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Method to load an class and return it as a class file.
+     *
+     * @param clz The class to load.
+     * @param loader The class loader to load the class.
+     * @return the byte array of the class file.
+     * @throws Exception An exception can be genered by E/O and not found class.
+     */
+    static byte[] readClass(String clz, Class loader) throws Exception {
+        try (InputStream stream = loader.getResourceAsStream(clz)) {
+            return JarFile.readFully(stream, -1);
+        }
+    }
+    
+    /**
+     * Method to add a list of excuded packages.
+     *
+     * @param excludes An array contain the list of excuded packages.
+     */
+    public void defineExclude(String[] excludes) {
+        for(int i =0; i<excludes.length; i++) {
+            excludes[i] = excludes[i].replace(".", "/");
+        }
+        
+        this.excludes = excludes;
+        policy.defineExcludes(excludes);
+    }
+    
+    /**
+     * Return the excluded packages.
+     *
+     * @return an array of packages with "/" as separator.
+     */
+    String[] getExcludes() {
+        return excludes;
+    }
+
+    /**
+     * Method to read a policy which includes or excludes packages, classes
+     * and fields, in addition to the excluded packages. A rule names a
+     * package, a class or a field ("com.example.Counter#hits"), and the
+     * longest rule which matches wins, so a class can be included in an
+     * excluded package. The fields of the classes annotated by an annotation
+     * of the policy (by default, any annotation named ThreadConfined or
+     * Immutable) and the annotated fields keep their original accesses and
+     * aren't in the class Data. See JickaPolicy.read for the format.
+     *
+     * @param path The file of the policy.
+     * @throws IOException The policy can't be read.
+     */
+    public void definePolicy(String path) throws IOException {
+        policy.read(Paths.get(path));
+    }
+
+    /**
+     * Return the policy of the session.
+     *
+     * @return the rules of the classes and of the fields.
+     */
+    JickaPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Method to define the directory of the cache of transformed classes. When
+     * a jar is transformed again, the classes which haven't changed are read
+     * from this cache instead of being transformed. The cache also keeps the
+     * offsets of the static fields of each output, so the unchanged classes
+     * keep their offsets when static fields are added.
+     *
+     * @param path The directory of the cache, or null to disable the cache.
+     */
+    public void defineCache(String path) {
+        this.cache = path == null ? null : Paths.get(path);
+    }
+
+    /**
+     * Method to recompute the stack map frames of the transformed classes.
+     * By default, the frames of the original classes are kept, which is
+     * faster and doesn't need the dependencies of the classes. The frames
+     * must be recomputed if the original classes have invalid frames.
+     *
+     * @param computeFrames true to recompute the frames.
+     */
+    public void defineComputeFrames(boolean computeFrames) {
+        this.computeFrames = computeFrames;
+    }
+
+    /**
+     * Method to outline the semantic of the field instructions. By default,
+     * each field instruction is replaced by the calls of the LocalHeap, which
+     * makes the methods grow and can push them over the limits of inlining
+     * of the JIT (35 bytes for any method and 325 bytes for a hot method) or
+     * the limit of 64 KB of the class file format. With this option, each
+     * field instruction is replaced by a call of a private static helper of
+     * the class, created once by field, so the size of the methods doesn't
+     * change. The classes already loaded and the interfaces are never
+     * outlined.
+     *
+     * @param outline true to outline the field instructions.
+     */
+    public void defineOutline(boolean outline) {
+        this.outline = outline;
+    }
+
+    /**
+     * Method to write a report of each transformation of jars. The report has
+     * a row by class with the time spent to scan and to rewrite the class,
+     * the number of field instructions, monitors and locks instrumented, the
+     * size of the class before and after the transformation, the size of its
+     * class Data and the number of methods pushed over a limit of the JIT,
+     * followed by the totals of each jar and of all the jars and by the list
+     * of these methods.
+     * The report is a JSON file if its name ends with ".json" and a CSV file
+     * otherwise.
+     *
+     * @param path The file of the report, or null to disable the report.
+     */
+    public void defineReport(String path) {
+        this.report = path == null ? null : Paths.get(path);
+    }
+
+    /**
+     * Method to create an AppCDS archive after each transformation of jars.
+     * The transformed program is run once with the given main class and
+     * arguments to record the classes it loads, and the JVM maps them into
+     * an archive written next to the transformed jar (next to
+     * "jicka-runtime.jar" for several jars) with the extension ".jsa". The
+     * program started with "-XX:SharedArchiveFile" and the same class path
+     * loads the classes Data and the runtime of the semantic from the
+     * archive instead of parsing and verifying them.
+     *
+     * @param command The main class and the arguments of the training run,
+     * separated by spaces, or null to disable the archive.
+     */
+    public void defineArchive(String command) {
+        this.archive = command == null ? null : new JickaArchive(command);
+    }
+
+    /**
+     * Method to find the fields confined to a thread when jars are
+     * transformed. A conservative analysis of all the classes of the jars
+     * (see JickaEscape) finds the classes whose objects never escape the
+     * thread which creates them: no other thread can reach their instance
+     * fields, which keep their original accesses and have no field in the
+     * class Data. The jars must be the whole program: the objects that a
+     * framework outside the jars creates and shares are only recognized by
+     * the runtime annotations of their classes. The report lists the
+     * confined fields.
+     * The other transformations ignore this option.
+     *
+     * @param escapeAnalysis true to find the confined fields.
+     */
+    public void defineEscapeAnalysis(boolean escapeAnalysis) {
+        this.escapeAnalysis = escapeAnalysis;
+    }
+
+    /**
+     * Method to know if the frames of the transformed classes are recomputed.
+     *
+     * @return true if the frames are recomputed.
+     */
+    boolean isComputeFrames() {
+        return computeFrames;
+    }
+
+    /**
+     * Method to know if the field instructions are outlined.
+     *
+     * @return true if the field instructions call helpers.
+     */
+    boolean isOutline() {
+        return outline;
+    }
+
+    /**
+     * Return the instance fields confined to a thread by the last
+     * transformation of jars.
+     *
+     * @return the names of the fields by class.
+     */
+    Map<String, Set<String>> getConfined() {
+        return confined;
+    }
+
+    /**
+     * Method to check if we have to inpect or not this class.
+     *
+     * @param owner The name of the class which contain the field.
+     */
+    boolean inspect(String owner) {
+        return !policy.isExcluded(owner);
+    }
+
+    /**
+     * Method to check if we have to inspect or not a field instruction.
+     *
+     * @param owner The name of the class which contain the field.
+     * @param methodName The name of the method which contains the instruction.
+     */
+    boolean inspect(String owner, String methodName) {
+        return !owner.startsWith("java/")
+                && !"<init>".equals(methodName)
+                && !"<clinit>".equals(methodName)
+                && inspect(owner);
+    }
+
+    /**
+     * Method to check if we have to inspect or not a field instruction, with
+     * the rules of the fields and the annotations of the class which declares
+     * the field. The instructions of a final or effectively final field keep
+     * their original access, because the field never changes once
+     * initialized.
+     *
+     * @param owner The name of the class which contain the field.
+     * @param name The name of the field.
+     * @param methodName The name of the method which contains the instruction.
+     * @param hierarchy The hierarchy which finds the class which declares the
+     * field.
+     */
+    boolean inspect(String owner, String name, String methodName, JickaHierarchy hierarchy) {
+        if (!inspect(owner, methodName)) {
+            return false;
+        }
+        String[] field = hierarchy.getField(owner, name);
+        return !isOptedOut(field[0], name, Arrays.asList(field).subList(1, field.length))
+                && !hierarchy.isImmutable(field[0], name);
+    }
+
+    /**
+     * Find the classes whose facts decide how the field instructions of a
+     * class are transformed (see inspect): the classes read to find the class
+     * which declares each field, with their description (see
+     * JickaHierarchy.describe). A transformed class can be reused while these
+     * descriptions don't change.
+     *
+     * @param classBuffer The original class.
+     * @param hierarchy The hierarchy of the classes used by the class.
+     * @return the description of each class, by internal name.
+     */
+    Map<String, String> getDependencies(byte[] classBuffer, JickaHierarchy hierarchy) {
+        Map<String, String> dependencies = new TreeMap<>();
+        new ClassReader(classBuffer).accept(new ClassVisitor(ASM5) {
+            @Override
+            public MethodVisitor visitMethod(int access, String methodName, String desc, String signature, String[] exceptions) {
+                return new MethodVisitor(ASM5) {
+                    @Override
+                    public void visitFieldInsn(int opcode, String owner, String name, String fieldDesc) {
+                        if (inspect(owner, methodName)) {
+                            for (String className : hierarchy.getOwners(owner, name)) {
+                                dependencies.computeIfAbsent(className, hierarchy::describe);
+                            }
+                        }
+                    }
+                };
+            }
+        }, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        return dependencies;
+    }
+
+    /**
+     * Method to know if a field keeps its original accesses, because of a
+     * rule of the policy, of an annotation or because the field is confined
+     * to a thread.
+     *
+     * @param className The name of the class which declares the field.
+     * @param name The name of the field.
+     * @param annotations The descriptors of the annotations of the class and
+     * of the field.
+     * @return true if the field doesn't use the semantic.
+     */
+    boolean isOptedOut(String className, String name, List<String> annotations) {
+        return policy.isExcluded(className, name) || policy.isOptedOut(annotations)
+                || confined.getOrDefault(className, Collections.emptySet()).contains(name);
+    }
+
+    /**
+     * Method to check if we have to apply the semantic on a class.
+     *
+     * @param className The name of the class.
+     */
+    boolean isTransformable(String className) {
+        return inspect(className)
+                && !className.startsWith("java/")
+                && !className.startsWith("javax/")
+                && !className.startsWith("sun/")
+                && !className.startsWith("com/sun/")
+                && !className.startsWith("com/jicka/");
+    }
+
+    /**
+     * Return the instance fields of the classes transformed by this session.
+     *
+     * @return the storage of the instance fields.
+     */
+    ASMClass getClasses() {
+        return classes;
+    }
+
+    /**
+     * Return the offsets of the static fields of this session.
+     *
+     * @return the storage of the offsets.
+     */
+    ASMFieldStatic getStatics() {
+        return statics;
+    }
+
+    /**
+     * Return the static fields declared by the classes transformed by this
+     * session.
+     *
+     * @return the storage of the static fields.
+     */
+    ASMMethodHandle getMethodHandles() {
+        return handles;
+    }
+
+    /**
+     * Remove all the fields registered by this session.
+     */
+    private void clear() {
+        classes.clear();
+        statics.clear();
+        handles.clear();
+        confined = Collections.emptyMap();
+    }
+
+    /**
+     * Check that the session can still transform classes.
+     *
+     * @throws IllegalStateException The session is closed.
+     */
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("The session is closed.");
+        }
+    }
+
+    /**
+     * Close the session. The fields registered by the session are released,
+     * and the session can't transform classes anymore. The jars written by
+     * the session are already closed when their transformation returns.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        clear();
+    }
+}
@@ -0,0 +1,324 @@
+package com.jicka.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ *
+ * @author Mickael Boudignot
+ */
+class JickaState {
+
+    /**
+     * Signature of the file of a state.
+     */
+    private static final int MAGIC = 0x4a4b5354;
+
+    /**
+     * Version of the format of the file.
+     */
+    private static final int FORMAT = 2;
+
+    /**
+     * Extension of the directory next to the state which keeps the original
+     * class files of the classes written by the runs, so they can be
+     * transformed again.
+     */
+    static final String ORIGINALS = ".originals";
+
+    /**
+     * The digest of the transformer and of the options of the session which
+     * wrote the classes (see JickaCache.salt).
+     */
+    private final byte[] salt;
+
+    /**
+     * The SHA-256 digest of each class file written or kept by the run,
+     * indexed by the name of the class file.
+     */
+    private final Map<String, byte[]> outputs = new TreeMap<>();
+
+    /**
+     * The class files of the classes Data created by the run.
+     */
+    private final Set<String> generated = new TreeSet<>();
+
+    /**
+     * The classes whose facts decided the transformation of each class file
+     * (see JickaSession.getDependencies), indexed by the name of the class
+     * file.
+     */
+    private final Map<String, Set<String>> dependencies = new TreeMap<>();
+
+    /**
+     * The SHA-256 digest of the descriptions of the dependencies of each
+     * class file.
+     */
+    private final Map<String, byte[]> descriptions = new TreeMap<>();
+
+    /**
+     * The index of the classes of the directory, whose offsets are kept by
+     * the next run.
+     */
+    private JickaIndex index = new JickaIndex();
+
+    /**
+     * Create an empty state.
+     *
+     * @param salt The digest of the transformer and of the options.
+     */
+    JickaState(byte[] salt) {
+        this.salt = salt;
+    }
+
+    /**
+     * Method to know if a state was written with the same transformer and the
+     * same options.
+     *
+     * @param salt The digest of the transformer and of the options.
+     * @return true if the digests are the same.
+     */
+    boolean hasSalt(byte[] salt) {
+        return Arrays.equals(this.salt, salt);
+    }
+
+    /**
+     * Record a class file written or kept by the run.
+     *
+     * @param name The name of the class file.
+     * @param classBuffer The content of the class file.
+     */
+    void putOutput(String name, byte[] classBuffer) {
+        outputs.put(name, digest(classBuffer));
+    }
+
+    /**
+     * Method to know if a class file is the class file written by the run,
+     * so it's already transformed.
+     *
+     * @param name The name of the class file.
+     * @param classBuffer The content of the class file.
+     * @return true if the content is the content written.
+     */
+    boolean isOutput(String name, byte[] classBuffer) {
+        byte[] digest = outputs.get(name);
+        return digest != null && Arrays.equals(digest, digest(classBuffer));
+    }
+
+    /**
+     * Method to know if the run recorded a class file.
+     *
+     * @param name The name of the class file.
+     * @return true if the class file was written or kept.
+     */
+    boolean hasOutput(String name) {
+        return outputs.containsKey(name);
+    }
+
+    /**
+     * Record the classes whose facts decided the transformation of a class
+     * file.
+     *
+     * @param name The name of the class file.
+     * @param dependencies The description of each class, by internal name.
+     */
+    void putDependencies(String name, Map<String, String> dependencies) {
+        this.dependencies.put(name, new TreeSet<>(dependencies.keySet()));
+        descriptions.put(name, digest(dependencies.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Return the classes whose facts decided the transformation of a class
+     * file.
+     *
+     * @param name The name of the class file.
+     * @return the internal names of the classes, empty if none was recorded.
+     */
+    Set<String> getDependencies(String name) {
+        return dependencies.getOrDefault(name, Collections.emptySet());
+    }
+
+    /**
+     * Method to know if the classes whose facts decided the transformation of
+     * a class file still have the same facts, so the class file is still
+     * valid.
+     *
+     * @param name The name of the class file.
+     * @param dependencies The current description of each class returned by
+     * getDependencies.
+     * @return true if the descriptions are the ones recorded.
+     */
+    boolean hasDependencies(String name, Map<String, String> dependencies) {
+        byte[] digest = descriptions.get(name);
+        return digest != null && Arrays.equals(digest, digest(dependencies.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Record the class file of a class Data created by the run.
+     *
+     * @param name The name of the class file.
+     */
+    void putGenerated(String name) {
+        generated.add(name);
+    }
+
+    /**
+     * Method to know if a class file is a class Data created by the run.
+     *
+     * @param name The name of the class file.
+     * @return true if the class file was created by Jicka.
+     */
+    boolean isGenerated(String name) {
+        return generated.contains(name);
+    }
+
+    /**
+     * Return the class files of the classes Data created by the run.
+     *
+     * @return the names of the class files.
+     */
+    Set<String> getGenerated() {
+        return generated;
+    }
+
+    /**
+     * Return the class files recorded by the run.
+     *
+     * @return the names of the class files.
+     */
+    Set<String> getOutputs() {
+        return outputs.keySet();
+    }
+
+    /**
+     * Define the index of the classes of the directory.
+     *
+     * @param index The index used by the run.
+     */
+    void setIndex(JickaIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * Return the index of the classes of the directory.
+     *
+     * @return the index used by the run.
+     */
+    JickaIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Write the state in a file, and its index next to it (with the extension
+     * of an index).
+     *
+     * @param path The file of the state.
+     * @throws IOException An exception can be genered by E/O.
+     */
+    void write(Path path) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        index.write(Paths.get(path + JickaIndex.EXTENSION));
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeInt(salt.length);
+            out.write(salt);
+            out.writeInt(outputs.size());
+            for (Map.Entry<String, byte[]> entry : outputs.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.write(entry.getValue());
+            }
+            out.writeInt(generated.size());
+            for (String name : generated) {
+                out.writeUTF(name);
+            }
+            out.writeInt(dependencies.size());
+            for (Map.Entry<String, Set<String>> entry : dependencies.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (String className : entry.getValue()) {
+                    out.writeUTF(className);
+                }
+                out.write(descriptions.get(entry.getKey()));
+            }
+        }
+    }
+
+    /**
+     * Read a state written by write.
+     *
+     * @param path The file of the state.
+     * @return the state, or null if the file doesn't exist.
+     * @throws IOException The file can't be read or isn't a state.
+     */
+    static JickaState read(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT) {
+                throw new IOException(String.format("The file '%s' isn't a state of Jicka.", path));
+            }
+            byte[] salt = new byte[in.readInt()];
+            in.readFully(salt);
+            JickaState state = new JickaState(salt);
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                String name = in.readUTF();
+                byte[] digest = new byte[32];
+                in.readFully(digest);
+                state.outputs.put(name, digest);
+            }
+            size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                state.generated.add(in.readUTF());
+            }
+            size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                String name = in.readUTF();
+                Set<String> classNames = new TreeSet<>();
+                int count = in.readInt();
+                for (int j = 0; j < count; j++) {
+                    classNames.add(in.readUTF());
+                }
+                byte[] digest = new byte[32];
+                in.readFully(digest);
+                state.dependencies.put(name, classNames);
+                state.descriptions.put(name, digest);
+            }
+            state.index = JickaIndex.read(Paths.get(path + JickaIndex.EXTENSION));
+            return state;
+        }
+    }
+
+    /**
+     * Compute the SHA-256 digest of a class file or of descriptions.
+     *
+     * @param buffer The content to digest.
+     * @return the digest.
+     */
+    private static byte[] digest(byte[] buffer) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(buffer);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
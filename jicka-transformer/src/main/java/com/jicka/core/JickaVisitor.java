@@ -0,0 +1,624 @@
+package com.jicka.core;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ *
+ * @author Mickael Boudignot
+ */
+class JickaVisitor extends ClassVisitor {
+
+    /**
+     * The session which owns the fields of the class.
+     */
+    private final JickaSession session;
+
+    /**
+     * The name of the current class visited.
+     */
+    private final String className;
+
+    /**
+     * Flag to identify the first field. It becomes false when the field of
+     * the ThreadLocal is injected.
+     */
+    private boolean firstField = true;
+
+    /**
+     * Flag to know if the class already has a static block init.
+     */
+    private boolean staticInit = false;
+
+    /**
+     * Flag to know if the class is already loaded. In this case, the schema
+     * of the class can't change: no field or method is added.
+     */
+    private final boolean retransform;
+
+    /**
+     * Flag to know if the fields of the class are already in an index. In this
+     * case, the visitor only reads the index, so classes can be visited in
+     * any order.
+     */
+    private final boolean indexed;
+
+    /**
+     * The statistics of the transformation of the class, or null.
+     */
+    private final JickaReport.Row row;
+
+    /**
+     * The hierarchy which finds the annotations of the fields used by the
+     * class, or null to only apply the rules of the owners.
+     */
+    private final JickaHierarchy hierarchy;
+
+    /**
+     * The descriptors of the annotations of the class.
+     */
+    private final List<String> annotations = new ArrayList<>();
+
+    /**
+     * Flag to replace each field instruction by a call of a helper of the
+     * class (see JickaSession.defineOutline). It's false for the classes
+     * already loaded and for the interfaces.
+     */
+    private boolean outline;
+
+    /**
+     * The helpers of the class, indexed by the opcode, the owner, the name and
+     * the description of their field, in the order of their creation. The
+     * value is the name and the description of the helper.
+     */
+    private final Map<String, String[]> helpers = new LinkedHashMap<>();
+
+    /**
+     * Create a new JickaVisitor. The hierarchy finds the class which declares
+     * each field used by the class, with its annotations and its immutable
+     * fields.
+     *
+     * @param i The version of ASM.
+     * @param cv The classWriter of ASM to add modification.
+     * @param session The session which owns the fields of the class.
+     * @param className The name of the class.
+     * @param retransform true if the class is already loaded by the JVM.
+     * @param indexed true if the fields of the class are already in an index.
+     * @param row The statistics of the class, or null.
+     * @param hierarchy The hierarchy of the classes used by the class.
+     */
+    JickaVisitor(int i, ClassWriter cv, JickaSession session, String className, boolean retransform, boolean indexed, JickaReport.Row row, JickaHierarchy hierarchy) {
+        super(i, cv);
+        this.session = session;
+        this.className = className;
+        this.retransform = retransform;
+        this.indexed = indexed;
+        this.row = row;
+        this.hierarchy = hierarchy;
+        this.outline = session.isOutline() && !retransform;
+
+        /* Add storage for field */
+        if (!indexed) {
+            session.getClasses().addClass(className);
+        }
+    }
+
+    /**
+     * Inner class to identify all methods and instructions.
+     */
+    class ModifierMethodWriter extends MethodVisitor {
+
+        /**
+         * The name of the current visited method.
+         */
+        private final String methodName;
+
+        /**
+         * The description of the current method which represent the signature
+         * of it.
+         */
+        private final String desc;
+
+        /**
+         * The JickaModifier which will modify instructions to apply semantic.
+         */
+        private final JickaModifier semantic;
+
+        /**
+         * Create a new ModifierMethodWriter.
+         *
+         * @param api The version of ASM.
+         * @param mv The MethodVisitor of ASM to visit all methods.
+         * @param methodName The name of the current visited method.
+         * @param desc The description of the current method which represent the
+         * signature of it.
+         */
+        ModifierMethodWriter(int api, MethodVisitor mv, String methodName, String desc) {
+            super(api, mv);
+            this.methodName = methodName;
+            this.desc = desc;
+            semantic = new JickaModifier(this, session, className);
+        }
+
+        /**
+         * Method call when a method start.
+         */
+        @Override
+        public void visitCode() {
+            super.visitCode();
+
+            if (methodName.equals("main") && desc.equals("([Ljava/lang/String;)V")) {
+
+                /* Detect main */
+                semantic.startThread();
+
+            } else if (methodName.equals("run") && desc.equals("()V")) {
+
+                /* Detect run method */
+                semantic.startThread();
+
+            } else if (methodName.equals("<clinit>")) {
+
+                /* Detetc static block init */
+                semantic.createMethodHandle(!indexed);
+            }
+        }
+
+        /**
+         * Method call when an instruction is called.
+         *
+         * @param opcode The OPCODE of the instruction.
+         */
+        @Override
+        public void visitInsn(int opcode) {
+            visitInsn(opcode, true);
+        }
+
+        /**
+         * A specific method of visitInsn to implement the interception or not.
+         *
+         * @param opcode The OPCODE of the instruction.
+         * @param intercept A flag to know if we implement the semantic.
+         */
+        public void visitInsn(int opcode, boolean intercept) {
+            if (intercept) {
+                if (opcode == Opcodes.MONITORENTER) {
+
+                    /* Synchronized enter */
+                    super.visitInsn(opcode);
+                    semantic.lock();
+                    semantic.refresh();
+                    if (row != null) {
+                        row.monitors++;
+                    }
+                    return;
+
+                } else if (opcode == Opcodes.MONITOREXIT) {
+
+                    /* Synchronized exit */
+                    semantic.flush();
+                    semantic.unlock();
+                    if (row != null) {
+                        row.monitors++;
+                    }
+
+                } else if (opcode == Opcodes.RETURN && methodName.equals("<init>") && !firstField) {
+
+                    /* Class init, only if the ThreadLocal field was injected */
+                    semantic.createInitBlock();
+                }
+            }
+
+            super.visitInsn(opcode);
+        }
+
+        /**
+         * Visits a field instruction. A field instruction is an instruction
+         * that loads or stores the value of a field of an object.
+         *
+         * @param opcode The OPCODE of the instruction.
+         * @param owner The name of the class container.
+         * @param name The name of the field.
+         * @param desc The description which represent the type of the field.
+         */
+        @Override
+        public void visitFieldInsn(int opcode, String owner, String name, String desc) {
+            visitFieldInsn(opcode, owner, name, desc, true);
+        }
+
+        /**
+         * A specific method of visitFieldInsn to implement the interception or
+         * not.
+         *
+         * @param opcode The OPCODE of the instruction.
+         * @param owner The name of the class container.
+         * @param name The name of the field.
+         * @param desc The description which represent the type of the field.
+         * @param intercept A flag to know if we implement the semantic.
+         */
+        public void visitFieldInsn(int opcode, String owner, String name, String desc, boolean intercept) {
+
+            if (intercept) {
+
+                /* Check if we are in field that isn't from JDK */
+                if (session.inspect(owner, name, methodName, hierarchy)) {
+
+                    if (row != null) {
+                        count(opcode);
+                    }
+
+                    /* Call the helper shared by the instructions of the field */
+                    if (outline) {
+                        String[] helper = getHelper(opcode, owner, name, desc);
+                        super.visitMethodInsn(Opcodes.INVOKESTATIC, className, helper[0], helper[1], false);
+                        return;
+                    }
+
+                    /* Copy static instruction into local stack */
+                    if (opcode == Opcodes.PUTSTATIC) {
+                        semantic.setStaticVariable(owner, name, desc);
+                        return;
+                    } else if (opcode == Opcodes.GETSTATIC) {
+                        semantic.getStaticVariable(owner, name, desc);
+                        return;
+                    } else if (opcode == Opcodes.PUTFIELD) {
+                        semantic.setFieldVariable(owner, name, desc);
+                        return;
+                    } else if (opcode == Opcodes.GETFIELD) {
+                        semantic.getFieldVariable(owner, name, desc);
+                        return;
+                    }
+                }
+            }
+
+            super.visitFieldInsn(opcode, owner, name, desc);
+        }
+
+        /**
+         * Count a field instruction redirected to the LocalHeap.
+         *
+         * @param opcode The OPCODE of the instruction.
+         */
+        private void count(int opcode) {
+            switch (opcode) {
+                case Opcodes.GETFIELD:
+                    row.getField++;
+                    break;
+                case Opcodes.PUTFIELD:
+                    row.putField++;
+                    break;
+                case Opcodes.GETSTATIC:
+                    row.getStatic++;
+                    break;
+                case Opcodes.PUTSTATIC:
+                    row.putStatic++;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        /**
+         * Visits a method instruction. A method instruction is an instruction
+         * that invokes a method.
+         *
+         * @param opcode The OPCODE of the instruction.
+         * @param owner The name of the class container.
+         * @param name The name of the field.
+         * @param desc The description which represent the type of the field.
+         * @param itf If the method's owner class is an interface.
+         */
+        @Override
+        public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) {
+            visitMethodInsn(opcode, owner, name, desc, itf, true);
+        }
+
+        /**
+         * A specific method of visitMethodInsn to implement the interception or
+         * not.
+         *
+         * @param opcode The OPCODE of the instruction.
+         * @param owner The name of the class container.
+         * @param name The name of the field.
+         * @param desc The description which represent the type of the field.
+         * @param itf If the method's owner class is an interface.
+         * @param intercept A flag to know if we implement the semantic.
+         */
+        public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf, boolean intercept) {
+
+            if (intercept) {
+
+                /* Detect lock method */
+                if (opcode == Opcodes.INVOKEINTERFACE
+                        && owner.equals("java/util/concurrent/locks/Lock")
+                        && name.equals("lock")
+                        && desc.equals("()V")) {
+                    semantic.lock();
+                    semantic.refresh();
+                    if (row != null) {
+                        row.locks++;
+                    }
+
+                } else if (opcode == Opcodes.INVOKEINTERFACE
+                        && owner.equals("java/util/concurrent/locks/Lock")
+                        && name.equals("unlock")
+                        && desc.equals("()V")) {
+
+                    /* Unlock */
+                    semantic.flush();
+                    semantic.unlock();
+                    if (row != null) {
+                        row.locks++;
+                    }
+
+                }
+            }
+            super.visitMethodInsn(opcode, owner, name, desc, itf);
+        }
+    }
+
+    /**
+     * Visits the header of the class. The interfaces don't receive helpers.
+     *
+     * @param version The class version.
+     * @param access The class's access flags (see Opcodes).
+     * @param name The internal name of the class.
+     * @param signature The signature of this class. May be null.
+     * @param superName The internal of name of the super class.
+     * @param interfaces The internal names of the class's interfaces. May be
+     * null.
+     */
+    @Override
+    public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+        if ((access & Opcodes.ACC_INTERFACE) != 0) {
+            outline = false;
+        }
+        super.visit(version, access, name, signature, superName, interfaces);
+    }
+
+    /**
+     * Visits an annotation of the class, which can opt its fields out of the
+     * semantic.
+     *
+     * @param desc The class descriptor of the annotation class.
+     * @param visible true if the annotation is visible at runtime.
+     * @return a visitor to visit the annotation values.
+     */
+    @Override
+    public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+        annotations.add(desc);
+        return super.visitAnnotation(desc, visible);
+    }
+
+    /**
+     * Return the helper of a field instruction, created at the first
+     * instruction of the field. The helper takes the operands of the
+     * instruction (the instance as an Object) and returns its result.
+     *
+     * @param opcode The OPCODE of the instruction.
+     * @param owner The name of the class container.
+     * @param name The name of the field.
+     * @param desc The description which represent the type of the field.
+     * @return the name and the description of the helper.
+     */
+    private String[] getHelper(int opcode, String owner, String name, String desc) {
+        return helpers.computeIfAbsent(String.format("%d.%s.%s.%s", opcode, owner, name, desc), key -> {
+            String helper;
+            String helperDesc;
+            switch (opcode) {
+                case Opcodes.GETFIELD:
+                    helper = "getfield";
+                    helperDesc = String.format("(Ljava/lang/Object;)%s", desc);
+                    break;
+                case Opcodes.PUTFIELD:
+                    helper = "putfield";
+                    helperDesc = String.format("(Ljava/lang/Object;%s)V", desc);
+                    break;
+                case Opcodes.GETSTATIC:
+                    helper = "getstatic";
+                    helperDesc = String.format("()%s", desc);
+                    break;
+                default:
+                    helper = "putstatic";
+                    helperDesc = String.format("(%s)V", desc);
+                    break;
+            }
+            return new String[]{String.format("jicka$%s$%d", helper, helpers.size()), helperDesc, owner, name, desc};
+        });
+    }
+
+    /**
+     * Create the helpers of the class. Each helper loads its arguments,
+     * applies the semantic of its field instruction and returns the result.
+     */
+    private void createHelpers() {
+        for (Map.Entry<String, String[]> entry : helpers.entrySet()) {
+            int opcode = Integer.parseInt(entry.getKey().substring(0, entry.getKey().indexOf('.')));
+            String[] helper = entry.getValue();
+            ModifierMethodWriter mw = new ModifierMethodWriter(api,
+                    super.visitMethod(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC, helper[0], helper[1], null, null),
+                    helper[0], helper[1]);
+            mw.visitCode();
+
+            /* Load the arguments */
+            int local = 0;
+            for (Type argument : Type.getArgumentTypes(helper[1])) {
+                mw.visitVarInsn(argument.getOpcode(Opcodes.ILOAD), local);
+                local += argument.getSize();
+            }
+
+            /* Apply the semantic */
+            switch (opcode) {
+                case Opcodes.GETFIELD:
+                    mw.semantic.getFieldVariable(helper[2], helper[3], helper[4]);
+                    break;
+                case Opcodes.PUTFIELD:
+                    mw.semantic.setFieldVariable(helper[2], helper[3], helper[4]);
+                    break;
+                case Opcodes.GETSTATIC:
+                    mw.semantic.getStaticVariable(helper[2], helper[3], helper[4]);
+                    break;
+                default:
+                    mw.semantic.setStaticVariable(helper[2], helper[3], helper[4]);
+                    break;
+            }
+            mw.visitInsn(Type.getReturnType(helper[1]).getOpcode(Opcodes.IRETURN), false);
+            mw.visitMaxs(0, 0);
+            mw.visitEnd();
+        }
+    }
+
+    /**
+     * Visits a method of the class. This method must return a new MethodVisitor
+     * instance (or null) each time it is called, i.e., it should not return a
+     * previously returned visitor.
+     *
+     * @param access The field's access flags (see Opcodes). This parameter also
+     * indicates if the field is synthetic and/or deprecated.
+     * @param name The field's access flags (see Opcodes). This parameter also
+     * indicates if the field is synthetic and/or deprecated.
+     * @param desc The field's descriptor (see Type).
+     * @param signature The method's signature. May be null if the method
+     * parameters, return type and exceptions do not use generic types.
+     * @param exceptions The internal names of the method's exception classes
+     * (see getInternalName). May be null.
+     * @return An object to visit the byte code of the method, or null if this
+     * class visitor is not interested in visiting the code of this method.
+     */
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+
+        if (name.equals("<clinit>")) {
+            staticInit = true;
+        }
+
+        /* Call the modifier for each method */
+        MethodVisitor mv = super.visitMethod(access, name, desc, signature, exceptions);
+        ModifierMethodWriter mvw = new ModifierMethodWriter(api, mv, name, desc);
+        return mvw;
+    }
+
+    /**
+     * Visits a field of the class.
+     *
+     * @param access The field's access flags (see Opcodes). This parameter also
+     * indicates if the field is synthetic and/or deprecated.
+     * @param name The field's access flags (see Opcodes). This parameter also
+     * indicates if the field is synthetic and/or deprecated.
+     * @param desc The field's descriptor (see Type).
+     * @param signature The field's signature. May be null if the field's type
+     * does not use generic types.
+     * @param value The field's initial value. This parameter, which may be null
+     * if the field does not have an initial value, must be an Integer, a Float,
+     * a Long, a Double or a String (for int, float, long or String fields
+     * respectively). This parameter is only used for static fields. Its value
+     * is ignored for non static fields, which must be initialized through
+     * bytecode instructions in constructors or methods.
+     * @return A visitor to visit field annotations and attributes, or null if
+     * this class visitor is not interested in visiting these annotations and
+     * attributes.
+     */
+    @Override
+    public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+        String options = Integer.toBinaryString(access);
+
+        /*  Inject the jickaInstanceId Field */
+        if (firstField && !retransform) {
+
+            /* public final ThreadLocal jickaInstanceId = null; */
+            super.visitField(Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL, JickaThreadLocal.FIELDNAME, "Ljava/lang/ThreadLocal;", null, null);
+            firstField = !firstField;
+        }
+
+        /* Check if Final */
+        boolean isFinal = false;
+        if (options.length() >= 5) {
+            if (options.charAt(options.length() - 5) == '1') {
+                isFinal = true;
+            }
+        }
+
+        /* Check if volatile */
+        boolean isVolatile = false;
+        if (options.length() >= 7) {
+            if (options.charAt(options.length() - 7) == '1') {
+                isVolatile = true;
+            }
+        }
+
+        /* Check if Static */
+        boolean isStatic = false;
+        if (options.length() >= 4) {
+            if (options.charAt(options.length() - 4) == '1') {
+                isStatic = true;
+            }
+        }
+
+        if (indexed) {
+
+            /* Offsets and fields are already known */
+        } else if (isStatic) {
+
+            /* Calcul offsets */
+            session.getStatics().putOffset(className, name, desc);
+            if (!retransform) {
+                session.getMethodHandles().addMethodHandle(className, name, desc, isFinal, isVolatile);
+            }
+
+        } else {
+
+            /* Create fields for class data, unless the annotations of the field opt out or only the class reads it */
+            List<String> fieldAnnotations = new ArrayList<>(annotations);
+            boolean volatileField = isVolatile;
+            boolean privateImmutable = (access & Opcodes.ACC_PRIVATE) != 0 && hierarchy.isImmutable(className, name);
+            return new FieldVisitor(api, super.visitField(access, name, desc, signature, value)) {
+                @Override
+                public AnnotationVisitor visitAnnotation(String annotation, boolean visible) {
+                    fieldAnnotations.add(annotation);
+                    return super.visitAnnotation(annotation, visible);
+                }
+
+                @Override
+                public void visitEnd() {
+                    if (!session.isOptedOut(className, name, fieldAnnotations) && !privateImmutable) {
+                        session.getClasses().addField(className, name, desc, null);
+                        session.getClasses().addField(className, name + JickaThreadLocal.HEAPEXTENSION, desc, null);
+                        session.getClasses().addField(className, name + JickaThreadLocal.BLOCKEXTENSION, "I", null);
+                        session.getClasses().addField(className, name + JickaThreadLocal.VOLATILEEXTENSION, "Z", volatileField);
+                    }
+                    super.visitEnd();
+                }
+            };
+        }
+
+        /* Create the field in the current instance */
+        return super.visitField(access, name, desc, signature, value);
+    }
+
+    /**
+     * Visits the end of the class. If the class declares static fields but no
+     * static block init, a static block init is created to register their
+     * method handles. The helpers of the field instructions are then added.
+     */
+    @Override
+    public void visitEnd() {
+        if (!staticInit && !session.getMethodHandles().getMethodHandle(className).isEmpty()) {
+            MethodVisitor mv = visitMethod(Opcodes.ACC_STATIC, "<clinit>", "()V", null, null);
+            mv.visitCode();
+            mv.visitInsn(Opcodes.RETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+        createHelpers();
+        super.visitEnd();
+    }
+}
@@ -0,0 +1,273 @@
+package com.jicka.daemon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * @author Mickael Boudignot
+ */
+public class JickaDaemon {
+
+    /**
+     * Signature of the messages of the protocol.
+     */
+    private static final int MAGIC = 0x4a4b4450;
+
+    /**
+     * Version of the protocol.
+     */
+    private static final int FORMAT = 7;
+
+    /**
+     * Size of the secret of a daemon.
+     */
+    private static final int TOKENSIZE = 32;
+
+    /**
+     * Kind of a message which contains a request.
+     */
+    private static final byte TRANSFORM = 0;
+
+    /**
+     * Kind of a message which stops the daemon.
+     */
+    private static final byte STOP = 1;
+
+    /**
+     * The socket which receives the connections of the clients.
+     */
+    private final ServerSocket server;
+
+    /**
+     * The class loader given to the transformations.
+     */
+    private final ClassLoader classLoader;
+
+    /**
+     * The secret which each message must contain.
+     */
+    private final byte[] token = new byte[TOKENSIZE];
+
+    /**
+     * The file of the secret, readable only by the user of the daemon.
+     */
+    private final Path tokenPath;
+
+    /**
+     * Open the socket of a daemon on the loopback interface, so only the
+     * programs of the same host can connect. A random secret is written in a
+     * file of the home of the user, readable only by the user (see
+     * getTokenPath), and each message must contain it, so only the programs
+     * of the same user can send requests.
+     *
+     * @param port The port of the daemon, or 0 to use a free port.
+     * @param classLoader A class loader is needed to load dynamically classes
+     * like LocalHeap and JickaThreadLocal.
+     * @throws IOException The port can't be used or the secret can't be
+     * written.
+     */
+    public JickaDaemon(int port, ClassLoader classLoader) throws IOException {
+        this.server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        this.classLoader = classLoader;
+        this.tokenPath = getTokenPath(server.getLocalPort());
+        try {
+            new SecureRandom().nextBytes(token);
+            writeToken();
+        } catch (IOException | RuntimeException ex) {
+            server.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Return the file of the secret of the daemon of a port.
+     *
+     * @param port The port of the daemon.
+     * @return the file ".jicka/daemon-port" of the home of the user.
+     */
+    static Path getTokenPath(int port) {
+        return Paths.get(System.getProperty("user.home"), ".jicka", "daemon-" + port);
+    }
+
+    /**
+     * Write the secret in its file. The file is created with its permissions
+     * and moved in place, so the secret is never readable by other users.
+     *
+     * @throws IOException The file can't be written.
+     */
+    private void writeToken() throws IOException {
+        boolean posix = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+        Path directory = tokenPath.getParent();
+        if (posix) {
+            Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        } else {
+            Files.createDirectories(directory);
+        }
+        Path tmp = posix
+                ? Files.createTempFile(directory, tokenPath.getFileName().toString(), ".tmp", PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")))
+                : Files.createTempFile(directory, tokenPath.getFileName().toString(), ".tmp");
+        try {
+            Files.write(tmp, token);
+            Files.move(tmp, tokenPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Return the port of the daemon.
+     *
+     * @return the port, chosen by the system if the daemon was created with
+     * the port 0.
+     */
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Receive requests until a client stops the daemon. Each request is
+     * applied by its own thread with its own session, so the requests of
+     * several builds are transformed concurrently, and the code of the
+     * transformer stays compiled by the JIT between two requests. The daemon
+     * returns when the requests in progress are finished, and deletes the
+     * file of its secret.
+     *
+     * @throws IOException The socket of the daemon fails.
+     * @throws InterruptedException The thread is interrupted while the
+     * requests in progress are finished.
+     */
+    public void serve() throws IOException, InterruptedException {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            while (!server.isClosed()) {
+                Socket socket;
+                try {
+                    socket = server.accept();
+                } catch (SocketException ex) {
+
+                    /* The socket is closed by a request to stop */
+                    break;
+                }
+                executor.execute(() -> handle(socket));
+            }
+        } finally {
+            server.close();
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            Files.deleteIfExists(tokenPath);
+        }
+    }
+
+    /**
+     * Read a message of a client and send the result. The result is a flag
+     * of success followed by an error message. A message without the secret
+     * of the daemon is refused before its request is read.
+     *
+     * @param socket The connection of the client.
+     */
+    private void handle(Socket socket) {
+        try (Socket connection = socket;
+                DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT) {
+                return;
+            }
+            byte[] secret = new byte[TOKENSIZE];
+            in.readFully(secret);
+            String error = "";
+            if (!MessageDigest.isEqual(secret, token)) {
+                error = "The secret of the message isn't the secret of the daemon.";
+            } else if (in.readByte() == STOP) {
+                server.close();
+            } else {
+                JickaRequest request = JickaRequest.read(in);
+                try {
+                    request.apply(classLoader);
+                } catch (Exception | Error ex) {
+                    error = String.format("%s: %s", request, ex);
+                }
+            }
+            out.writeBoolean(error.isEmpty());
+            out.writeUTF(error);
+        } catch (IOException ex) {
+
+            /* The client has left, nobody waits the result */
+        }
+    }
+
+    /**
+     * Send a request to a daemon and wait its result.
+     *
+     * @param port The port of the daemon.
+     * @param request The request.
+     * @throws IOException The daemon can't be reached or the transformation
+     * fails, the message contains the error of the daemon.
+     */
+    public static void send(int port, JickaRequest request) throws IOException {
+        exchange(port, TRANSFORM, request);
+    }
+
+    /**
+     * Stop a daemon. The daemon finishes the requests in progress.
+     *
+     * @param port The port of the daemon.
+     * @throws IOException The daemon can't be reached.
+     */
+    public static void stop(int port) throws IOException {
+        exchange(port, STOP, null);
+    }
+
+    /**
+     * Send a message to a daemon and wait its result. The secret of the
+     * daemon is read from its file.
+     *
+     * @param port The port of the daemon.
+     * @param kind The kind of the message.
+     * @param request The request, or null to stop the daemon.
+     * @throws IOException The daemon can't be reached or returns an error.
+     */
+    private static void exchange(int port, byte kind, JickaRequest request) throws IOException {
+        Path tokenPath = getTokenPath(port);
+        if (!Files.isReadable(tokenPath)) {
+            throw new IOException(String.format("No daemon of Jicka runs on the port %d for this user ('%s' doesn't exist).", port, tokenPath));
+        }
+        byte[] token = Files.readAllBytes(tokenPath);
+        if (token.length != TOKENSIZE) {
+            throw new IOException(String.format("The file '%s' isn't a secret of Jicka.", tokenPath));
+        }
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.write(token);
+            out.writeByte(kind);
+            if (request != null) {
+                request.write(out);
+            }
+            out.flush();
+            if (!in.readBoolean()) {
+                throw new IOException(in.readUTF());
+            }
+        }
+    }
+}
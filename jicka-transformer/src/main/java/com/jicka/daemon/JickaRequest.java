@@ -0,0 +1,242 @@
+package com.jicka.daemon;
+
+import com.jicka.core.JickaSession;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *
+ * @author Mickael Boudignot
+ */
+public class JickaRequest {
+
+    /**
+     * The input jars or directories.
+     */
+    private final List<String> inputs;
+
+    /**
+     * The output jar, or the output directory in batch mode.
+     */
+    private final String output;
+
+    /**
+     * Flag to transform the inputs together into a directory (see the option
+     * -b of Program).
+     */
+    private final boolean batch;
+
+    /**
+     * The excluded packages.
+     */
+    private final List<String> excludes;
+
+    /**
+     * The number of threads used to transform classes.
+     */
+    private final int threads;
+
+    /**
+     * The compression level of the output jars.
+     */
+    private final int level;
+
+    /**
+     * The directory of the cache of transformed classes, or null.
+     */
+    private final String cache;
+
+    /**
+     * Flag to recompute the stack map frames.
+     */
+    private final boolean computeFrames;
+
+    /**
+     * Flag to outline the field instructions.
+     */
+    private final boolean outline;
+
+    /**
+     * Flag to find the fields confined to a thread.
+     */
+    private final boolean escapeAnalysis;
+
+    /**
+     * The file of the policy of the classes and of the fields, or null.
+     */
+    private final String policy;
+
+    /**
+     * The file of the report of the transformation, or null.
+     */
+    private final String report;
+
+    /**
+     * The main class and the arguments of the training run of the archive of
+     * classes, or null.
+     */
+    private final String archive;
+
+    /**
+     * Construct a new request. The paths are made absolute, because the
+     * daemon doesn't run in the directory of the client.
+     *
+     * @param inputs The input jars or directories.
+     * @param output The output jar, or the output directory in batch mode.
+     * @param batch true to transform the inputs together into a directory.
+     * @param excludes The excluded packages.
+     * @param threads The number of threads used to transform classes.
+     * @param level The compression level of the output jars.
+     * @param cache The directory of the cache of transformed classes, or null.
+     * @param computeFrames true to recompute the stack map frames.
+     * @param outline true to outline the field instructions.
+     * @param escapeAnalysis true to find the fields confined to a thread.
+     * @param policy The file of the policy, or null.
+     * @param report The file of the report of the transformation, or null.
+     * @param archive The main class and the arguments of the training run of
+     * the archive of classes, or null.
+     */
+    public JickaRequest(List<String> inputs, String output, boolean batch, List<String> excludes, int threads, int level, String cache, boolean computeFrames, boolean outline, boolean escapeAnalysis, String policy, String report, String archive) {
+        this.inputs = new ArrayList<>();
+        for (String input : inputs) {
+            this.inputs.add(absolute(input));
+        }
+        this.output = absolute(output);
+        this.batch = batch;
+        this.excludes = new ArrayList<>(excludes);
+        this.threads = threads;
+        this.level = level;
+        this.cache = cache == null ? null : absolute(cache);
+        this.computeFrames = computeFrames;
+        this.outline = outline;
+        this.escapeAnalysis = escapeAnalysis;
+        this.policy = policy == null ? null : absolute(policy);
+        this.report = report == null ? null : absolute(report);
+        this.archive = archive;
+    }
+
+    /**
+     * Apply the request with a new session, closed at the end of the
+     * transformation.
+     *
+     * @param classLoader A class loader is needed to load dynamically classes
+     * like LocalHeap and JickaThreadLocal.
+     * @throws Exception The transformation can return Exception during E/O of
+     * files.
+     */
+    public void apply(ClassLoader classLoader) throws Exception {
+        try (JickaSession session = new JickaSession()) {
+            session.defineCache(cache);
+            session.defineComputeFrames(computeFrames);
+            session.defineOutline(outline);
+            session.defineEscapeAnalysis(escapeAnalysis);
+            if (policy != null) {
+                session.definePolicy(policy);
+            }
+            session.defineReport(report);
+            session.defineArchive(archive);
+            session.defineExclude(excludes.toArray(new String[excludes.size()]));
+            if (batch) {
+                session.transform(inputs, output, classLoader, threads, level);
+            } else {
+                session.transform(inputs.get(0), output, classLoader, threads, level);
+            }
+        }
+    }
+
+    /**
+     * Write the request on the connection to the daemon.
+     *
+     * @param out The stream of the connection.
+     * @throws IOException An exception can be genered by E/O.
+     */
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(inputs.size());
+        for (String input : inputs) {
+            out.writeUTF(input);
+        }
+        out.writeUTF(output);
+        out.writeBoolean(batch);
+        out.writeInt(excludes.size());
+        for (String exclude : excludes) {
+            out.writeUTF(exclude);
+        }
+        out.writeInt(threads);
+        out.writeInt(level);
+        out.writeBoolean(cache != null);
+        if (cache != null) {
+            out.writeUTF(cache);
+        }
+        out.writeBoolean(computeFrames);
+        out.writeBoolean(outline);
+        out.writeBoolean(escapeAnalysis);
+        out.writeBoolean(policy != null);
+        if (policy != null) {
+            out.writeUTF(policy);
+        }
+        out.writeBoolean(report != null);
+        if (report != null) {
+            out.writeUTF(report);
+        }
+        out.writeBoolean(archive != null);
+        if (archive != null) {
+            out.writeUTF(archive);
+        }
+    }
+
+    /**
+     * Read a request written by write.
+     *
+     * @param in The stream of the connection.
+     * @return the request.
+     * @throws IOException An exception can be genered by E/O.
+     */
+    static JickaRequest read(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        List<String> inputs = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            inputs.add(in.readUTF());
+        }
+        String output = in.readUTF();
+        boolean batch = in.readBoolean();
+        size = in.readInt();
+        List<String> excludes = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            excludes.add(in.readUTF());
+        }
+        int threads = in.readInt();
+        int level = in.readInt();
+        String cache = in.readBoolean() ? in.readUTF() : null;
+        boolean computeFrames = in.readBoolean();
+        boolean outline = in.readBoolean();
+        boolean escapeAnalysis = in.readBoolean();
+        String policy = in.readBoolean() ? in.readUTF() : null;
+        String report = in.readBoolean() ? in.readUTF() : null;
+        String archive = in.readBoolean() ? in.readUTF() : null;
+        return new JickaRequest(inputs, output, batch, excludes, threads, level, cache, computeFrames, outline, escapeAnalysis, policy, report, archive);
+    }
+
+    /**
+     * Return a description of the request for the messages of the daemon.
+     *
+     * @return the inputs and the output of the request.
+     */
+    @Override
+    public String toString() {
+        return String.format("%s -> %s", String.join(", ", inputs), output);
+    }
+
+    /**
+     * Return the absolute form of a path.
+     *
+     * @param path The path given by the user.
+     * @return the absolute path.
+     */
+    private static String absolute(String path) {
+        return Paths.get(path).toAbsolutePath().toString();
+    }
+}
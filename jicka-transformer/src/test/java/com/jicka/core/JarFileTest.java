@@ -0,0 +1,207 @@
+package com.jicka.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author Mickael Boudignot
+ */
+public class JarFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Content which compresses well.
+     */
+    private static final byte[] TEXT = String.join("\n", Collections.nCopies(200, "Hello Jicka")).getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Content which doesn't compress.
+     */
+    private static final byte[] NOISE = new byte[10000];
+
+    static {
+        new Random(42).nextBytes(NOISE);
+    }
+
+    /**
+     * Create a jar with java.util.zip: a deflated entry written with a data
+     * descriptor, a stored entry and an empty directory.
+     */
+    private File createJar() throws IOException {
+        File file = folder.newFile("input.jar");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+            out.putNextEntry(new ZipEntry("a/Text.txt"));
+            out.write(TEXT);
+            out.closeEntry();
+
+            ZipEntry stored = new ZipEntry("a/Noise.bin");
+            CRC32 crc = new CRC32();
+            crc.update(NOISE);
+            stored.setMethod(ZipEntry.STORED);
+            stored.setSize(NOISE.length);
+            stored.setCrc(crc.getValue());
+            out.putNextEntry(stored);
+            out.write(NOISE);
+            out.closeEntry();
+
+            out.putNextEntry(new ZipEntry("b/"));
+            out.closeEntry();
+        }
+        return file;
+    }
+
+    @Test
+    public void readsEntriesWrittenByZipOutputStream() throws IOException {
+        try (JarFile jar = new JarFile(createJar().getPath())) {
+            assertEquals(Arrays.asList("a/Text.txt", "a/Noise.bin", "b/"), jar.getEntries());
+            assertTrue(jar.contains("a/Text.txt"));
+            assertFalse(jar.contains("a/Missing.txt"));
+            assertArrayEquals(TEXT, jar.read("a/Text.txt"));
+            assertArrayEquals(NOISE, jar.read("a/Noise.bin"));
+            assertEquals(0, jar.read("b/").length);
+        }
+    }
+
+    @Test
+    public void copiesEntriesWithDataDescriptors() throws IOException {
+        File input = createJar();
+        File output = new File(folder.getRoot(), "output.jar");
+        try (JarFile source = new JarFile(input.getPath()); JarFile target = new JarFile(output.getPath())) {
+            for (String name : source.getEntries()) {
+                source.copy(name, target);
+            }
+        }
+
+        try (ZipFile zip = new ZipFile(output)) {
+            assertEquals(3, zip.size());
+            assertEquals(ZipEntry.DEFLATED, zip.getEntry("a/Text.txt").getMethod());
+            assertEquals(ZipEntry.STORED, zip.getEntry("a/Noise.bin").getMethod());
+            assertArrayEquals(TEXT, JarFile.readFully(zip.getInputStream(zip.getEntry("a/Text.txt")), -1));
+            assertArrayEquals(NOISE, JarFile.readFully(zip.getInputStream(zip.getEntry("a/Noise.bin")), -1));
+            assertTrue(zip.getEntry("b/").isDirectory());
+        }
+        try (JarFile jar = new JarFile(output.getPath())) {
+            assertArrayEquals(TEXT, jar.read("a/Text.txt"));
+            assertArrayEquals(NOISE, jar.read("a/Noise.bin"));
+        }
+    }
+
+    @Test
+    public void writesDeflatedEntries() throws IOException {
+        File output = new File(folder.getRoot(), "deflated.jar");
+        try (JarFile jar = new JarFile(output.getPath())) {
+            jar.write(jar.compress("a/Text.txt", TEXT));
+            jar.write(jar.compress("a/Empty.txt", new byte[0]));
+        }
+
+        try (ZipFile zip = new ZipFile(output)) {
+            ZipEntry entry = zip.getEntry("a/Text.txt");
+            assertEquals(ZipEntry.DEFLATED, entry.getMethod());
+            assertEquals(TEXT.length, entry.getSize());
+            assertTrue(entry.getCompressedSize() < TEXT.length);
+            assertArrayEquals(TEXT, JarFile.readFully(zip.getInputStream(entry), -1));
+            assertArrayEquals(new byte[0], JarFile.readFully(zip.getInputStream(zip.getEntry("a/Empty.txt")), -1));
+        }
+    }
+
+    @Test
+    public void writesStoredEntries() throws IOException {
+        File output = new File(folder.getRoot(), "stored.jar");
+        try (JarFile jar = new JarFile(output.getPath(), 0)) {
+            jar.write(jar.compress("a/Text.txt", TEXT));
+            jar.write(jar.compress("a/Noise.bin", NOISE));
+        }
+
+        try (ZipFile zip = new ZipFile(output)) {
+            ZipEntry entry = zip.getEntry("a/Text.txt");
+            assertEquals(ZipEntry.STORED, entry.getMethod());
+            assertEquals(TEXT.length, entry.getCompressedSize());
+            assertArrayEquals(TEXT, JarFile.readFully(zip.getInputStream(entry), -1));
+            assertArrayEquals(NOISE, JarFile.readFully(zip.getInputStream(zip.getEntry("a/Noise.bin")), -1));
+        }
+    }
+
+    @Test
+    public void writesTheSameJarTwice() throws IOException {
+        File first = new File(folder.getRoot(), "first.jar");
+        File second = new File(folder.getRoot(), "second.jar");
+        for (File file : new File[]{first, second}) {
+            try (JarFile jar = new JarFile(file.getPath())) {
+                jar.write(jar.compress("a/Text.txt", TEXT));
+            }
+        }
+        assertArrayEquals(Files.readAllBytes(first.toPath()),
+                Files.readAllBytes(second.toPath()));
+    }
+
+    @Test
+    public void rewritesAJarInPlace() throws IOException {
+        File file = createJar();
+        try (JarFile output = new JarFile(file.getPath()); JarFile input = new JarFile(file.getPath())) {
+            for (String name : input.getEntries()) {
+                if (name.equals("a/Text.txt")) {
+                    output.write(output.compress(name, "Replaced".getBytes(StandardCharsets.UTF_8)));
+                } else {
+                    input.copy(name, output);
+                }
+            }
+        }
+
+        try (ZipFile zip = new ZipFile(file)) {
+            assertEquals(3, zip.size());
+            assertEquals("Replaced", new String(JarFile.readFully(zip.getInputStream(zip.getEntry("a/Text.txt")), -1), StandardCharsets.UTF_8));
+            assertArrayEquals(NOISE, JarFile.readFully(zip.getInputStream(zip.getEntry("a/Noise.bin")), -1));
+        }
+        assertEquals(1, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void discardLeavesTheJarUnchanged() throws IOException {
+        File file = createJar();
+        byte[] content = Files.readAllBytes(file.toPath());
+        JarFile jar = new JarFile(file.getPath());
+        jar.write(jar.compress("a/Text.txt", TEXT));
+        jar.discard();
+
+        assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+        assertEquals(1, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void readsDirectories() throws IOException {
+        File root = folder.newFolder("classes");
+        assertTrue(new File(root, "a").mkdir());
+        try (FileOutputStream out = new FileOutputStream(new File(root, "a/Text.txt"))) {
+            out.write(TEXT);
+        }
+
+        File output = new File(folder.getRoot(), "directory.jar");
+        try (JarFile source = new JarFile(root.getPath()); JarFile target = new JarFile(output.getPath())) {
+            assertEquals(Collections.singletonList("a/Text.txt"), source.getEntries());
+            source.copy("a/Text.txt", target);
+        }
+        try (ZipFile zip = new ZipFile(output)) {
+            assertArrayEquals(TEXT, JarFile.readFully(zip.getInputStream(zip.getEntry("a/Text.txt")), -1));
+        }
+    }
+}
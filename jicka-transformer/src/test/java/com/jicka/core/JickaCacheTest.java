@@ -0,0 +1,85 @@
+package com.jicka.core;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.stream.Stream;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+/**
+ *
+ * @author Mickael Boudignot
+ */
+public class JickaCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Create a directory which can't be replaced by a file, so the move of a
+     * temporary file to its path fails.
+     *
+     * @param path The path of the directory.
+     */
+    private static void block(Path path) throws IOException {
+        Files.createDirectories(path);
+        Files.write(path.resolve("file"), new byte[1]);
+    }
+
+    /**
+     * Return the number of files in a directory and its sub directories.
+     *
+     * @param directory The directory.
+     */
+    private static long count(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(Files::isRegularFile).count();
+        }
+    }
+
+    @Test
+    public void deletesTheTemporaryFileOfAFailedStore() throws Exception {
+        Path directory = folder.newFolder().toPath();
+        JickaCache cache = new JickaCache(directory, new JickaSession());
+        String key = cache.key(new byte[]{1}, Collections.emptyMap());
+        block(directory.resolve(key.substring(0, 2)).resolve(key.substring(2)));
+        try {
+            cache.store(key, new JickaCache.Entry(null, new ArrayList<>(), new int[0], new ArrayList<>(), new ArrayList<>(),
+                    new int[6], new ArrayList<>()));
+            fail();
+        } catch (IOException ex) {
+
+            /* The entry can't replace the directory */
+        }
+        assertEquals(1, count(directory));
+    }
+
+    @Test
+    public void deletesTheTemporaryFileOfAFailedSave() throws Exception {
+        Path directory = folder.newFolder().toPath();
+        Path path = directory.resolve("cache.jsc");
+        JickaMappedCache cache = new JickaMappedCache(path, new JickaSession());
+        ClassWriter cw = new ClassWriter(0);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, "p/C", null, "java/lang/Object", null);
+        cw.visitEnd();
+        byte[] classBuffer = cw.toByteArray();
+        cache.put("p/C", classBuffer, JickaCacheTest.class.getClassLoader(), classBuffer, null);
+        block(path);
+        try {
+            cache.save();
+            fail();
+        } catch (IOException ex) {
+
+            /* The cache can't replace the directory */
+        }
+        assertEquals(1, count(directory));
+    }
+}
@@ -0,0 +1,223 @@
+package com.jicka.core;
+
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Mickael Boudignot
+ */
+public class JickaEscapeTest {
+
+    static class Node {
+
+        Node next;
+        int value;
+    }
+
+    static class Foo {
+
+        int value;
+    }
+
+    interface Sink<T> {
+
+        void put(T value);
+    }
+
+    static class Local {
+
+        static int sum(int n) {
+            Node head = null;
+            for (int i = 0; i < n; i++) {
+                Node node = new Node();
+                node.value = i;
+                node.next = head;
+                head = node;
+            }
+            int sum = 0;
+            for (Node node = head; node != null; node = node.next) {
+                sum += node.value;
+            }
+            return sum;
+        }
+    }
+
+    static class Global {
+
+        static Node root;
+
+        static void publish() {
+            root = new Node();
+        }
+    }
+
+    static class Listed {
+
+        static List<Node> list() {
+            List<Node> list = new ArrayList<>();
+            list.add(new Node());
+            return list;
+        }
+    }
+
+    static class Task implements Runnable {
+
+        final Node node = new Node();
+
+        @Override
+        public void run() {
+            node.value++;
+        }
+    }
+
+    static class Start {
+
+        static void start() {
+            new Thread(new Task()).start();
+        }
+    }
+
+    static class Capture {
+
+        static Runnable capture() {
+            Node node = new Node();
+            return () -> node.value++;
+        }
+    }
+
+    static class Counter implements Sink<Foo> {
+
+        int count;
+
+        @Override
+        public void put(Foo value) {
+            count += value.value;
+        }
+    }
+
+    static class Count {
+
+        static int count() {
+            Counter counter = new Counter();
+            Sink<Foo> sink = counter;
+            Foo foo = new Foo();
+            foo.value = 1;
+            sink.put(foo);
+            return counter.count;
+        }
+    }
+
+    static class Offer {
+
+        static void offer(BlockingQueue<Foo> queue) {
+            Sink<Foo> sink = queue::offer;
+            Foo foo = new Foo();
+            foo.value = 1;
+            sink.put(foo);
+        }
+    }
+
+    static class Proxied {
+
+        @SuppressWarnings("unchecked")
+        static void put() {
+            Sink<Foo> sink = (Sink<Foo>) Proxy.newProxyInstance(Proxied.class.getClassLoader(),
+                    new Class<?>[]{Sink.class}, (proxy, method, args) -> null);
+            sink.put(new Foo());
+        }
+    }
+
+    /**
+     * Analyze a program made of classes of this test.
+     *
+     * @param classes The classes of the program.
+     * @return the confined fields by internal name of class.
+     */
+    private static Map<String, Set<String>> analyze(Class<?>... classes) throws Exception {
+        List<byte[]> classBuffers = new ArrayList<>();
+        for (Class<?> cls : classes) {
+            String resource = "/" + name(cls) + ".class";
+            try (InputStream is = JickaEscapeTest.class.getResourceAsStream(resource)) {
+                assertNotNull(resource, is);
+                classBuffers.add(JarFile.readFully(is, -1));
+            }
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            return new JickaEscape(new JickaHierarchy(JickaEscapeTest.class.getClassLoader())).analyze(classBuffers, executor);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static String name(Class<?> cls) {
+        return cls.getName().replace('.', '/');
+    }
+
+    @Test
+    public void confinesLocalObjects() throws Exception {
+        Map<String, Set<String>> confined = analyze(Node.class, Local.class);
+        assertEquals(Collections.singleton(name(Node.class)), confined.keySet());
+        assertEquals(new HashSet<>(Arrays.asList("next", "value")), confined.get(name(Node.class)));
+    }
+
+    @Test
+    public void sharesObjectsStoredInStaticFields() throws Exception {
+        assertFalse(analyze(Node.class, Global.class).containsKey(name(Node.class)));
+    }
+
+    @Test
+    public void sharesObjectsGivenToTheJdk() throws Exception {
+        assertFalse(analyze(Node.class, Listed.class).containsKey(name(Node.class)));
+    }
+
+    @Test
+    public void sharesThreadsAndTheObjectsTheyHold() throws Exception {
+        Map<String, Set<String>> confined = analyze(Node.class, Task.class, Start.class);
+        assertFalse(confined.containsKey(name(Task.class)));
+        assertFalse(confined.containsKey(name(Node.class)));
+    }
+
+    @Test
+    public void sharesObjectsCapturedByLambdas() throws Exception {
+        assertFalse(analyze(Node.class, Capture.class).containsKey(name(Node.class)));
+    }
+
+    @Test
+    public void confinesArgumentsOfInterfacesImplementedByTheProgram() throws Exception {
+        Map<String, Set<String>> confined = analyze(Foo.class, Sink.class, Counter.class, Count.class);
+        assertTrue(confined.containsKey(name(Foo.class)));
+        assertTrue(confined.containsKey(name(Counter.class)));
+    }
+
+    @Test
+    public void sharesArgumentsOfInterfacesImplementedByMethodReferences() throws Exception {
+        assertFalse(analyze(Foo.class, Sink.class, Offer.class).containsKey(name(Foo.class)));
+    }
+
+    @Test
+    public void sharesArgumentsOfInterfacesImplementedByProxies() throws Exception {
+        assertFalse(analyze(Foo.class, Sink.class, Proxied.class).containsKey(name(Foo.class)));
+    }
+
+    @Test
+    public void sharesArgumentsOfInterfacesImplementedByTheProgramAndTheJdk() throws Exception {
+        assertFalse(analyze(Foo.class, Sink.class, Counter.class, Count.class, Offer.class).containsKey(name(Foo.class)));
+    }
+}
@@ -0,0 +1,86 @@
+package com.jicka.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ *
+ * @author Mickael Boudignot
+ */
+public class JickaReportTest {
+
+    /**
+     * Create the class p/R with a static block init and a method get, whose
+     * code have the given sizes.
+     *
+     * @param clinit The size of the code of the static block init.
+     * @param get The size of the code of the method get.
+     */
+    private static byte[] createR(int clinit, int get) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, "p/R", null, "java/lang/Object", null);
+        createMethod(cw, "<clinit>", clinit);
+        createMethod(cw, "get", get);
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * Create a static method made of NOP followed by RETURN.
+     *
+     * @param cw The class.
+     * @param name The name of the method.
+     * @param size The size of the code of the method.
+     */
+    private static void createMethod(ClassWriter cw, String name, int size) {
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_STATIC, name, "()V", null, null);
+        for (int i = 1; i < size; i++) {
+            mv.visitInsn(Opcodes.NOP);
+        }
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    /**
+     * Return the methods pushed over a budget between two versions of p/R.
+     *
+     * @param before The original class.
+     * @param after The transformed class.
+     * @return the name and the budget of each method.
+     */
+    private static List<String> budget(byte[] before, byte[] after) {
+        JickaReport.Row row = new JickaReport.Row("r.jar", "p/R", before.length);
+        row.budget(before, after);
+        List<String> methods = new ArrayList<>();
+        for (JickaReport.Method method : row.methods) {
+            methods.add(method.name + " " + method.budget);
+        }
+        assertEquals(methods.size(), row.overBudget);
+        return methods;
+    }
+
+    @Test
+    public void reportsTheMethodsPushedOverTheBudgetsOfInlining() {
+        assertEquals(Arrays.asList("get()V MaxInlineSize"), budget(createR(11, 11), createR(11, 65)));
+        assertEquals(Arrays.asList("get()V FreqInlineSize"), budget(createR(11, 300), createR(11, 400)));
+    }
+
+    @Test
+    public void ignoresTheBudgetsOfInliningForTheStaticBlockInit() {
+        assertEquals(Collections.emptyList(), budget(createR(11, 11), createR(65, 11)));
+        assertEquals(Collections.emptyList(), budget(createR(300, 11), createR(400, 11)));
+    }
+
+    @Test
+    public void reportsTheStaticBlockInitPushedOverTheBudgetOfTheJit() {
+        assertEquals(Arrays.asList("<clinit>()V HugeMethodLimit"), budget(createR(7000, 11), createR(9000, 11)));
+    }
+}
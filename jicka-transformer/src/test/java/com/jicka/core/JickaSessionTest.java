@@ -0,0 +1,294 @@
+package com.jicka.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ *
+ * @author Mickael Boudignot
+ */
+public class JickaSessionTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Create the class p/A with the field x.
+     *
+     * @param access The access flags of the field.
+     * @param annotation The descriptor of an annotation of the field, or null.
+     * @param method The name of an empty method of the class, or null.
+     */
+    private static byte[] createA(int access, String annotation, String method) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, "p/A", null, "java/lang/Object", null);
+        FieldVisitor fv = cw.visitField(access, "x", "I", null, null);
+        if (annotation != null) {
+            fv.visitAnnotation(annotation, false).visitEnd();
+        }
+        fv.visitEnd();
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitInsn(Opcodes.ICONST_1);
+        mv.visitFieldInsn(Opcodes.PUTFIELD, "p/A", "x", "I");
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        if (method != null) {
+            mv = cw.visitMethod(Opcodes.ACC_PUBLIC, method, "()V", null, null);
+            mv.visitInsn(Opcodes.RETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * Create the class p/B which reads the field x of p/A.
+     */
+    private static byte[] createB() {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, "p/B", null, "java/lang/Object", null);
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_STATIC, "get", "(Lp/A;)I", null, null);
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitFieldInsn(Opcodes.GETFIELD, "p/A", "x", "I");
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * Create the class p/W which reads and writes an instance field and a
+     * static field, synchronizes on itself, and whose method sum is pushed
+     * over the size of the methods always inlined.
+     */
+    private static byte[] createW() {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, "p/W", null, "java/lang/Object", null);
+        cw.visitField(Opcodes.ACC_PUBLIC, "x", "I", null, null).visitEnd();
+        cw.visitField(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "s", "I", null, null).visitEnd();
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitInsn(Opcodes.ICONST_1);
+        mv.visitFieldInsn(Opcodes.PUTFIELD, "p/W", "x", "I");
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        mv = cw.visitMethod(Opcodes.ACC_STATIC, "<clinit>", "()V", null, null);
+        mv.visitInsn(Opcodes.ICONST_1);
+        mv.visitFieldInsn(Opcodes.PUTSTATIC, "p/W", "s", "I");
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "get", "()I", null, null);
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitInsn(Opcodes.MONITORENTER);
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitFieldInsn(Opcodes.GETFIELD, "p/W", "x", "I");
+        mv.visitFieldInsn(Opcodes.GETSTATIC, "p/W", "s", "I");
+        mv.visitInsn(Opcodes.IADD);
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitInsn(Opcodes.MONITOREXIT);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "sum", "()I", null, null);
+        mv.visitInsn(Opcodes.ICONST_0);
+        for (int i = 0; i < 6; i++) {
+            mv.visitVarInsn(Opcodes.ALOAD, 0);
+            mv.visitFieldInsn(Opcodes.GETFIELD, "p/W", "x", "I");
+            mv.visitInsn(Opcodes.IADD);
+        }
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * Create a class which declares static fields and reads them.
+     *
+     * @param name The internal name of the class.
+     * @param statics The number of static fields.
+     */
+    private static byte[] createStatics(String name, int statics) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, "java/lang/Object", null);
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_STATIC, "get", "()I", null, null);
+        mv.visitInsn(Opcodes.ICONST_0);
+        for (int i = 0; i < statics; i++) {
+            cw.visitField(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "s" + i, "I", null, null).visitEnd();
+            mv.visitFieldInsn(Opcodes.GETSTATIC, name, "s" + i, "I");
+            mv.visitInsn(Opcodes.IADD);
+        }
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * Transform a directory with a cache and a CSV report.
+     *
+     * @param input The directory of classes.
+     * @param cache The directory of the cache.
+     * @param report The file of the report.
+     * @return the lines of the report followed by the lines of the methods
+     * over a budget.
+     */
+    private List<String> transform(File input, File cache, Path report) throws Exception {
+        try (JickaSession session = new JickaSession()) {
+            session.defineCache(cache.getPath());
+            session.defineReport(report.toString());
+            session.transform(input.getPath(), folder.newFile().getPath(), JickaSessionTest.class.getClassLoader());
+        }
+        List<String> lines = new ArrayList<>(Files.readAllLines(report, StandardCharsets.UTF_8));
+        lines.addAll(Files.readAllLines(report.resolveSibling("report-methods.csv"), StandardCharsets.UTF_8));
+        return lines;
+    }
+
+    /**
+     * Return the values of a line of the report without the columns cached,
+     * scanNanos and transformNanos, which change between two runs.
+     *
+     * @param line The line of the report.
+     */
+    private static List<String> counters(String line) {
+        List<String> values = new ArrayList<>(Arrays.asList(line.split(",")));
+        values.subList(2, 5).clear();
+        return values;
+    }
+
+    @Test
+    public void reportsTheSameStatisticsFromTheCache() throws Exception {
+        File input = folder.newFolder();
+        Files.createDirectories(input.toPath().resolve("p"));
+        Files.write(input.toPath().resolve("p/W.class"), createW());
+        File cache = folder.newFolder();
+        Path report = folder.newFolder().toPath().resolve("report.csv");
+
+        List<String> cold = transform(input, cache, report);
+        List<String> warm = transform(input, cache, report);
+        assertEquals(cold.size(), warm.size());
+        assertTrue(cold.get(1).startsWith(input.getName() + ",p/W,0,"));
+        assertTrue(warm.get(1).startsWith(input.getName() + ",p/W,1,"));
+        assertEquals(Arrays.asList("7", "0", "1", "0", "2", "0"), counters(cold.get(1)).subList(2, 8));
+        assertTrue(cold.get(5).contains(",p/W,sum()I,"));
+        for (int i = 1; i < 4; i++) {
+            assertEquals(counters(cold.get(i)), counters(warm.get(i)));
+        }
+        assertEquals(cold.subList(4, cold.size()), warm.subList(4, warm.size()));
+    }
+
+    @Test
+    public void readsTheClassesAfterANewStaticFieldFromTheCache() throws Exception {
+        File input = folder.newFolder();
+        Files.createDirectories(input.toPath().resolve("p"));
+        for (String name : new String[]{"A", "B", "C", "D", "E"}) {
+            Files.write(input.toPath().resolve("p/" + name + ".class"), createStatics("p/" + name, 1));
+        }
+        File cache = folder.newFolder();
+        Path report = folder.newFolder().toPath().resolve("report.csv");
+        File output = folder.newFile();
+        for (int run = 0; run < 2; run++) {
+            try (JickaSession session = new JickaSession()) {
+                session.defineCache(cache.getPath());
+                session.defineReport(report.toString());
+                session.transform(input.getPath(), output.getPath(), JickaSessionTest.class.getClassLoader());
+            }
+
+            /* The first class receives a new static field before the second run */
+            if (run == 0) {
+                Files.write(input.toPath().resolve("p/A.class"), createStatics("p/A", 2));
+            }
+        }
+
+        List<String> lines = Files.readAllLines(report, StandardCharsets.UTF_8);
+        assertTrue(lines.get(1).startsWith(input.getName() + ",p/A,0,"));
+        for (int i = 2; i <= 5; i++) {
+            assertTrue(lines.get(i), lines.get(i).startsWith(input.getName() + ",p/" + "ABCDE".charAt(i - 1) + ",1,"));
+        }
+    }
+
+    /**
+     * Return the dependencies of p/B in a directory which contains a version
+     * of p/A.
+     *
+     * @param a The class p/A.
+     */
+    private Map<String, String> getDependencies(byte[] a) throws IOException {
+        File directory = folder.newFolder();
+        Files.createDirectories(directory.toPath().resolve("p"));
+        Files.write(directory.toPath().resolve("p/A.class"), a);
+        JickaHierarchy hierarchy = new JickaHierarchy(Collections.singletonList(new JarFile(directory.getPath())), null);
+        return new JickaSession().getDependencies(createB(), hierarchy);
+    }
+
+    @Test
+    public void dependsOnTheClassWhichDeclaresTheField() throws IOException {
+        Map<String, String> dependencies = getDependencies(createA(Opcodes.ACC_PUBLIC, null, null));
+        assertEquals(Collections.singleton("p/A"), dependencies.keySet());
+    }
+
+    @Test
+    public void dependsOnTheImmutabilityOfTheField() throws IOException {
+        Map<String, String> mutable = getDependencies(createA(Opcodes.ACC_PUBLIC, null, null));
+        Map<String, String> immutable = getDependencies(createA(Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL, null, null));
+        assertNotEquals(mutable, immutable);
+    }
+
+    @Test
+    public void dependsOnTheAnnotationsOfTheField() throws IOException {
+        Map<String, String> plain = getDependencies(createA(Opcodes.ACC_PUBLIC, null, null));
+        Map<String, String> annotated = getDependencies(createA(Opcodes.ACC_PUBLIC, "Lp/ThreadConfined;", null));
+        assertNotEquals(plain, annotated);
+    }
+
+    @Test
+    public void ignoresTheMethodsOfTheClassWhichDeclaresTheField() throws IOException {
+        Map<String, String> before = getDependencies(createA(Opcodes.ACC_PUBLIC, null, null));
+        Map<String, String> after = getDependencies(createA(Opcodes.ACC_PUBLIC, null, "run"));
+        assertEquals(before, after);
+    }
+
+    @Test
+    public void ignoresTheFieldsOfTheJdk() {
+        JickaHierarchy hierarchy = new JickaHierarchy(JickaSessionTest.class.getClassLoader());
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, "p/C", null, "java/lang/Object", null);
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_STATIC, "out", "()Ljava/io/PrintStream;", null, null);
+        mv.visitFieldInsn(Opcodes.GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;");
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+        assertTrue(new JickaSession().getDependencies(cw.toByteArray(), hierarchy).isEmpty());
+    }
+}
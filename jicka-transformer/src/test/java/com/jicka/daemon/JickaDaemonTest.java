@@ -0,0 +1,99 @@
+package com.jicka.daemon;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author Mickael Boudignot
+ */
+public class JickaDaemonTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String home;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        home = System.getProperty("user.home");
+        System.setProperty("user.home", folder.getRoot().getPath());
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        System.setProperty("user.home", home);
+    }
+
+    @Test
+    public void writesASecretOnlyReadableByTheUser() throws Exception {
+        JickaDaemon daemon = new JickaDaemon(0, JickaDaemonTest.class.getClassLoader());
+        Future<?> serve = executor.submit(() -> {
+            daemon.serve();
+            return null;
+        });
+        Path token = JickaDaemon.getTokenPath(daemon.getPort());
+        assertEquals(32, Files.size(token));
+        if (Files.getFileStore(token).supportsFileAttributeView("posix")) {
+            assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(token)));
+        }
+
+        JickaDaemon.stop(daemon.getPort());
+        serve.get(10, TimeUnit.SECONDS);
+        assertFalse(Files.exists(token));
+    }
+
+    @Test
+    public void refusesMessagesWithoutTheSecret() throws Exception {
+        JickaDaemon daemon = new JickaDaemon(0, JickaDaemonTest.class.getClassLoader());
+        Future<?> serve = executor.submit(() -> {
+            daemon.serve();
+            return null;
+        });
+
+        /* A stop message with a wrong secret */
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), daemon.getPort());
+                DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            out.writeInt(0x4a4b4450);
+            out.writeInt(7);
+            out.write(new byte[32]);
+            out.writeByte(1);
+            out.flush();
+            assertFalse(in.readBoolean());
+            assertTrue(in.readUTF().contains("secret"));
+        }
+        assertFalse(serve.isDone());
+
+        JickaDaemon.stop(daemon.getPort());
+        serve.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test(expected = IOException.class)
+    public void needsTheFileOfTheSecret() throws Exception {
+        JickaDaemon.stop(1);
+    }
+}